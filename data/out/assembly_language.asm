@@ -0,0 +1,14 @@
+.text
+    li x1, 8		#  (MOV, a, 8)
+    li x2, 5		#  (MOV, b, 5)
+    li x4, 3
+    sub x3, x4, x1		#  (SUB, $0, 3, a)
+    mv x5, x3		#  (MOV, c, $0)
+    mul x6, x1, x2		#  (MUL, $1, a, b)
+    li x4, 3
+    add x7, x4, x2		#  (ADD, $2, 3, b)
+    sub x8, x5, x1		#  (SUB, $3, c, a)
+    mul x7, x7, x8		#  (MUL, $2, $2, $3)
+    sub x6, x6, x7		#  (SUB, $1, $1, $2)
+    mv x9, x6		#  (MOV, result, $1)
+    mv x10, x9		#  (RET, , result)
@@ -0,0 +1,90 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 Vector API 的扫描核心, 每步比较一整个向量 (16 到 64 字节, 取决于硬件)
+ * <br>
+ * 只处理纯 ASCII 的源缓冲区, 其余情况以及不足一个向量的尾部交给 {@link ScalarScanKernel}.
+ * 堆上的缓冲区直接从其数组加载向量; 文件映射的缓冲区先将一个向量长度的字节批量拷贝到暂存数组再加载
+ * (Java 21 中从堆外加载向量需要预览特性 MemorySegment).
+ * <br>
+ * 此类位于单独的源码目录 src-vector, 默认构建 (只编译 src) 不包含它, 也就不需要孵化模块.
+ * 需要向量实现时在编译 src 之后再编译此目录, 编译与运行时都加上 {@code --add-modules jdk.incubator.vector}:
+ * <pre>
+ * javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp out -d out src-vector/cn/edu/hitsz/compiler/lexer/VectorScanKernel.java
+ * </pre>
+ * 运行时缺少该模块或找不到此类都会退回逐字符实现, 参见 {@link ScanKernel#best()}.
+ */
+final class VectorScanKernel implements ScanKernel {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    // 大部分连续字符都很短 (比如 token 之间的单个空格), 先逐字符试探这么多个, 试探不完再启用向量
+    private static final int PROBE = 8;
+
+    private final ScalarScanKernel scalar = new ScalarScanKernel();
+    private final byte[] scratch = new byte[SPECIES.length()];
+
+    @Override
+    public int skip(CharRun run, SourceBuffer source, int from, int limit) {
+        final var bytes = source.asciiBytes();
+        if (bytes == null) {
+            return scalar.skip(run, source, from, limit);
+        }
+
+        final var probed = scalar.skip(run, source, from, Math.min(limit, from + PROBE));
+        if (probed < from + PROBE) {
+            return probed;
+        }
+
+        final var step = SPECIES.length();
+        // 堆上的缓冲区直接从其底层数组读取, 映射的文件则先逐段复制到 scratch 中
+        final var heap = bytes.hasArray();
+        final var array = heap ? bytes.array() : scratch;
+        final var base = heap ? bytes.arrayOffset() : 0;
+
+        int pos = probed;
+        while (pos + step <= limit) {
+            final ByteVector vector;
+            if (heap) {
+                vector = ByteVector.fromArray(SPECIES, array, base + pos);
+            } else {
+                bytes.get(pos, scratch, 0, step);
+                vector = ByteVector.fromArray(SPECIES, scratch, 0);
+            }
+
+            final var mask = matches(run, vector);
+            if (!mask.allTrue()) {
+                return pos + mask.not().firstTrue();
+            }
+            pos += step;
+        }
+
+        return scalar.skip(run, source, pos, limit);
+    }
+
+    private static VectorMask<Byte> matches(CharRun run, ByteVector vector) {
+        return switch (run) {
+            case WHITESPACE -> vector.eq((byte) ' ')
+                .or(vector.eq((byte) '\t'))
+                .or(vector.eq((byte) '\n'))
+                .or(vector.eq((byte) '\r'))
+                .or(vector.eq((byte) '\f'));
+            case IDENTIFIER -> {
+                // 置上 0x20 位后大写字母变为小写, 其它 ASCII 字符不会因此落入 a-z
+                final var lower = vector.or((byte) 0x20);
+                yield inRange(lower, 'a', 'z')
+                    .or(inRange(vector, '0', '9'))
+                    .or(vector.eq((byte) '_'));
+            }
+            case DIGIT -> inRange(vector, '0', '9');
+        };
+    }
+
+    private static VectorMask<Byte> inRange(ByteVector vector, char lo, char hi) {
+        // ASCII 字节都为正数, 有符号比较即可
+        return vector.compare(VectorOperators.GE, (byte) lo).and(vector.compare(VectorOperators.LE, (byte) hi));
+    }
+}
@@ -2,6 +2,8 @@ package cn.edu.hitsz.compiler.asm;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariableTable;
 import cn.edu.hitsz.compiler.ir.Instruction;
 
 import java.io.FileWriter;
@@ -9,9 +11,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
 /**
@@ -31,8 +31,12 @@ import java.util.Map;
 public class AssemblyGenerator {
 
     private List<Instruction> instructions;
-    private final Map<Integer, String> reg = new HashMap<>();
-    private final Map<String, Integer> var = new HashMap<>();
+    // 以寄存器号为下标, 是否已被占用
+    private final boolean[] occupied = new boolean[32];
+    // 以 IR 变量编号为下标, 分配到的寄存器号, 0 代表还未分配
+    private int[] regOfVariable = new int[0];
+    // 装入立即数用的两个临时寄存器, 0 代表还未分配
+    private final int[] scratchReg = new int[2];
     private final List<String> assembly = new ArrayList<>(List.of(".text"));
 
     /**
@@ -45,6 +49,7 @@ public class AssemblyGenerator {
      */
     public void loadIR(List<Instruction> originInstructions) {
         instructions = originInstructions;
+        regOfVariable = new int[IRVariableTable.idLimit(instructions)];
     }
 
 
@@ -62,68 +67,68 @@ public class AssemblyGenerator {
             boolean hasReturn = false;
             switch (ins.getKind()) {
                 case ADD -> {
-                    int resultReg = getReg(ins.getResult().toString());
+                    int resultReg = getReg(ins.getResult());
                     List<IRValue> operands = ins.getOperands();
                     String ope2 = operands.getLast().toString();
                     int reg1, reg2;
                     if (operands.getFirst().isImmediate()) {
-                        reg1 = getReg("temp1");
+                        reg1 = getScratchReg(0);
                         assembly.add("    li x%d, %s".formatted(reg1, operands.getFirst().toString()));
                     } else {
-                        reg1 = getReg(ins.getOperands().getFirst().toString());
+                        reg1 = getReg(operands.getFirst());
                     }
                     if (operands.getLast().isImmediate()) {
                         assembly.add("    addi x%d, x%d, %s\t\t#  %s".formatted(resultReg, reg1, ope2, ins.toString()));
                     } else {
-                        reg2 = getReg(ope2);
+                        reg2 = getReg(operands.getLast());
                         assembly.add("    add x%d, x%d, x%d\t\t#  %s".formatted(resultReg, reg1, reg2, ins.toString()));
                     }
                 }
                 case SUB -> {
-                    int resultReg = getReg(ins.getResult().toString());
+                    int resultReg = getReg(ins.getResult());
                     List<IRValue> operands = ins.getOperands();
                     String ope2 = operands.getLast().toString();
                     int reg1, reg2;
                     if (operands.getFirst().isImmediate()) {
-                        reg1 = getReg("temp1");
+                        reg1 = getScratchReg(0);
                         assembly.add("    li x%d, %s".formatted(reg1, operands.getFirst().toString()));
                     } else {
-                        reg1 = getReg(ins.getOperands().getFirst().toString());
+                        reg1 = getReg(operands.getFirst());
                     }
                     if (operands.getLast().isImmediate()) {
                         assembly.add("    subi x%d, x%d, %s\t\t#  %s".formatted(resultReg, reg1, ope2, ins.toString()));
                     } else {
-                        reg2 = getReg(ope2);
+                        reg2 = getReg(operands.getLast());
                         assembly.add("    sub x%d, x%d, x%d\t\t#  %s".formatted(resultReg, reg1, reg2, ins.toString()));
                     }
                 }
                 case MUL -> {
-                    int resultReg = getReg(ins.getResult().toString());
+                    int resultReg = getReg(ins.getResult());
                     List<IRValue> operands = ins.getOperands();
                     String ope2 = operands.getLast().toString();
                     int reg1, reg2;
                     if (operands.getFirst().isImmediate()) {
-                        reg1 = getReg("temp1");
+                        reg1 = getScratchReg(0);
                         assembly.add("    li x%d, %s".formatted(reg1, operands.getFirst().toString()));
                     } else {
-                        reg1 = getReg(ins.getOperands().getFirst().toString());
+                        reg1 = getReg(operands.getFirst());
                     }
                     if (operands.getLast().isImmediate()) {
-                        reg2 = getReg("temp2");
+                        reg2 = getScratchReg(1);
                         assembly.add("    li x%d, %s".formatted(reg1, ope2));
                     } else {
-                        reg2 = getReg(ope2);
+                        reg2 = getReg(operands.getLast());
                     }
                     assembly.add("    mul x%d, x%d, x%d\t\t#  %s".formatted(resultReg, reg1, reg2, ins.toString()));
                 }
                 case MOV -> {
-                    int resultReg = getReg(ins.getResult().toString());
+                    int resultReg = getReg(ins.getResult());
                     List<IRValue> operands = ins.getOperands();
                     String ope = operands.getFirst().toString();
                     if (operands.getFirst().isImmediate()) {
                         assembly.add("    li x%d, %s\t\t#  %s".formatted(resultReg, ope, ins.toString()));
                     } else {
-                        assembly.add("    mv x%d, x%d\t\t#  %s".formatted(resultReg, getReg(ope), ins.toString()));
+                        assembly.add("    mv x%d, x%d\t\t#  %s".formatted(resultReg, getReg(operands.getFirst()), ins.toString()));
                     }
                 }
                 case RET -> {
@@ -132,7 +137,7 @@ public class AssemblyGenerator {
                     if (operands.getFirst().isImmediate()) {
                         assembly.add("    li x10, %s\t\t#  %s".formatted(ope, ins.toString()));
                     } else {
-                        assembly.add("    mv x10, x%d\t\t#  %s".formatted(getReg(ope), ins.toString()));
+                        assembly.add("    mv x10, x%d\t\t#  %s".formatted(getReg(operands.getFirst()), ins.toString()));
                     }
                     hasReturn = true;
                 }
@@ -159,19 +164,28 @@ public class AssemblyGenerator {
         }
     }
 
-    private int getReg(String varName) {
-        if (var.get(varName) == null) {
-            for (int i = 1; i < 32; i++) {
-                if (reg.get(i) == null) {
-                    var.put(varName, i);
-                    reg.put(i, varName);
-                    return i;
-                }
+    private int getReg(IRValue value) {
+        final var id = ((IRVariable) value).getId();
+        if (regOfVariable[id] == 0) {
+            regOfVariable[id] = allocateReg();
+        }
+        return regOfVariable[id];
+    }
+
+    private int getScratchReg(int index) {
+        if (scratchReg[index] == 0) {
+            scratchReg[index] = allocateReg();
+        }
+        return scratchReg[index];
+    }
+
+    private int allocateReg() {
+        for (int i = 1; i < 32; i++) {
+            if (!occupied[i]) {
+                occupied[i] = true;
+                return i;
             }
-            throw new RuntimeException("No available register");
-        } else {
-            return var.get(varName);
         }
+        throw new RuntimeException("No available register");
     }
 }
-
@@ -0,0 +1,118 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.SourceBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.Ast;
+import cn.edu.hitsz.compiler.parser.AstBuilder;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 测量 {@link AstBuilder} 构造语法树的耗时与内存, 以及遍历, 按语句并行处理, 写出与读回的耗时
+ * <br>
+ * 以一个源文件 (默认为 reg-alloc.txt) 重复放大, 重复约 17000 次时语法树约有一千万个结点. 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.AstBenchmark [源文件] [重复次数]
+ * </pre>
+ */
+public class AstBenchmark {
+    public static void main(String[] args) throws IOException {
+        final var path = args.length > 0 ? args[0] : "data/in/reg-alloc.txt";
+        final var copies = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        TokenKind.loadTokenKinds();
+        // 变量只能声明一次, 重复的部分去掉声明语句
+        final var base = FileUtils.readFile(path);
+        final var body = base.lines().filter(line -> !line.startsWith("int ")).toList();
+        final var source = SourceBuffer.of(base + "\n" + (String.join("\n", body) + "\n").repeat(copies));
+        final var symbolTable = new SymbolTable();
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadSource(source);
+        lexer.run();
+        final var tokens = lexer.getTokenBuffer();
+
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadLRTable(new TableLoader().load(FilePathConfig.LR1_TABLE_PATH));
+        parser.loadTokens(tokens);
+        final var builder = new AstBuilder();
+        parser.registerObserver(builder);
+
+        final var heapBefore = usedHeap();
+        var begin = System.nanoTime();
+        parser.run();
+        final var buildMillis = (System.nanoTime() - begin) / 1e6;
+        final var ast = builder.getAst();
+        final var heapAfter = usedHeap();
+        System.out.printf("%d tokens, %d nodes, %.1f MB in arrays, heap grew by %.1f MB%n",
+            tokens.size(), ast.size(), ast.size() * 4.0 * Integer.BYTES / (1 << 20), (heapAfter - heapBefore) / (double) (1 << 20));
+        System.out.printf("%-28s %10.2f ms%n", "parse + build", buildMillis);
+
+        begin = System.nanoTime();
+        final var leaves = new long[1];
+        ast.preorder(ast.root(), node -> leaves[0] += ast.isLeaf(node) ? 1 : 0);
+        System.out.printf("%-28s %10.2f ms (%d leaves)%n", "preorder", (System.nanoTime() - begin) / 1e6, leaves[0]);
+
+        begin = System.nanoTime();
+        final var statements = ast.nodesOf("S");
+        System.out.printf("%-28s %10.2f ms (%d statements)%n", "collect statements", (System.nanoTime() - begin) / 1e6, statements.length);
+
+        for (final var parallel : new boolean[]{false, true}) {
+            final var count = new AtomicLong();
+            begin = System.nanoTime();
+            if (parallel) {
+                ast.forEachParallel(statements, statement -> count.addAndGet(subtreeSize(ast, statement)));
+            } else {
+                for (final var statement : statements) {
+                    count.addAndGet(subtreeSize(ast, statement));
+                }
+            }
+            System.out.printf("%-28s %10.2f ms (%d nodes, %d threads)%n", parallel ? "per statement, parallel" : "per statement, serial",
+                (System.nanoTime() - begin) / 1e6, count.get(), parallel ? Runtime.getRuntime().availableProcessors() : 1);
+        }
+
+        final var file = Files.createTempFile("ast", ".bin");
+        try {
+            begin = System.nanoTime();
+            ast.write(file);
+            System.out.printf("%-28s %10.2f ms (%.1f MB)%n", "write", (System.nanoTime() - begin) / 1e6, Files.size(file) / (double) (1 << 20));
+            begin = System.nanoTime();
+            final var read = Ast.read(file);
+            System.out.printf("%-28s %10.2f ms, identical: %s%n", "read", (System.nanoTime() - begin) / 1e6, same(ast, read));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static long subtreeSize(Ast ast, int node) {
+        final var count = new long[1];
+        ast.preorder(node, child -> count[0]++);
+        return count[0];
+    }
+
+    private static boolean same(Ast a, Ast b) {
+        if (a.size() != b.size() || a.root() != b.root()) {
+            return false;
+        }
+        for (int node = 0; node < a.size(); node++) {
+            if (a.kind(node) != b.kind(node) || a.firstChild(node) != b.firstChild(node)
+                || a.nextSibling(node) != b.nextSibling(node) || a.token(node) != b.token(node)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        final var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
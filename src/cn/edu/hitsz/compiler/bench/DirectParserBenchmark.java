@@ -0,0 +1,114 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.SourceBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.DirectParser;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ParserCodeGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.ReductionShortcuts;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.Arrays;
+
+/**
+ * 比较表驱动的 SyntaxAnalyzer 与 ParserCodeGenerator 生成的直接编码语法分析器的吞吐量
+ * <br>
+ * 以一个源文件 (默认为 reg-alloc.txt) 分别重复 1, 50, 2000 次后分析成 TokenBuffer. 小输入一次分析只需几微秒,
+ * 所以每次计时连续分析一批, 使每批至少有 BATCH_TOKENS 个 token, 结果换算为每个 token 的纳秒数.
+ * 两种分析器交替计时, 先各自预热 WARMUP 批 (足以让两者的主循环都被 JIT 编译), 再取 ROUNDS 批的中位数.
+ * <br>
+ * 分别测量没有观察者 (只有驱动程序本身) 与 Main 中的 ProductionCollector + IRGenerator 加 REPORT_ELIDED 两种情况.
+ * SemanticAnalyzer 不参与, 因为符号表中的类型只能设置一次, 不能重复分析. 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.DirectParserBenchmark [源文件]
+ * </pre>
+ */
+public class DirectParserBenchmark {
+    private static final int[] COPIES = {1, 50, 2000};
+    private static final int BATCH_TOKENS = 200_000;
+    private static final int WARMUP = 30;
+    private static final int ROUNDS = 15;
+
+    public static void main(String[] args) {
+        final var path = args.length > 0 ? args[0] : "data/in/reg-alloc.txt";
+
+        TokenKind.loadTokenKinds();
+        final var table = new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+        final var direct = new ParserCodeGenerator(table).load();
+        final var compiled = CompiledLRTable.compile(table);
+        final var text = FileUtils.readFile(path) + "\n";
+
+        System.out.printf("%-8s %-12s %14s %14s %8s%n", "tokens", "observers", "table(ns/tok)", "direct(ns/tok)", "speedup");
+        for (final var copies : COPIES) {
+            final var lexer = new LexicalAnalyzer(new SymbolTable());
+            lexer.loadSource(SourceBuffer.of(text.repeat(copies)));
+            lexer.run();
+            final var tokens = lexer.getTokenBuffer();
+            final var batch = Math.max(1, BATCH_TOKENS / tokens.size());
+
+            for (final var withObservers : new boolean[]{false, true}) {
+                final var tableTimes = new double[ROUNDS];
+                final var directTimes = new double[ROUNDS];
+                for (int round = -WARMUP; round < ROUNDS; round++) {
+                    final var tableTime = measure(null, compiled, tokens, batch, withObservers);
+                    final var directTime = measure(direct, compiled, tokens, batch, withObservers);
+                    if (round >= 0) {
+                        tableTimes[round] = tableTime;
+                        directTimes[round] = directTime;
+                    }
+                }
+
+                final var tableMedian = median(tableTimes);
+                final var directMedian = median(directTimes);
+                System.out.printf("%-8d %-12s %14.2f %14.2f %7.2fx%n", tokens.size(),
+                    withObservers ? "Main's set" : "none", tableMedian, directMedian, tableMedian / directMedian);
+            }
+        }
+    }
+
+    /**
+     * 连续分析 batch 次
+     *
+     * @param direct 为 null 时使用表驱动程序
+     * @return 每个 token 的纳秒数
+     */
+    private static double measure(DirectParser direct, CompiledLRTable table, TokenBuffer tokens, int batch, boolean withObservers) {
+        // 观察者的输出随分析次数增长, 每批使用新的观察者, 构造不计入时间
+        final var parser = new SyntaxAnalyzer(new SymbolTable());
+        parser.loadLRTable(table);
+        if (withObservers) {
+            parser.registerObserver(new ProductionCollector(GrammarInfo.getBeginProduction()));
+            parser.registerObserver(new IRGenerator());
+            parser.setReductionShortcuts(ReductionShortcuts.Mode.REPORT_ELIDED);
+        }
+
+        // 上一批观察者的输出很大, 先回收掉, 免得它的 GC 落在这一批的计时中
+        System.gc();
+        final var begin = System.nanoTime();
+        for (int idx = 0; idx < batch; idx++) {
+            if (direct == null) {
+                parser.loadTokens(tokens);
+                parser.run();
+            } else {
+                direct.run(tokens, parser);
+            }
+        }
+        return (double) (System.nanoTime() - begin) / ((long) batch * tokens.size());
+    }
+
+    private static double median(double[] times) {
+        final var sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,167 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.SourceBuffer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.ExpressionParser;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.ReductionShortcuts;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 比较纯 LR 分析与把表达式交给 {@link ExpressionParser} 的混合分析的耗时
+ * <br>
+ * 分别使用一个源文件 (默认为 reg-alloc.txt) 与一段表达式很长的合成程序重复放大, 在没有观察者, 以及 Main 中的观察者
+ * (ProductionCollector, 语义分析与 IR 生成) 加 REPORT_ELIDED 两种情况下交替运行两种分析, 取中位数.
+ * 每种情况先用一个记录全部动作 (含 Status) 的观察者检查两种分析看到的动作序列完全相同. 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.ExpressionParserBenchmark [源文件] [重复次数]
+ * </pre>
+ */
+public class ExpressionParserBenchmark {
+    private static final int WARMUP = 15;
+    private static final int ROUNDS = 15;
+
+    public static void main(String[] args) {
+        final var path = args.length > 0 ? args[0] : "data/in/reg-alloc.txt";
+        final var copies = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        TokenKind.loadTokenKinds();
+        final var table = CompiledLRTable.compile(new TableLoader().load(FilePathConfig.LR1_TABLE_PATH));
+        final var expressions = ExpressionParser.detect(table);
+        if (expressions == null) {
+            System.out.println("no layered expression grammar in " + FilePathConfig.LR1_TABLE_PATH);
+            return;
+        }
+        System.out.printf("expression levels: %s, %d entry states%n", expressions.describe(), expressions.entryStateCount());
+
+        // 变量只能声明一次, 重复的部分去掉声明语句
+        final var base = FileUtils.readFile(path);
+        final var body = base.lines().filter(line -> !line.startsWith("int ")).toList();
+        final var file = SourceBuffer.of(base + "\n" + (String.join("\n", body) + "\n").repeat(copies));
+        final var synthetic = SourceBuffer.of(
+            "int a;\nint b;\nint c;\na = 1;\nb = 2;\nc = 3;\n"
+                + "a = (a + b * 3 - (c + 2) * b) * 2 + c * (a - b * (c + 1)) - 7;\n".repeat(copies * 10)
+                + "return a;\n");
+
+        final Supplier<ActionObserver> collector = () -> new ProductionCollector(GrammarInfo.getBeginProduction());
+        final Supplier<ActionObserver> semantic = SemanticAnalyzer::new;
+        final Supplier<ActionObserver> ir = IRGenerator::new;
+
+        System.out.printf("%-14s %-32s %10s %10s %10s %8s%n", "source", "observers", "tokens", "LR(ms)", "hybrid(ms)", "speedup");
+        for (final var source : List.of(file, synthetic)) {
+            final var name = source == file ? Path.of(path).getFileName().toString() : "synthetic";
+            report(name, "none", source, table, List.of(), ReductionShortcuts.Mode.OFF);
+            report(name, "collector + semantic + IR", source, table, List.of(collector, semantic, ir),
+                ReductionShortcuts.Mode.REPORT_ELIDED);
+        }
+    }
+
+    private static TokenBuffer lex(SourceBuffer source, SymbolTable symbolTable) {
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadSource(source);
+        lexer.run();
+        return lexer.getTokenBuffer();
+    }
+
+    private static void report(String sourceName, String name, SourceBuffer source, CompiledLRTable table,
+                               List<Supplier<ActionObserver>> observers, ReductionShortcuts.Mode mode) {
+        final var lrDigest = new DigestObserver();
+        final var hybridDigest = new DigestObserver();
+        measure(source, table, observers, mode, false, lrDigest);
+        measure(source, table, observers, mode, true, hybridDigest);
+        if (lrDigest.count != hybridDigest.count || lrDigest.digest != hybridDigest.digest) {
+            throw new RuntimeException("Hybrid parser reported different actions for " + sourceName);
+        }
+
+        final var lrTimes = new double[ROUNDS];
+        final var hybridTimes = new double[ROUNDS];
+        for (int round = -WARMUP; round < ROUNDS; round++) {
+            final var lrTime = measure(source, table, observers, mode, false, null);
+            final var hybridTime = measure(source, table, observers, mode, true, null);
+            if (round >= 0) {
+                lrTimes[round] = lrTime;
+                hybridTimes[round] = hybridTime;
+            }
+        }
+
+        Arrays.sort(lrTimes);
+        Arrays.sort(hybridTimes);
+        final var lr = lrTimes[ROUNDS / 2];
+        final var hybrid = hybridTimes[ROUNDS / 2];
+        System.out.printf("%-14s %-32s %10d %10.2f %10.2f %7.2fx%n",
+            sourceName, name, lex(source, new SymbolTable()).size(), lr, hybrid, lr / hybrid);
+    }
+
+    private static double measure(SourceBuffer source, CompiledLRTable table, List<Supplier<ActionObserver>> observers,
+                                  ReductionShortcuts.Mode mode, boolean hybrid, ActionObserver digest) {
+        // 语义分析会为符号设置类型, 每轮都需要新的符号表
+        final var symbolTable = new SymbolTable();
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadLRTable(table);
+        parser.loadTokens(lex(source, symbolTable));
+        parser.setReductionShortcuts(mode);
+        parser.setExpressionParser(hybrid);
+        if (digest != null) {
+            parser.registerObserver(digest);
+        }
+        for (final var observer : observers) {
+            parser.registerObserver(observer.get());
+        }
+
+        final var begin = System.nanoTime();
+        parser.run();
+        return (System.nanoTime() - begin) / 1e6;
+    }
+
+    /**
+     * 把收到的每个动作 (动作类型, Status 编号, 产生式行号或词法单元) 折叠为一个摘要
+     */
+    private static class DigestObserver implements ActionObserver {
+        private long digest = 0;
+        private int count = 0;
+
+        private void fold(int kind, int status, int payload) {
+            digest = (digest * 31 + kind) * 1_000_003 + status;
+            digest = digest * 1_000_003 + payload;
+            count++;
+        }
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            fold(1, currentStatus.index(), currentToken.toString().hashCode());
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            fold(2, currentStatus.index(), production.index());
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            fold(3, currentStatus.index(), 0);
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.ScanKernel;
+import cn.edu.hitsz.compiler.lexer.SourceBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 比较逐字符扫描核心与 Vector API 扫描核心的词法分析耗时
+ * <br>
+ * 以一个源文件 (默认为 reg-alloc.txt) 为基础, 构造空白较多与标识符较长的两个变体, 并各自重复放大到约 targetMB 兆字节,
+ * 分别以堆上缓冲区和文件映射缓冲区进行分析. 向量实现需要先按 VectorScanKernel 的说明编译 src-vector 目录, 运行方法:
+ * <pre>
+ * java --add-modules jdk.incubator.vector -cp out cn.edu.hitsz.compiler.bench.LexerBenchmark [源文件] [targetMB]
+ * </pre>
+ */
+public class LexerBenchmark {
+    private static final int WARMUP = 5;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        final var path = args.length > 0 ? args[0] : "data/in/reg-alloc.txt";
+        final var targetMB = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        TokenKind.loadTokenKinds();
+        final var base = FileUtils.readFile(path);
+
+        // 每行前加大段缩进, 每条语句后空出几行
+        final var whitespaceHeavy = base.lines()
+            .map(line -> " ".repeat(120) + line + "\n\t\t\t\t\n")
+            .collect(Collectors.joining("\n"));
+        // 把单字母开头的变量名换成长名字
+        final var identifierHeavy = base
+            .replaceAll("\\bf(\\d+)", "fibonacci_sequence_item_$1")
+            .replaceAll("\\bs(\\d+)", "running_partial_sum_of_items_$1");
+
+        final var vector = ScanKernel.best();
+        if (vector.getClass() == ScanKernel.scalar().getClass()) {
+            System.out.println("vector kernel is not available (needs jdk.incubator.vector and the compiled src-vector root), both columns use the scalar kernel");
+        }
+
+        System.out.printf("%-18s %-8s %12s %12s %8s%n", "input", "buffer", "scalar(ms)", "vector(ms)", "speedup");
+        for (final var variant : new String[][]{{"whitespace-heavy", whitespaceHeavy}, {"identifier-heavy", identifierHeavy}}) {
+            final var text = scale(variant[1], targetMB);
+
+            final var heap = SourceBuffer.of(text);
+            report(variant[0], "heap", heap);
+
+            final var file = Files.createTempFile("lexer-bench", ".txt");
+            try {
+                Files.writeString(file, text);
+                report(variant[0], "mapped", SourceBuffer.map(file.toString()));
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static String scale(String text, int targetMB) {
+        final var copies = Math.max(1, targetMB * 1024 * 1024 / (text.length() + 1));
+        return (text + "\n").repeat(copies);
+    }
+
+    private static void report(String input, String buffer, SourceBuffer source) {
+        // 两种实现交替运行, 避免 JIT 的先后顺序影响结果
+        final var scalar = new double[ROUNDS];
+        final var vector = new double[ROUNDS];
+        for (int round = -WARMUP; round < ROUNDS; round++) {
+            final var scalarTime = measure(source, ScanKernel::scalar);
+            final var vectorTime = measure(source, ScanKernel::best);
+            if (round >= 0) {
+                scalar[round] = scalarTime;
+                vector[round] = vectorTime;
+            }
+        }
+
+        final var scalarMedian = median(scalar);
+        final var vectorMedian = median(vector);
+        System.out.printf("%-18s %-8s %12.2f %12.2f %7.2fx%n",
+            input, buffer, scalarMedian, vectorMedian, scalarMedian / vectorMedian);
+    }
+
+    /**
+     * @return 一次完整词法分析的耗时, 毫秒
+     */
+    private static double measure(SourceBuffer source, Supplier<ScanKernel> kernel) {
+        final var lexer = new LexicalAnalyzer(new SymbolTable());
+        lexer.loadSource(source);
+        lexer.setScanKernel(kernel.get());
+
+        final var begin = System.nanoTime();
+        lexer.run();
+        return (System.nanoTime() - begin) / 1e6;
+    }
+
+    private static double median(double[] times) {
+        final var sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
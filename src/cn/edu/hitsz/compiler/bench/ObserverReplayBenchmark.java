@@ -0,0 +1,96 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.SourceBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 比较串行通知观察者与记录后并行回放的耗时
+ * <br>
+ * 以一个源文件 (默认为 reg-alloc.txt) 重复放大后一次性分析成 TokenBuffer, 分别测量:
+ * 只注册一个观察者 (三种各一次), 三个观察者串行, 三个观察者并行回放. 并行回放的耗时应当接近最慢的单个观察者加上记录的开销,
+ * 前提是有足够的 CPU 核心. 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.ObserverReplayBenchmark [源文件] [重复次数]
+ * </pre>
+ */
+public class ObserverReplayBenchmark {
+    private static final int WARMUP = 10;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        final var path = args.length > 0 ? args[0] : "data/in/reg-alloc.txt";
+        final var copies = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        TokenKind.loadTokenKinds();
+        // 变量只能声明一次, 重复的部分去掉声明语句
+        final var base = FileUtils.readFile(path);
+        final var body = base.lines().filter(line -> !line.startsWith("int ")).toList();
+        final var text = base + "\n" + (String.join("\n", body) + "\n").repeat(copies);
+        final var source = SourceBuffer.of(text);
+        final var table = CompiledLRTable.compile(new TableLoader().load(FilePathConfig.LR1_TABLE_PATH));
+
+        final Supplier<ActionObserver> collector = () -> new ProductionCollector(GrammarInfo.getBeginProduction());
+        final Supplier<ActionObserver> semantic = SemanticAnalyzer::new;
+        final Supplier<ActionObserver> ir = IRGenerator::new;
+
+        System.out.printf("%d tokens, %d available processors%n", lex(source, new SymbolTable()).size(),
+            Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-28s %12s%n", "configuration", "median(ms)");
+        report("ProductionCollector only", source, table, List.of(collector), false);
+        report("SemanticAnalyzer only", source, table, List.of(semantic), false);
+        report("IRGenerator only", source, table, List.of(ir), false);
+        report("all three, serial", source, table, List.of(collector, semantic, ir), false);
+        report("all three, parallel replay", source, table, List.of(collector, semantic, ir), true);
+    }
+
+    private static TokenBuffer lex(SourceBuffer source, SymbolTable symbolTable) {
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadSource(source);
+        lexer.run();
+        return lexer.getTokenBuffer();
+    }
+
+    private static void report(String name, SourceBuffer source, CompiledLRTable table,
+                               List<Supplier<ActionObserver>> observers, boolean parallel) {
+        final var times = new double[ROUNDS];
+        for (int round = -WARMUP; round < ROUNDS; round++) {
+            // 语义分析会为符号设置类型, 每轮都需要新的符号表
+            final var symbolTable = new SymbolTable();
+            final var tokens = lex(source, symbolTable);
+            final var parser = new SyntaxAnalyzer(symbolTable);
+            parser.loadLRTable(table);
+            parser.loadTokens(tokens);
+            parser.setParallelObservers(parallel);
+            for (final var observer : observers) {
+                parser.registerObserver(observer.get());
+            }
+
+            final var begin = System.nanoTime();
+            parser.run();
+            final var time = (System.nanoTime() - begin) / 1e6;
+            if (round >= 0) {
+                times[round] = time;
+            }
+        }
+
+        Arrays.sort(times);
+        System.out.printf("%-28s %12.2f%n", name, times[ROUNDS / 2]);
+    }
+}
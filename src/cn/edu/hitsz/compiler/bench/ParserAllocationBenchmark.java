@@ -0,0 +1,105 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.SourceBuffer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 用线程分配计数器检查语法分析驱动程序在预热之后每个 token 分配的字节数
+ * <br>
+ * 以一个源文件 (默认为 reg-alloc.txt) 重复放大后一次性分析成 TokenBuffer, 然后反复对其进行语法分析, 分别统计:
+ * <ul>
+ *     <li>没有观察者: 驱动程序本身的分配, 应当为 0;</li>
+ *     <li>有一个空观察者: 此时需要为带文本的 token (标识符, 常量) 构造 Token 对象, 这部分属于观察者接口的开销.</li>
+ * </ul>
+ * 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.ParserAllocationBenchmark [源文件] [重复次数]
+ * </pre>
+ */
+public class ParserAllocationBenchmark {
+    private static final int WARMUP = 30;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        final var path = args.length > 0 ? args[0] : "data/in/reg-alloc.txt";
+        final var copies = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        TokenKind.loadTokenKinds();
+        final var text = (FileUtils.readFile(path) + "\n").repeat(copies);
+        final var lexer = new LexicalAnalyzer(new SymbolTable());
+        lexer.loadSource(SourceBuffer.of(text));
+        lexer.run();
+        final var tokens = lexer.getTokenBuffer();
+        final var table = CompiledLRTable.compile(new TableLoader().load(FilePathConfig.LR1_TABLE_PATH));
+
+        final var threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean counter) || !counter.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation counter is not supported by this JVM");
+            return;
+        }
+
+        System.out.printf("%d tokens%n", tokens.size());
+        System.out.printf("%-16s %14s %14s%n", "observers", "bytes/run", "bytes/token");
+        report("none", counter, tokens, table, false);
+        report("one no-op", counter, tokens, table, true);
+    }
+
+    private static void report(String name, com.sun.management.ThreadMXBean counter,
+                               TokenBuffer tokens, CompiledLRTable table, boolean withObserver) {
+        final var parser = new SyntaxAnalyzer(new SymbolTable());
+        parser.loadLRTable(table);
+        if (withObserver) {
+            parser.registerObserver(new NoOpObserver());
+        }
+
+        for (int round = 0; round < WARMUP; round++) {
+            parser.loadTokens(tokens);
+            parser.run();
+        }
+
+        final var threadId = Thread.currentThread().threadId();
+        long total = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            // loadTokens 本身会创建一个迭代器, 不计入
+            parser.loadTokens(tokens);
+            final var before = counter.getThreadAllocatedBytes(threadId);
+            parser.run();
+            total += counter.getThreadAllocatedBytes(threadId) - before;
+        }
+
+        final var perRun = (double) total / ROUNDS;
+        System.out.printf("%-16s %14.1f %14.4f%n", name, perRun, perRun / tokens.size());
+    }
+
+    private static class NoOpObserver implements ActionObserver {
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+    }
+}
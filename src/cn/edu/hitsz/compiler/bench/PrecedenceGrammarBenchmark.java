@@ -0,0 +1,182 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 比较分层的表达式文法 (grammar.txt) 与使用优先级声明 (grammar_precedence_decls.txt) 的二义文法 (grammar_precedence.txt)
+ * <br>
+ * 随机生成一段以长表达式赋值为主的源程序, 对两种文法分别用 LALR(1) 构造分析表, 输出状态数, 压缩后查表所用的字节数,
+ * 每条语句的移入与规约次数, 以及不注册观察者时语法分析的耗时 (预热后的中位数). GrammarInfo 只读取 data/in/grammar.txt,
+ * 所以每种文法 (及其优先级声明) 都被复制到临时目录中, 在新的 JVM 中测量. 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.PrecedenceGrammarBenchmark [语句数]
+ * </pre>
+ */
+public class PrecedenceGrammarBenchmark {
+    private static final String CHILD = "--child";
+    private static final int WARMUP = 15;
+    private static final int ROUNDS = 15;
+    private static final int VARIABLES = 16;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(CHILD)) {
+            runChild(Integer.parseInt(args[1]));
+            return;
+        }
+
+        final var statements = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final var source = generateSource(statements);
+        System.out.printf("%-24s %8s %8s %10s %10s %10s %12s%n",
+            "grammar", "states", "bytes", "shifts/st", "reduces/st", "parse(ms)", "ns/statement");
+        final var declarations = new String[]{null, "grammar_precedence_decls.txt"};
+        final var grammars = new String[]{"grammar.txt", "grammar_precedence.txt"};
+        for (int idx = 0; idx < grammars.length; idx++) {
+            final var grammar = grammars[idx];
+            final var dir = Files.createTempDirectory("precedence-benchmark");
+            Files.createDirectories(dir.resolve("data/in"));
+            Files.createDirectories(dir.resolve("data/out"));
+            Files.copy(Paths.get("data/in", grammar), dir.resolve(FilePathConfig.GRAMMAR_PATH));
+            if (declarations[idx] != null) {
+                Files.copy(Paths.get("data/in", declarations[idx]), dir.resolve(FilePathConfig.PRECEDENCE_PATH));
+            }
+            Files.copy(Paths.get(FilePathConfig.CODING_MAP_PATH), dir.resolve(FilePathConfig.CODING_MAP_PATH));
+            Files.writeString(dir.resolve(FilePathConfig.SRC_CODE_PATH), source);
+            System.out.printf("%-24s ", grammar);
+            System.out.flush();
+            launch(dir, statements);
+        }
+    }
+
+    /**
+     * 先声明 VARIABLES 个变量, 再生成 statements - VARIABLES - 1 条形如 {@code vi = <表达式>;} 的赋值, 最后 return
+     */
+    private static String generateSource(int statements) {
+        final var random = new Random(42);
+        final var builder = new StringBuilder();
+        for (int idx = 0; idx < VARIABLES; idx++) {
+            builder.append("int v").append(idx).append(";\n");
+        }
+        for (int idx = VARIABLES + 1; idx < statements; idx++) {
+            builder.append('v').append(random.nextInt(VARIABLES)).append(" = ");
+            appendExpression(builder, random, 3);
+            builder.append(";\n");
+        }
+        return builder.append("return v0;\n").toString();
+    }
+
+    private static void appendExpression(StringBuilder builder, Random random, int depth) {
+        final var operands = 2 + random.nextInt(4);
+        for (int idx = 0; idx < operands; idx++) {
+            if (idx > 0) {
+                builder.append(' ').append("+-*".charAt(random.nextInt(3))).append(' ');
+            }
+            final var kind = random.nextInt(4);
+            if (depth > 0 && kind == 0) {
+                builder.append("(");
+                appendExpression(builder, random, depth - 1);
+                builder.append(")");
+            } else if (kind == 1) {
+                builder.append(random.nextInt(100));
+            } else {
+                builder.append('v').append(random.nextInt(VARIABLES));
+            }
+        }
+    }
+
+    private static void launch(Path dir, int statements) throws IOException, InterruptedException {
+        final var java = ProcessHandle.current().info().command().orElse("java");
+        final var process = new ProcessBuilder(
+            java, "-cp", System.getProperty("java.class.path"),
+            PrecedenceGrammarBenchmark.class.getName(), CHILD, String.valueOf(statements))
+            .directory(dir.toFile())
+            .inheritIO()
+            .start();
+        if (process.waitFor() != 0) {
+            throw new RuntimeException("Child failed in " + dir);
+        }
+    }
+
+    private static void runChild(int statements) {
+        TokenKind.loadTokenKinds();
+        final var generator = new TableGenerator(TableGenerator.Algorithm.LALR);
+        generator.run();
+        final var table = CompiledLRTable.compile(generator.getTable());
+
+        final var symbolTable = new SymbolTable();
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
+        lexer.run();
+        final var tokens = lexer.getTokenBuffer();
+
+        final var counter = new StepCounter();
+        parse(table, tokens, symbolTable, counter);
+
+        final var times = new double[ROUNDS];
+        for (int round = -WARMUP; round < ROUNDS; round++) {
+            final var time = parse(table, tokens, symbolTable, null);
+            if (round >= 0) {
+                times[round] = time;
+            }
+        }
+        Arrays.sort(times);
+        final var median = times[ROUNDS / 2];
+        System.out.printf("%8d %8d %10.2f %10.2f %10.2f %12.1f%n",
+            generator.getStateCount(), table.footprintBytes(),
+            (double) counter.shifts / statements, (double) counter.reduces / statements,
+            median, median * 1e6 / statements);
+    }
+
+    private static double parse(CompiledLRTable table, TokenBuffer tokens, SymbolTable symbolTable, ActionObserver observer) {
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadLRTable(table);
+        parser.loadTokens(tokens);
+        if (observer != null) {
+            parser.registerObserver(observer);
+        }
+        final var begin = System.nanoTime();
+        parser.run();
+        return (System.nanoTime() - begin) / 1e6;
+    }
+
+    private static final class StepCounter implements ActionObserver {
+        private long shifts = 0;
+        private long reduces = 0;
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            shifts++;
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            reduces++;
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+    }
+}
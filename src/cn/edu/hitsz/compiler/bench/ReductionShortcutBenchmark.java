@@ -0,0 +1,110 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.SourceBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.ReductionShortcuts;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 比较开启与不开启 {@link ReductionShortcuts} 时语法分析的耗时
+ * <br>
+ * 以一个源文件 (默认为 reg-alloc.txt) 重复放大, 分别测量: 没有观察者, 只有语义分析与 IR 生成 (二者都没有为单产生式注册动作),
+ * 以及再加上需要完整规约序列的 ProductionCollector 三种情况. 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.ReductionShortcutBenchmark [源文件] [重复次数]
+ * </pre>
+ */
+public class ReductionShortcutBenchmark {
+    private static final int WARMUP = 15;
+    private static final int ROUNDS = 15;
+
+    public static void main(String[] args) {
+        final var path = args.length > 0 ? args[0] : "data/in/reg-alloc.txt";
+        final var copies = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        TokenKind.loadTokenKinds();
+        // 变量只能声明一次, 重复的部分去掉声明语句
+        final var base = FileUtils.readFile(path);
+        final var body = base.lines().filter(line -> !line.startsWith("int ")).toList();
+        final var source = SourceBuffer.of(base + "\n" + (String.join("\n", body) + "\n").repeat(copies));
+        final var table = CompiledLRTable.compile(new TableLoader().load(FilePathConfig.LR1_TABLE_PATH));
+
+        final var noElision = new boolean[table.productionLimit()];
+        final var allElided = new boolean[noElision.length];
+        Arrays.fill(allElided, true);
+        System.out.printf("%d tokens, %d states, %d with a default reduction, %d GOTO entries bypass unit productions%n",
+            lex(source, new SymbolTable()).size(), table.stateCount(),
+            ReductionShortcuts.build(table, noElision).defaultReductionCount(),
+            ReductionShortcuts.build(table, allElided).bypassedGotoCount());
+
+        final Supplier<ActionObserver> collector = () -> new ProductionCollector(GrammarInfo.getBeginProduction());
+        final Supplier<ActionObserver> semantic = SemanticAnalyzer::new;
+        final Supplier<ActionObserver> ir = IRGenerator::new;
+
+        System.out.printf("%-32s %10s %14s %10s %8s%n", "observers", "off(ms)", "mode", "on(ms)", "speedup");
+        report("none", source, table, List.of(), ReductionShortcuts.Mode.ELIDE);
+        report("semantic + IR", source, table, List.of(semantic, ir), ReductionShortcuts.Mode.ELIDE);
+        report("collector + semantic + IR", source, table, List.of(collector, semantic, ir),
+            ReductionShortcuts.Mode.REPORT_ELIDED);
+    }
+
+    private static TokenBuffer lex(SourceBuffer source, SymbolTable symbolTable) {
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadSource(source);
+        lexer.run();
+        return lexer.getTokenBuffer();
+    }
+
+    private static void report(String name, SourceBuffer source, CompiledLRTable table,
+                               List<Supplier<ActionObserver>> observers, ReductionShortcuts.Mode mode) {
+        final var offTimes = new double[ROUNDS];
+        final var onTimes = new double[ROUNDS];
+        for (int round = -WARMUP; round < ROUNDS; round++) {
+            final var offTime = measure(source, table, observers, ReductionShortcuts.Mode.OFF);
+            final var onTime = measure(source, table, observers, mode);
+            if (round >= 0) {
+                offTimes[round] = offTime;
+                onTimes[round] = onTime;
+            }
+        }
+
+        Arrays.sort(offTimes);
+        Arrays.sort(onTimes);
+        final var off = offTimes[ROUNDS / 2];
+        final var on = onTimes[ROUNDS / 2];
+        System.out.printf("%-32s %10.2f %14s %10.2f %7.2fx%n", name, off, mode, on, off / on);
+    }
+
+    private static double measure(SourceBuffer source, CompiledLRTable table,
+                                  List<Supplier<ActionObserver>> observers, ReductionShortcuts.Mode mode) {
+        // 语义分析会为符号设置类型, 每轮都需要新的符号表
+        final var symbolTable = new SymbolTable();
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadLRTable(table);
+        parser.loadTokens(lex(source, symbolTable));
+        parser.setReductionShortcuts(mode);
+        for (final var observer : observers) {
+            parser.registerObserver(observer.get());
+        }
+
+        final var begin = System.nanoTime();
+        parser.run();
+        return (System.nanoTime() - begin) / 1e6;
+    }
+}
@@ -0,0 +1,156 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarFile;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * 检查修改文法后保持状态编号的构造 (见 {@link TableGenerator#keepStateNumbersOf(TableGenerator)}) 有多少状态沿用了原编号
+ * <br>
+ * 在临时目录中生成约有 n 条产生式的合成文法 (见 {@link TableGeneratorBenchmark}), 先构造一次, 再对文法做几种典型的修改,
+ * 分别进行普通构造与保持状态编号的构造, 并检查二者得到的分析表除状态编号外完全相同.
+ * 两种构造都完整地构造分析表, 耗时相同, 因此这里不计时. 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.StableNumberingBenchmark [n]
+ * </pre>
+ */
+public class StableNumberingBenchmark {
+    private static final String CHILD = "--child";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(CHILD)) {
+            runChild();
+            return;
+        }
+
+        final var productions = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        final var dir = TableGeneratorBenchmark.writeSyntheticGrammar(productions);
+        final var java = ProcessHandle.current().info().command().orElse("java");
+        final var process = new ProcessBuilder(
+            java, "-cp", System.getProperty("java.class.path"),
+            StableNumberingBenchmark.class.getName(), CHILD)
+            .directory(dir.toFile())
+            .inheritIO()
+            .start();
+        if (process.waitFor() != 0) {
+            throw new RuntimeException("Child failed in " + dir);
+        }
+    }
+
+    private record Edit(String name, UnaryOperator<List<String>> apply) {
+    }
+
+    private static void runChild() throws IOException {
+        TokenKind.loadTokenKinds();
+        final var original = Files.readAllLines(Paths.get(FilePathConfig.GRAMMAR_PATH));
+        // 最内层的 E_{L+1}, 即最后一行 E_{L+1} -> IntConst; 的头
+        final var primary = original.get(original.size() - 1).split(" ")[0];
+        // 修改后的文法写到另一个文件中, 原来的 grammar.txt 保持不变
+        final var editedPath = Paths.get(FilePathConfig.GRAMMAR_PATH).resolveSibling("grammar_edited.txt");
+
+        final var edits = List.of(
+            new Edit("no change", lines -> lines),
+            new Edit("retarget a statement", lines -> replace(lines, "S -> kw_5 id = E_1;", "S -> kw_5 id = E_2;")),
+            new Edit("remove a statement", lines -> replace(lines, "S -> kw_7 id = E_1;", null)),
+            new Edit("add a statement", lines -> append(lines, "S -> return E_1;")),
+            new Edit("add prefix op_1 to " + primary,
+                lines -> append(lines, "%s -> op_1 %s;".formatted(primary, primary))));
+
+        for (final var algorithm : List.of(TableGenerator.Algorithm.SLR, TableGenerator.Algorithm.LALR)) {
+            final var base = new TableGenerator(algorithm);
+            base.run();
+            System.out.printf("%s, %d states before the edit%n", algorithm, base.getStateCount());
+            System.out.printf("  %-28s %8s %8s %10s%n", "edit", "states", "stable", "same");
+
+            for (final var edit : edits) {
+                Files.write(editedPath, edit.apply().apply(new ArrayList<>(original)));
+                final var grammar = GrammarFile.read(editedPath.toString(), FilePathConfig.PRECEDENCE_PATH);
+
+                final var plain = new TableGenerator(algorithm, grammar);
+                plain.run();
+                final var stable = new TableGenerator(algorithm, grammar);
+                stable.keepStateNumbersOf(base);
+                stable.run();
+                System.out.printf("  %-28s %8d %8d %10s%n",
+                    edit.name(), stable.getStateCount(), stable.getStableStateCount(),
+                    isomorphic(CompiledLRTable.compile(plain.getTable()), CompiledLRTable.compile(stable.getTable())));
+            }
+        }
+    }
+
+    private static List<String> replace(List<String> lines, String from, String to) {
+        final var idx = lines.indexOf(from);
+        if (to == null) {
+            lines.remove(idx);
+        } else {
+            lines.set(idx, to);
+        }
+        return lines;
+    }
+
+    private static List<String> append(List<String> lines, String line) {
+        lines.add(line);
+        return lines;
+    }
+
+    /**
+     * 从起始状态同时遍历两张表, 检查二者在状态的一一对应下完全相同
+     */
+    private static boolean isomorphic(CompiledLRTable lhs, CompiledLRTable rhs) {
+        final var columns = lhs.terminalCount() + lhs.nonTerminalCount();
+        if (lhs.stateCount() != rhs.stateCount() || columns != rhs.terminalCount() + rhs.nonTerminalCount()) {
+            return false;
+        }
+        for (int column = 0; column < columns; column++) {
+            final var same = column < lhs.terminalCount()
+                ? lhs.terminal(column).equals(rhs.terminal(column))
+                : lhs.nonTerminal(column).equals(rhs.nonTerminal(column));
+            if (!same) {
+                return false;
+            }
+        }
+
+        final var mapping = new int[lhs.stateCount()];
+        Arrays.fill(mapping, -1);
+        final var pending = new ArrayList<Integer>();
+        mapping[0] = 0;
+        pending.add(0);
+        for (int idx = 0; idx < pending.size(); idx++) {
+            final int state = pending.get(idx);
+            for (int column = 0; column < columns; column++) {
+                final var terminal = column < lhs.terminalCount();
+                final var left = terminal ? lhs.action(state, column) : lhs.goto_(state, column);
+                final var right = terminal ? rhs.action(mapping[state], column) : rhs.goto_(mapping[state], column);
+                final var shift = terminal ? CompiledLRTable.kindOf(left) == CompiledLRTable.SHIFT : left >= 0;
+                if (!shift) {
+                    if (left != right) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (terminal && CompiledLRTable.kindOf(right) != CompiledLRTable.SHIFT || !terminal && right < 0) {
+                    return false;
+                }
+                final var from = terminal ? CompiledLRTable.payloadOf(left) : left;
+                final var to = terminal ? CompiledLRTable.payloadOf(right) : right;
+                if (mapping[from] < 0) {
+                    mapping[from] = to;
+                    pending.add(from);
+                } else if (mapping[from] != to) {
+                    return false;
+                }
+            }
+        }
+        return pending.size() == lhs.stateCount();
+    }
+}
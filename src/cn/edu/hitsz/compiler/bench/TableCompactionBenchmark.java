@@ -0,0 +1,41 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.parser.table.TableMinimizer;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+/**
+ * 输出各来源的分析表经 {@link TableMinimizer} 最小化前后的压缩报告
+ * <br>
+ * 依次为 LR1_table.csv 与 TableGenerator 各算法 (无法构造的算法跳过) 生成的表. 报告中 "packed bytes" 为行位移压缩后查表用到的全部数组,
+ * 即语法分析热路径上的工作集, 可与 L1/L2 缓存的大小对照. 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.TableCompactionBenchmark
+ * </pre>
+ */
+public class TableCompactionBenchmark {
+    public static void main(String[] args) {
+        TokenKind.loadTokenKinds();
+        report("LR1_table.csv", new TableLoader().load(FilePathConfig.LR1_TABLE_PATH));
+        for (final var algorithm : TableGenerator.Algorithm.values()) {
+            try {
+                final var generator = new TableGenerator(algorithm);
+                generator.run();
+                report(algorithm.toString(), generator.getTable());
+            } catch (RuntimeException e) {
+                System.out.printf("== %s: %s%n", algorithm, e.getMessage());
+            }
+        }
+    }
+
+    private static void report(String name, LRTable table) {
+        final var begin = System.nanoTime();
+        final var minimizer = new TableMinimizer(table);
+        minimizer.run();
+        final var millis = (System.nanoTime() - begin) / 1e6;
+        System.out.printf("== %s (minimized in %.2f ms)%n%s%n", name, millis, minimizer.getReport());
+    }
+}
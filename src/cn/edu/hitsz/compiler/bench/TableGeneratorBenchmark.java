@@ -0,0 +1,156 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 比较 TableGenerator 各构造算法的状态数与构造时间
+ * <br>
+ * 每种算法在同一个 JVM 中反复构造, 取预热之后的中位数. 构造失败 (文法不属于该算法能处理的类别) 时输出冲突信息.
+ * 文法与编码表取自当前工作目录下的 data/in, 要测量其他文法, 可在另一个含有 data/in/grammar.txt 与 data/in/coding_map.csv 的目录中运行:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.TableGeneratorBenchmark [轮数]
+ * </pre>
+ * 也可以生成一个约有 n 条产生式的合成文法 (n 条语句关键字与多层左递归的二元运算符), 在临时目录中启动新的 JVM 测量:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.TableGeneratorBenchmark [轮数] synthetic [n]
+ * </pre>
+ * 给出 parallel k 时, 另外以 k 个线程构造 SLR 与 LALR 分析表, 并检查其 dumpTable 的输出与单线程时逐字节相同:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.TableGeneratorBenchmark [轮数] [synthetic [n]] parallel k
+ * </pre>
+ */
+public class TableGeneratorBenchmark {
+    private static final int WARMUP = 20;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final var rounds = args.length > 0 ? Integer.parseInt(args[0]) : 15;
+        var synthetic = 0;
+        var parallelism = 1;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("synthetic")) {
+                synthetic = i + 1 < args.length && !args[i + 1].equals("parallel") ? Integer.parseInt(args[++i]) : 500;
+            } else if (args[i].equals("parallel")) {
+                parallelism = Integer.parseInt(args[++i]);
+            }
+        }
+        if (synthetic > 0) {
+            launch(writeSyntheticGrammar(synthetic), rounds, parallelism);
+            return;
+        }
+
+        TokenKind.loadTokenKinds();
+        System.out.printf("%-8s %8s %12s %12s%n", "algo", "states", "first(ms)", "median(ms)");
+        for (final var algorithm : TableGenerator.Algorithm.values()) {
+            try {
+                measure(algorithm, 1, rounds);
+                if (parallelism > 1 && (algorithm == TableGenerator.Algorithm.SLR || algorithm == TableGenerator.Algorithm.LALR)) {
+                    measure(algorithm, parallelism, rounds);
+                    System.out.printf("%-8s identical to serial: %s%n", "", sameTable(algorithm, parallelism));
+                }
+            } catch (RuntimeException e) {
+                System.out.printf("%-8s %s%n", algorithm, e.getMessage());
+            }
+        }
+    }
+
+    private static void measure(TableGenerator.Algorithm algorithm, int parallelism, int rounds) {
+        final var times = new double[rounds];
+        var first = 0.0;
+        var states = 0;
+        for (int round = -WARMUP; round < rounds; round++) {
+            final var generator = new TableGenerator(algorithm);
+            generator.setParallelism(parallelism);
+            generator.run();
+            states = generator.getStateCount();
+            if (round == -WARMUP) {
+                first = generator.getGenerationMillis();
+            } else if (round >= 0) {
+                times[round] = generator.getGenerationMillis();
+            }
+        }
+        Arrays.sort(times);
+        final var name = parallelism == 1 ? algorithm.toString() : "%s/%d".formatted(algorithm, parallelism);
+        System.out.printf("%-8s %8d %12.2f %12.3f%n", name, states, first, times[rounds / 2]);
+    }
+
+    /**
+     * @return 单线程与多线程构造的分析表经 dumpTable 输出后是否逐字节相同
+     */
+    private static boolean sameTable(TableGenerator.Algorithm algorithm, int parallelism) {
+        final var dumps = new ArrayList<String>();
+        for (final var threads : List.of(1, parallelism)) {
+            final var generator = new TableGenerator(algorithm);
+            generator.setParallelism(threads);
+            generator.run();
+            final var path = "data/out/lr_table_%d.csv".formatted(threads);
+            generator.getTable().dumpTable(path);
+            dumps.add(FileUtils.readFile(path));
+        }
+        return dumps.get(0).equals(dumps.get(1));
+    }
+
+    /**
+     * 在临时目录中写出合成文法与编码表:
+     * <pre>
+     * P -> S_list;  S_list -> S Semicolon S_list | S Semicolon;
+     * S -> kw_k id = E_1;                         (k = 1..K)
+     * E_i -> E_i op_i E_{i+1} | E_{i+1};          (i = 1..L)
+     * E_{L+1} -> ( E_1 ) | id | IntConst;
+     * </pre>
+     * 其中 K 约为 n / 3, 其余产生式都用于运算符的层级, 产生式总数约为 n.
+     *
+     * @return 临时目录
+     */
+    static Path writeSyntheticGrammar(int productions) throws IOException {
+        final var statements = Math.max(1, productions / 3);
+        final var levels = Math.max(1, (productions - 6 - statements) / 2);
+
+        final var grammar = new ArrayList<>(List.of("P -> S_list;", "S_list -> S Semicolon S_list;", "S_list -> S Semicolon;"));
+        final var codingMap = new ArrayList<>(List.of("3 =", "5 Semicolon", "10 (", "11 )", "51 id", "52 IntConst"));
+        for (int k = 1; k <= statements; k++) {
+            grammar.add("S -> kw_%d id = E_1;".formatted(k));
+            codingMap.add("%d kw_%d".formatted(100 + k, k));
+        }
+        for (int i = 1; i <= levels; i++) {
+            grammar.add("E_%d -> E_%d op_%d E_%d;".formatted(i, i, i, i + 1));
+            grammar.add("E_%d -> E_%d;".formatted(i, i + 1));
+            codingMap.add("%d op_%d".formatted(100 + statements + i, i));
+        }
+        grammar.add("E_%d -> ( E_1 );".formatted(levels + 1));
+        grammar.add("E_%d -> id;".formatted(levels + 1));
+        grammar.add("E_%d -> IntConst;".formatted(levels + 1));
+
+        final var dir = Files.createTempDirectory("table-generator-benchmark");
+        Files.createDirectories(dir.resolve("data/in"));
+        Files.createDirectories(dir.resolve("data/out"));
+        Files.write(dir.resolve("data/in/grammar.txt"), grammar);
+        Files.write(dir.resolve("data/in/coding_map.csv"), codingMap);
+        System.out.printf("synthetic grammar in %s: %d productions, %d token kinds%n", dir, grammar.size(), codingMap.size());
+        return dir;
+    }
+
+    /**
+     * 以 dir 为工作目录启动新的 JVM 运行本测试
+     */
+    private static void launch(Path dir, int rounds, int parallelism) throws IOException, InterruptedException {
+        final var java = ProcessHandle.current().info().command().orElse("java");
+        final var process = new ProcessBuilder(
+            java, "-cp", System.getProperty("java.class.path"),
+            TableGeneratorBenchmark.class.getName(), String.valueOf(rounds), "parallel", String.valueOf(parallelism))
+            .directory(dir.toFile())
+            .inheritIO()
+            .start();
+        if (process.waitFor() != 0) {
+            throw new RuntimeException("Child failed in " + dir);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.TableCache;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 比较冷启动时从 CSV, 从文法, 从二进制缓存获得 LR 分析表的耗时, 以及从 JVM 启动后直到第一个 token 被移入的总耗时
+ * <br>
+ * 每种方式都在新的 JVM 中运行若干次, 取中位数. 总耗时中包含 JVM 启动后的类加载与词法 DFA 的构造, 文法较小时后者占大头. 运行方法:
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.TableLoadBenchmark [次数]
+ * </pre>
+ */
+public class TableLoadBenchmark {
+    private static final String CHILD = "--child";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 1 && args[0].equals(CHILD)) {
+            runChild(args[1], args[2]);
+            return;
+        }
+
+        final var rounds = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        final var cacheFile = Files.createTempFile("lr-table", ".bin");
+        try {
+            // 先各生成一次缓存, 之后的运行都会命中
+            Files.delete(cacheFile);
+            launch("csv-cache", cacheFile.toString());
+
+            System.out.printf("%-12s %14s %18s%n", "source", "table(ms)", "first shift(ms)");
+            for (final var mode : List.of("csv", "generate", "csv-cache")) {
+                final var tableTimes = new ArrayList<Long>();
+                final var totalTimes = new ArrayList<Long>();
+                for (int round = 0; round < rounds; round++) {
+                    final var times = launch(mode, cacheFile.toString());
+                    tableTimes.add(times[0]);
+                    totalTimes.add(times[1]);
+                }
+                tableTimes.sort(null);
+                totalTimes.sort(null);
+                System.out.printf("%-12s %14.2f %18.2f%n", mode,
+                    tableTimes.get(rounds / 2) / 1e6, totalTimes.get(rounds / 2) / 1e6);
+            }
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    /**
+     * 在新的 JVM 中运行一次, 返回其报告的两个纳秒数: 获得分析表的耗时, 与 JVM 启动到第一次移入的耗时
+     */
+    private static long[] launch(String mode, String cachePath) throws IOException, InterruptedException {
+        final var java = ProcessHandle.current().info().command().orElse("java");
+        final var process = new ProcessBuilder(
+            java, "-cp", System.getProperty("java.class.path"),
+            TableLoadBenchmark.class.getName(), CHILD, mode, cachePath)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        final var output = new String(process.getInputStream().readAllBytes()).trim().split(" ");
+        if (process.waitFor() != 0) {
+            throw new RuntimeException("Child failed: " + mode);
+        }
+        return new long[]{Long.parseLong(output[0]), Long.parseLong(output[1])};
+    }
+
+    private static void runChild(String mode, String cachePath) {
+        final var begin = ProcessHandle.current().info().startInstant().orElseThrow();
+
+        // 与 Main 中的顺序一致, 先准备词法分析器, 再读取分析表
+        TokenKind.loadTokenKinds();
+        final var symbolTable = new SymbolTable();
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
+        lexer.setStreaming(true);
+        lexer.run();
+
+        final var tableBegin = System.nanoTime();
+        // 三种方式都以驱动程序实际使用的 CompiledLRTable 为终点
+        final CompiledLRTable table = switch (mode) {
+            case "csv" -> CompiledLRTable.compile(new TableLoader().load(FilePathConfig.LR1_TABLE_PATH));
+            case "generate" -> {
+                final var generator = new TableGenerator();
+                generator.run();
+                yield CompiledLRTable.compile(generator.getTable());
+            }
+            case "csv-cache" -> new TableCache(cachePath).load(FilePathConfig.LR1_TABLE_PATH);
+            default -> throw new RuntimeException("Unknown mode: " + mode);
+        };
+        final var tableTime = System.nanoTime() - tableBegin;
+
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadTokens(lexer.getTokens());
+        parser.loadLRTable(table);
+        parser.registerObserver(new FirstShift());
+        try {
+            parser.run();
+        } catch (FirstShift.Reached reached) {
+            final var total = Duration.between(begin, Instant.now()).toNanos();
+            System.out.println(tableTime + " " + total);
+        }
+    }
+
+    /**
+     * 在第一次移入时中止分析
+     */
+    private static class FirstShift implements ActionObserver {
+        static class Reached extends RuntimeException {
+            private static final long serialVersionUID = 1L;
+        }
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            throw new Reached();
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+    }
+}
@@ -6,30 +6,24 @@ package cn.edu.hitsz.compiler.ir;
  * 我们允许 IR 中的变量保存一些有关源语言的信息 -- 比如它在源语言里对应的是具体的源语言变量还是源语言中的临时变量. 这些信息用一个字符串
  * name 来表示. 临时变量的 name 都是 "$[0-9]+", 而非临时变量的 name 都是 "[a-zA-Z_][a-zA-Z0-9_]*"
  * <br>
- * IR 变量的等价性由 name 唯一确定.
+ * IR 变量由 {@link IRVariableTable} 创建并驻留, 在同一个编译单元中由稠密的编号 id 唯一确定, 也与 name 一一对应.
+ * 比较与哈希都只使用 id, 不经过字符串.
  */
 public class IRVariable implements IRValue {
     /**
-     * @param name 源语言中变量的名字
-     * @return 一个对应于源语言中具体变量的 IRVariable
+     * @return 变量在其 IRVariableTable 中的编号, 从 0 开始
      */
-    public static IRVariable named(String name) {
-        return new IRVariable(name);
-    }
-
-    /**
-     * @return 一个对应于源语言中的临时变量的新 IRVariable
-     */
-    public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+    public int getId() {
+        return id;
     }
 
     public String getName() {
-        return name;
+        // 临时变量的名字只在输出时才构造
+        return name != null ? name : "$" + tempIndex;
     }
 
     public boolean isTemp() {
-        return name.startsWith("$");
+        return tempIndex >= 0;
     }
 
     public boolean isNamed() {
@@ -38,23 +32,28 @@ public class IRVariable implements IRValue {
 
     @Override
     public String toString() {
-        return name;
+        return getName();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof IRVariable reg && name.equals(reg.name);
+        return obj instanceof IRVariable reg && id == reg.id && tempIndex == reg.tempIndex;
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return id;
     }
 
-    private IRVariable(String name) {
+    IRVariable(int id, String name, int tempIndex) {
+        this.id = id;
         this.name = name;
+        this.tempIndex = tempIndex;
     }
 
+    private final int id;
+    // 具名变量的名字, 临时变量为 null
     private final String name;
-    private static int count = 0;
+    // 临时变量在本单元中的序号, 具名变量为 -1
+    private final int tempIndex;
 }
@@ -0,0 +1,104 @@
+package cn.edu.hitsz.compiler.ir;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一个编译单元中的全部 IR 变量
+ * <br>
+ * 每个 IR 变量按第一次出现的顺序获得一个从 0 开始的稠密编号 ({@link IRVariable#getId()}), 使用 IR 的各部分可以直接以编号为下标使用数组,
+ * 数组长度取 {@link #size()} 即可. 具名变量经符号表的编号驻留, 同一个源语言变量总是同一个 IRVariable 对象;
+ * 临时变量在本单元内依次命名为 $0, $1, ..., 不同的编译单元互不影响.
+ */
+public class IRVariableTable {
+    /**
+     * @param symbolTable 源语言变量所在的符号表
+     */
+    public IRVariableTable(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * @param symbol 源语言变量在符号表中的编号
+     * @return 对应的 IRVariable, 同一个编号总是返回同一个对象
+     */
+    public IRVariable named(int symbol) {
+        if (symbol >= variableOfSymbol.length) {
+            final var oldLength = variableOfSymbol.length;
+            variableOfSymbol = Arrays.copyOf(variableOfSymbol, Math.max(symbol + 1, oldLength * 2));
+            Arrays.fill(variableOfSymbol, oldLength, variableOfSymbol.length, -1);
+        }
+        if (variableOfSymbol[symbol] < 0) {
+            variableOfSymbol[symbol] = add(symbolTable.getById(symbol).getText(), -1);
+        }
+        return variables.get(variableOfSymbol[symbol]);
+    }
+
+    /**
+     * @param name 源语言变量的名字, 不在符号表中时加入符号表
+     * @return 对应的 IRVariable
+     */
+    public IRVariable named(String name) {
+        return named(symbolTable.intern(name));
+    }
+
+    /**
+     * @return 一个新的临时变量
+     */
+    public IRVariable temp() {
+        return variables.get(add(null, tempCount++));
+    }
+
+    /**
+     * @param id 变量的编号
+     * @return 该编号的变量
+     */
+    public IRVariable get(int id) {
+        return variables.get(id);
+    }
+
+    /**
+     * @return 变量数, 也是下一个变量的编号
+     */
+    public int size() {
+        return variables.size();
+    }
+
+    /**
+     * 供只拿到指令列表的使用者确定以变量编号为下标的数组长度
+     *
+     * @param instructions 同一个编译单元的 IR
+     * @return IR 中出现的最大变量编号 + 1, 没有变量时为 0
+     */
+    public static int idLimit(List<Instruction> instructions) {
+        var limit = 0;
+        for (final var instruction : instructions) {
+            if (instruction.getKind() != InstructionKind.RET) {
+                limit = Math.max(limit, instruction.getResult().getId() + 1);
+            }
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    limit = Math.max(limit, variable.getId() + 1);
+                }
+            }
+        }
+        return limit;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private final SymbolTable symbolTable;
+    private final List<IRVariable> variables = new ArrayList<>();
+    // 以符号表中的编号为下标, 对应的变量编号, 没有则为 -1
+    private int[] variableOfSymbol = new int[0];
+    private int tempCount = 0;
+
+    private int add(String name, int tempIndex) {
+        final var id = variables.size();
+        variables.add(new IRVariable(id, name, tempIndex));
+        return id;
+    }
+}
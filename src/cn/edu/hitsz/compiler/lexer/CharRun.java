@@ -0,0 +1,31 @@
+package cn.edu.hitsz.compiler.lexer;
+
+/**
+ * 词法分析中常见的连续同类字符, 可由 {@link ScanKernel} 成批跳过
+ */
+public enum CharRun {
+    /**
+     * 空白: 空格, \t, \n, \r, \f
+     */
+    WHITESPACE,
+    /**
+     * 标识符的后续字符: 字母, 数字, 下划线
+     */
+    IDENTIFIER,
+    /**
+     * 十进制数字
+     */
+    DIGIT;
+
+    /**
+     * @param c ASCII 字符
+     * @return 该字符是否属于此类
+     */
+    public boolean contains(int c) {
+        return switch (this) {
+            case WHITESPACE -> c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+            case IDENTIFIER -> c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+            case DIGIT -> c >= '0' && c <= '9';
+        };
+    }
+}
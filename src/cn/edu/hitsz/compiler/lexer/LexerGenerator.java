@@ -0,0 +1,587 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.*;
+
+/**
+ * 根据词法单元定义构造词法分析 DFA 转移表.
+ * <br>
+ * 每个词法单元定义是一个字面量 (关键字, 运算符) 或一个正则表达式 (标识符, 整数常量, 空白).
+ * 构造过程依次为: Thompson 构造 NFA, 子集构造得到 DFA, Hopcroft 算法最小化, 最后输出稠密的 {@code int[state][charClass]} 表.
+ * <br>
+ * 当多个定义匹配同样长度的文本时, 先加入的定义优先, 因此关键字应当在标识符之前加入.
+ * <br>
+ * 正则表达式支持 {@code | * + ? ( ) [a-z]} 以及 {@code \t \n \r \f} 与 {@code \x} 形式的转义, 只处理 ASCII 字符.
+ *
+ * @see LexerTable
+ */
+public class LexerGenerator {
+    /**
+     * 码点文件中标识符与源代码中的写法不一致的词法单元
+     */
+    private static final Map<String, String> spelling = Map.of("Semicolon", ";");
+
+    /**
+     * 码点文件中需要用正则表达式描述的词法单元
+     */
+    private static final Map<String, String> patterns = Map.of(
+        "id", "[a-zA-Z_][a-zA-Z0-9_]*",
+        "IntConst", "[0-9]+"
+    );
+
+    /**
+     * 从码点文件中的全部词法单元构造转移表. 码点文件中的其它词法单元都视为字面量.
+     * 由于码点文件只会被读取一次, 构造出的表也会被缓存.
+     *
+     * @return 转移表
+     */
+    public static LexerTable forCodingMap() {
+        return CodingMapTable.TABLE;
+    }
+
+    /**
+     * 第一次访问时由 JVM 在类初始化的锁内构造一次, 并行分析的各个分块线程看到的总是完整构造好的同一张表
+     */
+    private static final class CodingMapTable {
+        static final LexerTable TABLE = build();
+
+        private static LexerTable build() {
+            final var generator = new LexerGenerator();
+
+            // 码点顺序就是优先级顺序, 保证关键字先于 id
+            final var kinds = new ArrayList<>(TokenKind.allAllowedTokenKinds().values());
+            kinds.remove(TokenKind.eof());
+            kinds.sort(Comparator.comparingInt(TokenKind::getCode));
+
+            for (final var kind : kinds) {
+                final var id = kind.getIdentifier();
+                if (patterns.containsKey(id)) {
+                    generator.addRegex(kind, patterns.get(id));
+                } else {
+                    generator.addLiteral(kind, spelling.getOrDefault(id, id));
+                }
+            }
+            generator.addSkip("[ \\t\\n\\r\\f]+");
+
+            generator.run();
+            return generator.getTable();
+        }
+    }
+
+    /**
+     * @param kind 词法单元类型
+     * @param text 字面量
+     */
+    public void addLiteral(TokenKind kind, String text) {
+        definitions.add(new Definition(kind, text, true));
+    }
+
+    /**
+     * @param kind  词法单元类型
+     * @param regex 正则表达式
+     */
+    public void addRegex(TokenKind kind, String regex) {
+        definitions.add(new Definition(kind, regex, false));
+    }
+
+    /**
+     * @param regex 匹配后直接丢弃的文本 (如空白) 的正则表达式
+     */
+    public void addSkip(String regex) {
+        definitions.add(new Definition(null, regex, false));
+    }
+
+    /**
+     * 主体方法
+     */
+    public void run() {
+        buildNFA();
+        calcCharClasses();
+        constructDFA();
+        minimizeDFA();
+    }
+
+    /**
+     * @return 构造出的转移表
+     */
+    public LexerTable getTable() {
+        final var kinds = definitions.stream().map(Definition::kind).toArray(TokenKind[]::new);
+        return new LexerTable(charClass, minTransitions, minAccept, kinds);
+    }
+
+    private record Definition(TokenKind kind, String pattern, boolean literal) {
+    }
+
+    private final List<Definition> definitions = new ArrayList<>();
+
+    //==================== NFA ==============================//
+
+    private static final int ALPHABET = 128;
+
+    /**
+     * NFA 中的一条非 epsilon 边
+     *
+     * @param chars 可以沿该边转移的字符集合
+     * @param to    目标状态
+     */
+    private record Edge(BitSet chars, int to) {
+    }
+
+    private final List<List<Edge>> edges = new ArrayList<>();
+    private final List<List<Integer>> epsilons = new ArrayList<>();
+    // NFA 状态接受的定义下标, 没有则为 -1
+    private final List<Integer> nfaAccept = new ArrayList<>();
+    private int nfaStart;
+
+    private int newNFAState() {
+        edges.add(new ArrayList<>());
+        epsilons.add(new ArrayList<>());
+        nfaAccept.add(LexerTable.NONE);
+        return edges.size() - 1;
+    }
+
+    /**
+     * NFA 片段, 只有一个入口和一个出口
+     */
+    private record Fragment(int start, int end) {
+    }
+
+    private void buildNFA() {
+        nfaStart = newNFAState();
+        for (int idx = 0; idx < definitions.size(); idx++) {
+            final var definition = definitions.get(idx);
+            final var fragment = definition.literal()
+                ? literalFragment(definition.pattern())
+                : new RegexParser(definition.pattern()).parse();
+
+            epsilons.get(nfaStart).add(fragment.start());
+            nfaAccept.set(fragment.end(), idx);
+        }
+    }
+
+    private Fragment charFragment(BitSet chars) {
+        final var start = newNFAState();
+        final var end = newNFAState();
+        edges.get(start).add(new Edge(chars, end));
+        return new Fragment(start, end);
+    }
+
+    private Fragment literalFragment(String text) {
+        final var start = newNFAState();
+        int last = start;
+        for (int i = 0; i < text.length(); i++) {
+            final var next = newNFAState();
+            final var chars = new BitSet(ALPHABET);
+            chars.set(text.charAt(i));
+            edges.get(last).add(new Edge(chars, next));
+            last = next;
+        }
+        return new Fragment(start, last);
+    }
+
+    /**
+     * 递归下降的正则表达式解析器, 边解析边用 Thompson 构造法生成 NFA 片段
+     */
+    private class RegexParser {
+        private final String regex;
+        private int pos = 0;
+
+        RegexParser(String regex) {
+            this.regex = regex;
+        }
+
+        Fragment parse() {
+            final var result = alternation();
+            if (pos != regex.length()) {
+                throw error();
+            }
+            return result;
+        }
+
+        private Fragment alternation() {
+            final var first = concatenation();
+            if (!peek('|')) {
+                return first;
+            }
+
+            final var start = newNFAState();
+            final var end = newNFAState();
+            epsilons.get(start).add(first.start());
+            epsilons.get(first.end()).add(end);
+            while (peek('|')) {
+                pos++;
+                final var branch = concatenation();
+                epsilons.get(start).add(branch.start());
+                epsilons.get(branch.end()).add(end);
+            }
+            return new Fragment(start, end);
+        }
+
+        private Fragment concatenation() {
+            Fragment result = null;
+            while (pos < regex.length() && !peek('|') && !peek(')')) {
+                final var next = repetition();
+                if (result == null) {
+                    result = next;
+                } else {
+                    epsilons.get(result.end()).add(next.start());
+                    result = new Fragment(result.start(), next.end());
+                }
+            }
+
+            if (result == null) {
+                // 空串
+                final var state = newNFAState();
+                return new Fragment(state, state);
+            }
+            return result;
+        }
+
+        private Fragment repetition() {
+            var result = atom();
+            while (peek('*') || peek('+') || peek('?')) {
+                final var op = regex.charAt(pos++);
+                final var start = newNFAState();
+                final var end = newNFAState();
+                epsilons.get(start).add(result.start());
+                epsilons.get(result.end()).add(end);
+                if (op != '+') {
+                    epsilons.get(start).add(end);
+                }
+                if (op != '?') {
+                    epsilons.get(result.end()).add(result.start());
+                }
+                result = new Fragment(start, end);
+            }
+            return result;
+        }
+
+        private Fragment atom() {
+            final var c = regex.charAt(pos++);
+            return switch (c) {
+                case '(' -> {
+                    final var inner = alternation();
+                    expect(')');
+                    yield inner;
+                }
+                case '[' -> charFragment(charClass());
+                case '\\' -> charFragment(single(escape()));
+                case '*', '+', '?', '|', ')' -> throw error();
+                default -> charFragment(single(c));
+            };
+        }
+
+        private BitSet charClass() {
+            final var chars = new BitSet(ALPHABET);
+            final var negate = peek('^');
+            if (negate) {
+                pos++;
+            }
+
+            while (!peek(']')) {
+                if (pos >= regex.length()) {
+                    throw error();
+                }
+                final var lo = nextClassChar();
+                if (peek('-') && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                    pos++;
+                    final var hi = nextClassChar();
+                    chars.set(lo, hi + 1);
+                } else {
+                    chars.set(lo);
+                }
+            }
+            pos++;
+
+            if (negate) {
+                chars.flip(0, ALPHABET);
+            }
+            return chars;
+        }
+
+        private char nextClassChar() {
+            final var c = regex.charAt(pos++);
+            return c == '\\' ? escape() : c;
+        }
+
+        private char escape() {
+            if (pos >= regex.length()) {
+                throw error();
+            }
+            final var c = regex.charAt(pos++);
+            return switch (c) {
+                case 't' -> '\t';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                case 'f' -> '\f';
+                default -> c;
+            };
+        }
+
+        private BitSet single(char c) {
+            final var chars = new BitSet(ALPHABET);
+            chars.set(c);
+            return chars;
+        }
+
+        private boolean peek(char c) {
+            return pos < regex.length() && regex.charAt(pos) == c;
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) {
+                throw error();
+            }
+            pos++;
+        }
+
+        private RuntimeException error() {
+            return new RuntimeException("Illegal regex at %d: %s".formatted(pos, regex));
+        }
+    }
+
+    //==================== 字符类 ==============================//
+
+    private int[] charClass;
+    private int classCount;
+
+    /**
+     * 将在所有 NFA 边上的出现情况完全相同的字符合并为一个字符类. 不出现在任何边上的字符被编为字符类 0
+     */
+    private void calcCharClasses() {
+        final var allEdgeSets = edges.stream().flatMap(List::stream).map(Edge::chars).toList();
+
+        final var signatures = new HashMap<BitSet, Integer>();
+        // 空签名固定为字符类 0
+        signatures.put(new BitSet(), 0);
+
+        charClass = new int[ALPHABET];
+        for (int c = 0; c < ALPHABET; c++) {
+            final var signature = new BitSet();
+            for (int idx = 0; idx < allEdgeSets.size(); idx++) {
+                if (allEdgeSets.get(idx).get(c)) {
+                    signature.set(idx);
+                }
+            }
+            charClass[c] = signatures.computeIfAbsent(signature, key -> signatures.size());
+        }
+        classCount = signatures.size();
+    }
+
+    //==================== DFA ==============================//
+
+    private final List<int[]> dfaTransitions = new ArrayList<>();
+    private final List<Integer> dfaAccept = new ArrayList<>();
+
+    private BitSet epsilonClosure(BitSet states) {
+        final var result = (BitSet) states.clone();
+        final var unexpanded = new ArrayDeque<Integer>();
+        states.stream().forEach(unexpanded::add);
+
+        while (!unexpanded.isEmpty()) {
+            final var top = unexpanded.pollFirst();
+            for (final var next : epsilons.get(top)) {
+                if (!result.get(next)) {
+                    result.set(next);
+                    unexpanded.add(next);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 子集构造法, 在字符类上而非单个字符上进行
+     */
+    private void constructDFA() {
+        // 每个字符类选一个代表字符即可判断 NFA 边是否接受该字符类
+        final var representative = new int[classCount];
+        for (int c = ALPHABET - 1; c >= 0; c--) {
+            representative[charClass[c]] = c;
+        }
+
+        final var init = new BitSet();
+        init.set(nfaStart);
+
+        final var indexOf = new HashMap<BitSet, Integer>();
+        final var subsets = new ArrayList<BitSet>();
+        final var initClosure = epsilonClosure(init);
+        indexOf.put(initClosure, 0);
+        subsets.add(initClosure);
+
+        for (int idx = 0; idx < subsets.size(); idx++) {
+            final var subset = subsets.get(idx);
+
+            final var row = new int[classCount];
+            Arrays.fill(row, LexerTable.NONE);
+            // 字符类 0 上没有边, 从 1 开始
+            for (int cls = 1; cls < classCount; cls++) {
+                final var c = representative[cls];
+                final var moved = new BitSet();
+                subset.stream().forEach(state -> {
+                    for (final var edge : edges.get(state)) {
+                        if (edge.chars().get(c)) {
+                            moved.set(edge.to());
+                        }
+                    }
+                });
+                if (moved.isEmpty()) {
+                    continue;
+                }
+
+                final var closure = epsilonClosure(moved);
+                row[cls] = indexOf.computeIfAbsent(closure, key -> {
+                    subsets.add(key);
+                    return subsets.size() - 1;
+                });
+            }
+            dfaTransitions.add(row);
+
+            // 下标越小的定义优先级越高
+            dfaAccept.add(subset.stream()
+                .map(nfaAccept::get)
+                .filter(accept -> accept != LexerTable.NONE)
+                .min().orElse(LexerTable.NONE));
+        }
+    }
+
+    private int[][] minTransitions;
+    private int[] minAccept;
+
+    /**
+     * Hopcroft 算法最小化 DFA
+     * <br>
+     * 先补上一个死状态使 DFA 完全, 初始划分按接受的定义分组, 然后不断用待处理集合中的块作为分割者细分其它块.
+     * 最后删去死状态所在的块, 并按 BFS 顺序重新编号, 使起始状态为 0
+     */
+    private void minimizeDFA() {
+        final var dead = dfaTransitions.size();
+        final var n = dead + 1;
+        final var trans = new int[n][classCount];
+        final var accept = new int[n];
+        for (int state = 0; state < dead; state++) {
+            for (int cls = 0; cls < classCount; cls++) {
+                final var next = dfaTransitions.get(state)[cls];
+                trans[state][cls] = next == LexerTable.NONE ? dead : next;
+            }
+            accept[state] = dfaAccept.get(state);
+        }
+        Arrays.fill(trans[dead], dead);
+        accept[dead] = LexerTable.NONE;
+
+        // 逆转移: inverse[cls][target] 为所有经 cls 转移到 target 的状态
+        final var inverse = new ArrayList<List<List<Integer>>>();
+        for (int cls = 0; cls < classCount; cls++) {
+            final var byTarget = new ArrayList<List<Integer>>();
+            for (int state = 0; state < n; state++) {
+                byTarget.add(new ArrayList<>());
+            }
+            for (int state = 0; state < n; state++) {
+                byTarget.get(trans[state][cls]).add(state);
+            }
+            inverse.add(byTarget);
+        }
+
+        // 初始划分
+        final var blockOf = new int[n];
+        final var blocks = new ArrayList<List<Integer>>();
+        final var blockByAccept = new HashMap<Integer, Integer>();
+        for (int state = 0; state < n; state++) {
+            final var block = blockByAccept.computeIfAbsent(accept[state], key -> {
+                blocks.add(new ArrayList<>());
+                return blocks.size() - 1;
+            });
+            blocks.get(block).add(state);
+            blockOf[state] = block;
+        }
+
+        final var worklist = new ArrayDeque<Integer>();
+        final var inWorklist = new BitSet();
+        for (int block = 0; block < blocks.size(); block++) {
+            worklist.add(block);
+            inWorklist.set(block);
+        }
+
+        while (!worklist.isEmpty()) {
+            final var splitter = worklist.pollFirst();
+            inWorklist.clear(splitter);
+            // 分割者可能在之后被细分, 先拷贝一份
+            final var splitterStates = new ArrayList<>(blocks.get(splitter));
+
+            for (int cls = 0; cls < classCount; cls++) {
+                // X: 经 cls 转移到分割者中的所有状态
+                final var predecessors = new BitSet(n);
+                for (final var target : splitterStates) {
+                    inverse.get(cls).get(target).forEach(predecessors::set);
+                }
+                if (predecessors.isEmpty()) {
+                    continue;
+                }
+
+                // 统计每个块中有多少个状态在 X 中
+                final var hits = new HashMap<Integer, Integer>();
+                predecessors.stream().forEach(state -> hits.merge(blockOf[state], 1, Integer::sum));
+
+                for (final var entry : hits.entrySet()) {
+                    final var block = entry.getKey();
+                    final var members = blocks.get(block);
+                    if (entry.getValue() == members.size()) {
+                        continue;
+                    }
+
+                    // 块被 X 切成两半, 在 X 中的部分成为新块
+                    final var inside = new ArrayList<Integer>();
+                    final var outside = new ArrayList<Integer>();
+                    for (final var state : members) {
+                        (predecessors.get(state) ? inside : outside).add(state);
+                    }
+                    final var newBlock = blocks.size();
+                    blocks.set(block, outside);
+                    blocks.add(inside);
+                    inside.forEach(state -> blockOf[state] = newBlock);
+
+                    if (inWorklist.get(block)) {
+                        worklist.add(newBlock);
+                        inWorklist.set(newBlock);
+                    } else {
+                        final var smaller = inside.size() <= outside.size() ? newBlock : block;
+                        worklist.add(smaller);
+                        inWorklist.set(smaller);
+                    }
+                }
+            }
+        }
+
+        // 按 BFS 顺序为除死状态所在块以外的块重新编号
+        final var deadBlock = blockOf[dead];
+        final var newIndex = new int[blocks.size()];
+        Arrays.fill(newIndex, LexerTable.NONE);
+        final var order = new ArrayList<Integer>();
+        final var queue = new ArrayDeque<Integer>();
+        newIndex[blockOf[0]] = 0;
+        order.add(blockOf[0]);
+        queue.add(blockOf[0]);
+        while (!queue.isEmpty()) {
+            final var block = queue.pollFirst();
+            final var state = blocks.get(block).get(0);
+            for (int cls = 0; cls < classCount; cls++) {
+                final var target = blockOf[trans[state][cls]];
+                if (target != deadBlock && newIndex[target] == LexerTable.NONE) {
+                    newIndex[target] = order.size();
+                    order.add(target);
+                    queue.add(target);
+                }
+            }
+        }
+
+        minTransitions = new int[order.size()][classCount];
+        minAccept = new int[order.size()];
+        for (int idx = 0; idx < order.size(); idx++) {
+            final var state = blocks.get(order.get(idx)).get(0);
+            for (int cls = 0; cls < classCount; cls++) {
+                final var target = blockOf[trans[state][cls]];
+                minTransitions[idx][cls] = target == deadBlock ? LexerTable.NONE : newIndex[target];
+            }
+            minAccept[idx] = accept[state];
+        }
+    }
+}
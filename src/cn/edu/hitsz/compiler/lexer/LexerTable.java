@@ -0,0 +1,126 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+
+/**
+ * 由 {@link LexerGenerator} 生成的词法分析 DFA 转移表
+ * <br>
+ * 输入字符先经 {@code charClass} 映射为字符类, 再以 {@code transitions[state][charClass]} 查表得到下一个状态,
+ * -1 代表没有转移. 状态 0 为起始状态. {@code accept[state]} 为该状态接受的词法单元定义的下标, -1 代表不接受.
+ * <br>
+ * 非 ASCII 字符统一映射到字符类 0, 该字符类上不存在任何转移.
+ */
+public final class LexerTable {
+    /**
+     * 没有转移/不接受
+     */
+    public static final int NONE = -1;
+
+    /**
+     * 起始状态
+     */
+    public static final int START = 0;
+
+    /**
+     * @param c 输入字符, 可以是非 ASCII 字符
+     * @return 其字符类
+     */
+    public int classOf(int c) {
+        return c >= 0 && c < charClass.length ? charClass[c] : 0;
+    }
+
+    /**
+     * @param state 状态
+     * @return 该状态恰好在哪一类字符上转移到自己, 若不是 {@link CharRun} 中的任何一类则为 null
+     */
+    public CharRun runOf(int state) {
+        return runs[state];
+    }
+
+    /**
+     * @return 状态数
+     */
+    public int stateCount() {
+        return transitions.length;
+    }
+
+    /**
+     * @return 字符类数
+     */
+    public int classCount() {
+        return transitions.length == 0 ? 0 : transitions[0].length;
+    }
+
+    /**
+     * @param definition 词法单元定义的下标
+     * @return 对应的 TokenKind; 若为需要跳过的定义 (如空白) 则返回 null
+     */
+    public TokenKind kindOf(int definition) {
+        return kinds[definition];
+    }
+
+    /**
+     * 将转移表按 CSV 格式输出, 用于调试
+     *
+     * @param path 文件路径
+     */
+    public void dumpTable(String path) {
+        final var lines = new ArrayList<String>();
+
+        final var classes = new StringBuilder("class");
+        for (int c = 0; c < charClass.length; c++) {
+            if (c > ' ' && c < 127) {
+                classes.append(",").append((char) c).append("=").append(charClass[c]);
+            }
+        }
+        lines.add(classes.toString());
+
+        for (int state = 0; state < transitions.length; state++) {
+            final var row = new StringBuilder(Integer.toString(state));
+            for (final var next : transitions[state]) {
+                row.append(",").append(next == NONE ? "" : Integer.toString(next));
+            }
+            if (accept[state] != NONE) {
+                final var kind = kinds[accept[state]];
+                row.append(",accept ").append(kind == null ? "<skip>" : kind.getIdentifier());
+            }
+            lines.add(row.toString());
+        }
+
+        FileUtils.writeLines(path, lines);
+    }
+
+    LexerTable(int[] charClass, int[][] transitions, int[] accept, TokenKind[] kinds) {
+        this.charClass = charClass;
+        this.transitions = transitions;
+        this.accept = accept;
+        this.kinds = kinds;
+
+        this.runs = new CharRun[transitions.length];
+        for (int state = 0; state < transitions.length; state++) {
+            for (final var run : CharRun.values()) {
+                if (loopsExactlyOn(state, run)) {
+                    runs[state] = run;
+                }
+            }
+        }
+    }
+
+    private boolean loopsExactlyOn(int state, CharRun run) {
+        for (int c = 0; c < charClass.length; c++) {
+            if ((transitions[state][charClass[c]] == state) != run.contains(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 词法分析器的热循环直接访问这些数组
+    final int[] charClass;
+    final int[][] transitions;
+    final int[] accept;
+    private final TokenKind[] kinds;
+    private final CharRun[] runs;
+}
@@ -1,11 +1,11 @@
 package cn.edu.hitsz.compiler.lexer;
 
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
-import cn.edu.hitsz.compiler.utils.FileUtils;
 
-import java.io.*;
 import java.util.*;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <br>
@@ -17,13 +17,51 @@ import java.util.stream.StreamSupport;
 public class LexicalAnalyzer {
 
     private final SymbolTable symbolTable;
-    private final Deque<Integer> deque = new LinkedList<>();
-    private final ArrayList<Token> tokens = new ArrayList<>();
+    private SourceBuffer source;
+    private int cursor = 0;
+    // 分析范围的末尾 (不含), 并行分析时每个分块只分析源缓冲区的一段
+    private int limit = 0;
+    private boolean streaming = false;
+    private boolean offHeap = false;
+    private int parallelism = 1;
+    private ScanKernel kernel = ScanKernel.best();
+    private TokenBuffer tokens;
+    // 最近一次 scan 出的 token 的文本区间, 以及它是标识符时在符号表中的编号
+    private int tokenStart;
+    private int tokenEnd;
+    private int tokenSymbol;
+
+    // 转移表由码点文件中的词法单元定义生成, 新增关键字只需修改码点文件
+    private final LexerTable table = LexerGenerator.forCodingMap();
+    private final TokenKind idKind = TokenKind.fromString("id");
+    private final TokenKind intConstKind = TokenKind.fromString("IntConst");
 
     public LexicalAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
     }
 
+    /**
+     * 构造只分析 [begin, end) 一段源文本的分块词法分析器
+     */
+    private LexicalAnalyzer(SymbolTable symbolTable, SourceBuffer source, int begin, int end, boolean offHeap) {
+        this.symbolTable = symbolTable;
+        this.source = source;
+        this.cursor = begin;
+        this.limit = end;
+        this.offHeap = offHeap;
+    }
+
+
+    /**
+     * 直接加载已在内存中的源文本缓冲区
+     *
+     * @param source 源文本缓冲区
+     */
+    public void loadSource(SourceBuffer source) {
+        this.source = source;
+        cursor = 0;
+        limit = source.length();
+    }
 
     /**
      * 从给予的路径中读取并加载文件内容
@@ -31,18 +69,53 @@ public class LexicalAnalyzer {
      * @param path 路径
      */
     public void loadFile(String path) {
-        // 可自由实现各类缓冲区
-        // 或直接采用完整读入方法
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(path));
-            int character;
-            while ((character = reader.read()) != -1) {
-                deque.addLast(character);
-            }
-            deque.addLast(-1);
-        } catch (IOException e) {
-            e.printStackTrace();
+        // 整个文件映射为一个缓冲区, 扫描时只移动下标
+        loadSource(SourceBuffer.map(path));
+    }
+
+    /**
+     * 设置是否使用流式分析. 流式分析时 run 不做任何事, getTokens 返回的迭代器在每次取出 token 时才进行分析,
+     * 不保存已分析出的 token, 因而内存占用与文件大小无关. 必须在 run 之前设置.
+     * <br>
+     * 把 getTokens 的结果直接交给 {@link cn.edu.hitsz.compiler.parser.SyntaxAnalyzer#loadTokens} 即可由语法分析器边解析边拉取 token.
+     * 由于 token 列表不会被保存, 此时不能在语法分析之前输出 token 列表与旧符号表.
+     *
+     * @param streaming 是否使用流式分析
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * 设置 token 缓冲区是否放在堆外. 必须在 run 之前设置.
+     *
+     * @param offHeap 是否放在堆外
+     * @see TokenBuffer
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * 设置成批跳过空白, 标识符与数字所用的扫描核心, 默认为 {@link ScanKernel#best()}
+     *
+     * @param kernel 扫描核心
+     */
+    public void setScanKernel(ScanKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * 设置并行分析使用的线程数. 源文本会在分号处被切成这么多块, 在 fork-join 线程池上分别分析后按顺序拼接.
+     * 由于语言中每条语句都以分号结尾, 且不存在字符串与注释, 分号处总是 token 的边界. 必须在 run 之前设置, 对流式分析无效.
+     *
+     * @param parallelism 线程数, 为 1 时不并行
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new RuntimeException("Parallelism must be positive");
         }
+        this.parallelism = parallelism;
     }
 
     /**
@@ -50,200 +123,184 @@ public class LexicalAnalyzer {
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
      */
     public void run() {
-        // 定义状态的枚举类型
-        enum Status {
-            START, SPACE,
-            I, IN, INT, _INT,
-            R, RE, RET, RETU, RETUR, RETURN, _RETURN,
-            _OPERATOR_ASSIGN,
-            _OPERATOR_COMMA,
-            _SEMICOLON,
-            _OPERATOR_ADD,
-            _OPERATOR_SUB,
-            _OPERATOR_MUL,
-            _OPERATOR_DIV,
-            _PARENTHESIS_LEFT,
-            _PARENTHESIS_RIGHT,
-            LETTER, _ID,
-            DIGIT, _INT_CONST,
-            OVER
+        if (streaming) {
+            return;
         }
-        int character = 0;
-        // 两重循环，内层为状态机，外层负责不断启动状态机
-        while (character != -1) {
-            Status status = Status.START;
-            StringBuilder builder = new StringBuilder();
-            while (status != Status.OVER) {
-                // 状态操作
-                switch (status) {
-                    case _INT -> tokens.add(Token.simple(TokenKind.fromString("int")));
-                    case _RETURN -> tokens.add(Token.simple(TokenKind.fromString("return")));
-                    case _OPERATOR_ASSIGN -> tokens.add(Token.simple(TokenKind.fromString("=")));
-                    case _OPERATOR_COMMA -> tokens.add(Token.simple(TokenKind.fromString(",")));
-                    case _SEMICOLON -> tokens.add(Token.simple(TokenKind.fromString("Semicolon")));
-                    case _OPERATOR_ADD -> tokens.add(Token.simple(TokenKind.fromString("+")));
-                    case _OPERATOR_SUB -> tokens.add(Token.simple(TokenKind.fromString("-")));
-                    case _OPERATOR_MUL -> tokens.add(Token.simple(TokenKind.fromString("*")));
-                    case _OPERATOR_DIV -> tokens.add(Token.simple(TokenKind.fromString("/")));
-                    case _PARENTHESIS_LEFT -> tokens.add(Token.simple(TokenKind.fromString("(")));
-                    case _PARENTHESIS_RIGHT -> tokens.add(Token.simple(TokenKind.fromString(")")));
-                    case _ID -> {
-                        String symbol = builder.toString();
-                        tokens.add(Token.normal(TokenKind.fromString("id"), symbol));
-                        try {
-                            symbolTable.add(symbol);
-                        } catch (RuntimeException e) {
-                            System.out.println("Symbol " + symbol + " has been added to symbolTable.");
-                        }
-                        deque.addFirst(character);
-                    }
-                    case _INT_CONST -> {
-                        tokens.add(Token.normal(TokenKind.fromString("IntConst"), builder.toString()));
-                        deque.addFirst(character);
-                    }
-                    default -> {
-                        // 读取下一个字符
-                        character = deque.getFirst();
-                        deque.removeFirst();
-                        if (character != -1) {
-                            if (status == Status.START && !Character.isWhitespace((char)character)      ||
-                                    status == Status.SPACE && !Character.isWhitespace((char)character)  ||
-                                    status == Status.DIGIT && Character.isDigit((char)character)    )   {
-                                builder.append((char)character);
-                            }
-                            switch (status) {
-                                case R, RE, RET, RETU, RETUR, RETURN, I, IN, INT, LETTER -> {
-                                    if (Character.isLetter((char)character)) {
-                                        builder.append((char)character);
-                                    }
-                                }
-                            }
-                        }
-                    }
+
+        final var chunks = splitAtSemicolons();
+        if (chunks.size() <= 2) {
+            runChunk();
+        } else {
+            runParallel(chunks);
+        }
+        tokens.add(TokenKind.eof(), source.length(), 0);
+    }
+
+    /**
+     * 只分析已加载的源文本中 [begin, end) 一段, 用于增量分析. 不影响 run 与 getTokens 的结果,
+     * 识别出的标识符照常加入符号表. 范围的两端应当是 token 的边界.
+     *
+     * @param begin 起始下标 (含)
+     * @param end   结束下标 (不含)
+     * @return 该范围内的 token, 不含 EOF, 下标均相对于整个源文本
+     */
+    public TokenBuffer runRange(int begin, int end) {
+        final var chunk = new LexicalAnalyzer(symbolTable, source, begin, end, offHeap);
+        chunk.kernel = kernel;
+        chunk.runChunk();
+        return chunk.tokens;
+    }
+
+    /**
+     * 分析 [cursor, limit) 范围内的所有 token, 不含 EOF
+     */
+    private void runChunk() {
+        // 只记录类型与文本区间, 不构造 Token 对象
+        tokens = new TokenBuffer(source, offHeap, symbolTable);
+        TokenKind kind;
+        while ((kind = scan()) != null) {
+            tokens.add(kind, tokenStart, kind.equals(idKind) || kind.equals(intConstKind) ? tokenEnd - tokenStart : 0, tokenSymbol);
+        }
+    }
+
+    /**
+     * 各分块太小时并行得不偿失
+     */
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 将 [cursor, limit) 大致均分, 并把每个切分点后移到紧跟着的分号之后
+     *
+     * @return 切分点, 首尾分别为 cursor 与 limit
+     */
+    private List<Integer> splitAtSemicolons() {
+        final var points = new ArrayList<Integer>();
+        points.add(cursor);
+
+        final var chunkCount = Math.min(parallelism, (limit - cursor) / MIN_CHUNK_SIZE);
+        for (int idx = 1; idx < chunkCount; idx++) {
+            int point = Math.max(cursor + (int) ((long) (limit - cursor) * idx / chunkCount), points.get(points.size() - 1));
+            while (point < limit && source.charAt(point) != ';') {
+                point++;
+            }
+            if (point < limit) {
+                // 切在分号之后
+                points.add(point + 1);
+            }
+        }
+
+        points.add(limit);
+        return points;
+    }
+
+    private void runParallel(List<Integer> points) {
+        final var tasks = new ArrayList<Callable<LexicalAnalyzer>>();
+        for (int idx = 0; idx + 1 < points.size(); idx++) {
+            // 每个分块先把标识符收集到自己的符号表里, 最后再合并到共享的符号表中
+            final var chunk = new LexicalAnalyzer(new SymbolTable(), source, points.get(idx), points.get(idx + 1), offHeap);
+            chunk.kernel = kernel instanceof ScalarScanKernel ? kernel : ScanKernel.best();
+            tasks.add(() -> {
+                chunk.runChunk();
+                return chunk;
+            });
+        }
+
+        final var chunks = new ArrayList<LexicalAnalyzer>();
+        try (final var pool = new ForkJoinPool(parallelism)) {
+            for (final var future : pool.invokeAll(tasks)) {
+                chunks.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Parallel lexing failed", e);
+        }
+
+        // 按顺序拼接各分块的 token, 并把各分块的标识符合并进共享的符号表
+        tokens = new TokenBuffer(source, offHeap, symbolTable);
+        for (final var chunk : chunks) {
+            final var chunkSymbols = chunk.symbolTable;
+            final var symbolMap = new int[chunkSymbols.size()];
+            for (int id = 0; id < chunkSymbols.size(); id++) {
+                symbolMap[id] = symbolTable.intern(chunkSymbols.getById(id).getText());
+            }
+            tokens.addAll(chunk.tokens, symbolMap);
+        }
+        cursor = limit;
+    }
+
+    /**
+     * 从当前下标处分析出下一个 token, 到达文件末尾后总是返回 EOF
+     *
+     * @return 下一个 token
+     */
+    private Token nextToken() {
+        final var kind = scan();
+        if (kind == null) {
+            return Token.eof();
+        } else if (kind.equals(idKind) || kind.equals(intConstKind)) {
+            return Token.normal(kind, source.substring(tokenStart, tokenEnd));
+        } else {
+            return Token.simple(kind);
+        }
+    }
+
+    /**
+     * 从当前下标处分析出下一个 token 的类型, 并将其文本区间记录在 tokenStart 与 tokenEnd 中, 标识符的符号编号记录在 tokenSymbol 中
+     *
+     * @return token 类型, 到达文件末尾则返回 null
+     */
+    private TokenKind scan() {
+        final var table = this.table;
+        final var transitions = table.transitions;
+        final var accept = table.accept;
+        final var length = limit;
+
+        while (cursor < length) {
+            // 最长匹配: 一直走到没有转移为止, 并记下最后一次经过的接受状态
+            int state = LexerTable.START;
+            int lastAccept = LexerTable.NONE;
+            int lastEnd = cursor;
+            for (int pos = cursor; pos < length; pos++) {
+                state = transitions[state][table.classOf(source.charAt(pos))];
+                if (state == LexerTable.NONE) {
+                    break;
                 }
-                // 状态转移
-                switch (status) {
-                    case START, SPACE -> {
-                        switch (character) {
-                            case 'i' -> status = Status.I;
-                            case 'r' -> status = Status.R;
-                            case '=' -> status = Status._OPERATOR_ASSIGN;
-                            case ',' -> status = Status._OPERATOR_COMMA;
-                            case ';' -> status = Status._SEMICOLON;
-                            case '+' -> status = Status._OPERATOR_ADD;
-                            case '-' -> status = Status._OPERATOR_SUB;
-                            case '*' -> status = Status._OPERATOR_MUL;
-                            case '/' -> status = Status._OPERATOR_DIV;
-                            case '(' -> status = Status._PARENTHESIS_LEFT;
-                            case ')' -> status = Status._PARENTHESIS_RIGHT;
-                            case -1  -> status = Status.OVER;
-                            default -> {
-                                if (Character.isWhitespace((char)character)) {
-                                    status = Status.SPACE;
-                                } if (Character.isDigit((char)character)) {
-                                    status = Status.DIGIT;
-                                } else if (Character.isLetter((char)character)) {
-                                    status = Status.LETTER;
-                                }
-                            }
-                        }
-                    }
-                    case I -> {
-                        if (character == 'n') {
-                            status = Status.IN;
-                        } else if (Character.isLetter((char)character)) {
-                            status = Status.LETTER;
-                        } else {
-                            status = Status._ID;
-                        }
-                    }
-                    case IN -> {
-                        if (character == 't') {
-                            status = Status.INT;
-                        } else if (Character.isLetter((char)character)) {
-                            status = Status.LETTER;
-                        } else {
-                            status = Status._ID;
-                        }
-                    }
-                    case INT -> {
-                        if (Character.isLetter((char)character)) {
-                            status = Status.LETTER;
-                        } else {
-                            status = Status._INT;
-                        }
-                    }
-                    case R -> {
-                        if (character == 'e') {
-                            status = Status.RE;
-                        } else if (Character.isLetter((char)character)) {
-                            status = Status.LETTER;
-                        } else {
-                            status = Status._ID;
-                        }
-                    }
-                    case RE -> {
-                        if (character == 't') {
-                            status = Status.RET;
-                        } else if (Character.isLetter((char)character)) {
-                            status = Status.LETTER;
-                        } else {
-                            status = Status._ID;
-                        }
-                    }
-                    case RET -> {
-                        if (character == 'u') {
-                            status = Status.RETU;
-                        } else if (Character.isLetter((char)character)) {
-                            status = Status.LETTER;
-                        } else {
-                            status = Status._ID;
-                        }
-                    }
-                    case RETU -> {
-                        if (character == 'r') {
-                            status = Status.RETUR;
-                        } else if (Character.isLetter((char)character)) {
-                            status = Status.LETTER;
-                        } else {
-                            status = Status._ID;
-                        }
-                    }
-                    case RETUR -> {
-                        if (character == 'n') {
-                            status = Status.RETURN;
-                        } else if (Character.isLetter((char)character)) {
-                            status = Status.LETTER;
-                        } else {
-                            status = Status._ID;
-                        }
-                    }
-                    case RETURN -> {
-                        if (Character.isLetter((char)character)) {
-                            status = Status.LETTER;
-                        } else {
-                            status = Status._RETURN;
-                        }
-                    }
-                    case LETTER -> {
-                        if (!Character.isLetter((char)character)) {
-                            status = Status._ID;
-                        }
-                    }
-                    case DIGIT -> {
-                        if (!Character.isDigit((char)character)) {
-                            status = Status._INT_CONST;
-                        }
-                    }
-                    default -> status = Status.OVER;
+                final var run = table.runOf(state);
+                if (run != null) {
+                    // 该状态在这类字符上只会转移到自己, 交给扫描核心成批跳过
+                    pos = kernel.skip(run, source, pos + 1, length) - 1;
+                }
+                if (accept[state] != LexerTable.NONE) {
+                    lastAccept = accept[state];
+                    lastEnd = pos + 1;
                 }
             }
+
+            if (lastAccept == LexerTable.NONE) {
+                throw new RuntimeException("Unexpected character '%c' at %d".formatted(source.charAt(cursor), cursor));
+            }
+
+            final var kind = table.kindOf(lastAccept);
+            tokenStart = cursor;
+            tokenEnd = lastEnd;
+            // 越过最后一个接受状态多读的字符, 通过回退下标退还
+            cursor = lastEnd;
+
+            if (kind == null) {
+                // 空白
+                continue;
+            }
+            // 已存在的标识符直接查到, 不构造字符串也不抛异常
+            tokenSymbol = kind.equals(idKind) ? symbolTable.intern(source, tokenStart, tokenEnd) : -1;
+            return kind;
         }
-        tokens.add(Token.eof());
+
+        return null;
     }
 
     /**
      * 获得词法分析的结果, 保证在调用了 run 方法之后调用
+     * <br>
+     * 流式分析时返回的是只能遍历一次的惰性序列, 以 EOF 结束
      *
      * @return Token 列表
      */
@@ -251,14 +308,46 @@ public class LexicalAnalyzer {
         // 词法分析过程可以使用 Stream 或 Iterator 实现按需分析
         // 亦可以直接分析完整个文件
         // 总之实现过程能转化为一列表即可
-        return tokens;
+        if (!streaming) {
+            return tokens;
+        }
+
+        return () -> new Iterator<>() {
+            private boolean reachedEOF = false;
+
+            @Override
+            public boolean hasNext() {
+                return !reachedEOF;
+            }
+
+            @Override
+            public Token next() {
+                if (reachedEOF) {
+                    throw new NoSuchElementException();
+                }
+                final var token = nextToken();
+                reachedEOF = token.getKind() == TokenKind.eof();
+                return token;
+            }
+        };
     }
 
     public void dumpTokens(String path) {
-        FileUtils.writeLines(
-            path,
-            StreamSupport.stream(getTokens().spliterator(), false).map(Token::toString).toList()
-        );
+        if (streaming) {
+            throw new RuntimeException("Tokens are not kept in streaming mode");
+        }
+
+        tokens.dump(path);
+    }
+
+    /**
+     * @return 紧凑存储的 token 序列, 流式分析时不可用
+     */
+    public TokenBuffer getTokenBuffer() {
+        if (streaming) {
+            throw new RuntimeException("Tokens are not kept in streaming mode");
+        }
+        return tokens;
     }
 
 
@@ -0,0 +1,30 @@
+package cn.edu.hitsz.compiler.lexer;
+
+/**
+ * 逐字符查表的扫描核心, 也是向量实现处理尾部与非 ASCII 输入时的后备
+ */
+final class ScalarScanKernel implements ScanKernel {
+    private static final boolean[][] member = new boolean[CharRun.values().length][128];
+
+    static {
+        for (final var run : CharRun.values()) {
+            for (int c = 0; c < 128; c++) {
+                member[run.ordinal()][c] = run.contains(c);
+            }
+        }
+    }
+
+    @Override
+    public int skip(CharRun run, SourceBuffer source, int from, int limit) {
+        final var table = member[run.ordinal()];
+        int pos = from;
+        while (pos < limit) {
+            final var c = source.charAt(pos);
+            if (c >= 128 || !table[c]) {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,48 @@
+package cn.edu.hitsz.compiler.lexer;
+
+/**
+ * 成批跳过连续同类字符的扫描核心
+ * <br>
+ * 词法分析 DFA 中有一些状态在某类字符上只会转移到自己 (比如标识符状态遇到字母数字), 词法分析器在进入这些状态后
+ * 交给扫描核心一次性找到这段字符的末尾, 而不必逐字符查表.
+ *
+ * @see LexerTable#runOf(int)
+ */
+public interface ScanKernel {
+    /**
+     * 从 from 开始跳过连续的 run 类字符
+     *
+     * @param run    字符类
+     * @param source 源缓冲区
+     * @param from   起始下标
+     * @param limit  扫描范围的末尾 (不含)
+     * @return 第一个不属于 run 的字符的下标, 若一直到 limit 都属于则返回 limit
+     */
+    int skip(CharRun run, SourceBuffer source, int from, int limit);
+
+    /**
+     * @return 逐字符扫描的实现
+     */
+    static ScanKernel scalar() {
+        return new ScalarScanKernel();
+    }
+
+    /**
+     * 运行时加入了 jdk.incubator.vector 模块, 且类路径上有单独编译的 src-vector 目录时使用 Vector API 实现,
+     * 否则退回逐字符实现. 由于向量实现带有缓冲区, 每个词法分析器应当使用自己的实例.
+     *
+     * @return 当前环境下最快的实现
+     */
+    static ScanKernel best() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // 反射加载: 默认构建不编译向量实现, 且没有该模块时不能链接到 Vector API
+                return (ScanKernel) Class.forName("cn.edu.hitsz.compiler.lexer.VectorScanKernel")
+                    .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return scalar();
+            }
+        }
+        return scalar();
+    }
+}
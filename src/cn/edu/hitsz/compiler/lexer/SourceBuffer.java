@@ -0,0 +1,157 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 词法分析器的输入缓冲区
+ * <br>
+ * 源文件被整体映射到内存中, 词法分析器只需要维护一个下标就能扫描整个文件, 回退字符也只需要回退下标,
+ * 不再需要逐字符装箱到队列里.
+ * <br>
+ * 若文件全部由 ASCII 字符组成 (绝大多数情况), 则直接按字节访问映射区域, 不做任何拷贝;
+ * 否则按 UTF-8 解码为一个 char[] 再访问. 两种情况下下标都是以 char 计的.
+ */
+public final class SourceBuffer implements CharSequence {
+    /**
+     * 代表文件末尾的哨兵字符
+     */
+    public static final int EOF = -1;
+
+    /**
+     * 将文件映射为缓冲区
+     *
+     * @param path 文件路径
+     * @return 缓冲区
+     */
+    public static SourceBuffer map(String path) {
+        try (final var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            final var size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new RuntimeException("Source file too large: " + path);
+            }
+
+            final var mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return fromBytes(mapped);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * 用一段已在内存中的文本构造缓冲区
+     *
+     * @param text 文本
+     * @return 缓冲区
+     */
+    public static SourceBuffer of(String text) {
+        return fromBytes(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static SourceBuffer fromBytes(ByteBuffer bytes) {
+        if (isAllAscii(bytes)) {
+            return new SourceBuffer(bytes, null);
+        } else {
+            final var decoded = StandardCharsets.UTF_8.decode(bytes.duplicate());
+            final var chars = new char[decoded.remaining()];
+            decoded.get(chars);
+            return new SourceBuffer(null, chars);
+        }
+    }
+
+    /**
+     * 每次检查 8 个字节, 只要有一个字节的最高位为 1 就不是纯 ASCII
+     */
+    private static boolean isAllAscii(ByteBuffer bytes) {
+        final var limit = bytes.limit();
+        int idx = 0;
+        for (; idx + Long.BYTES <= limit; idx += Long.BYTES) {
+            if ((bytes.getLong(idx) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; idx < limit; idx++) {
+            if (bytes.get(idx) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 缓冲区是否为纯 ASCII (即按字节访问)
+     */
+    public boolean isAscii() {
+        return ascii != null;
+    }
+
+    /**
+     * @return 纯 ASCII 时为底层的字节缓冲区 (调用者不应修改), 否则为 null
+     */
+    ByteBuffer asciiBytes() {
+        return ascii;
+    }
+
+    /**
+     * 读取某个位置的字符, 越过末尾时返回 {@link #EOF}, 供词法分析器的主循环使用
+     *
+     * @param index 下标
+     * @return 字符或 EOF
+     */
+    public int at(int index) {
+        if (index >= length) {
+            return EOF;
+        }
+        return ascii != null ? ascii.get(index) : chars[index];
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return ascii != null ? (char) ascii.get(index) : chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    /**
+     * @param start 起始下标 (含)
+     * @param end   结束下标 (不含)
+     * @return 该区间内的文本
+     */
+    public String substring(int start, int end) {
+        if (ascii != null) {
+            final var bytes = new byte[end - start];
+            ascii.get(start, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        } else {
+            return new String(chars, start, end - start);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, length);
+    }
+
+    private SourceBuffer(ByteBuffer ascii, char[] chars) {
+        this.ascii = ascii;
+        this.chars = chars;
+        this.length = ascii != null ? ascii.limit() : chars.length;
+    }
+
+    // 两者有且仅有一个不为 null
+    private final ByteBuffer ascii;
+    private final char[] chars;
+    private final int length;
+}
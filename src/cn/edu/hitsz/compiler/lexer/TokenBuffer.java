@@ -0,0 +1,378 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 紧凑存储的 token 序列
+ * <br>
+ * 每个 token 只占四个 int: 类型码点, 文本在源缓冲区中的起始下标, 文本长度, 标识符在符号表中的编号, 分别存放在四个平行的数组中.
+ * 没有文本的 token (标点, 关键字) 长度为 0, 不是标识符的 token 符号编号为 -1. 只有在有人通过 {@link #get(int)} 或迭代器索取
+ * {@link Token} 时才会构造对象并生成文本字符串, 只需要文本的使用者应当直接调用 {@link #textAt(int)}, 只需要标识符的使用者应当调用
+ * {@link #symbolAt(int)}.
+ * <br>
+ * 四个数组可以放在堆上, 也可以放在堆外的直接内存中 (使用 direct {@link ByteBuffer}, 因为 {@code MemorySegment} 在 Java 21 中仍是预览特性),
+ * 后者对 GC 完全不可见.
+ */
+public final class TokenBuffer implements Iterable<Token> {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * @param source  token 文本所在的源缓冲区
+     * @param offHeap 是否放在堆外
+     */
+    public TokenBuffer(SourceBuffer source, boolean offHeap) {
+        this(source, offHeap, null);
+    }
+
+    /**
+     * @param source      token 文本所在的源缓冲区
+     * @param offHeap     是否放在堆外
+     * @param symbolTable 标识符的符号编号所在的符号表, 为 null 时不记录符号编号
+     */
+    public TokenBuffer(SourceBuffer source, boolean offHeap, SymbolTable symbolTable) {
+        this.source = source;
+        this.symbolTable = symbolTable;
+        this.kinds = Column.create(INITIAL_CAPACITY, offHeap);
+        this.starts = Column.create(INITIAL_CAPACITY, offHeap);
+        this.lengths = Column.create(INITIAL_CAPACITY, offHeap);
+        this.symbols = Column.create(INITIAL_CAPACITY, offHeap);
+        this.capacity = INITIAL_CAPACITY;
+        this.codes = KindTable.get();
+        this.simpleTokens = codes.simpleTokens();
+    }
+
+    /**
+     * 在末尾加入一个 token
+     *
+     * @param kind   类型
+     * @param start  文本起始下标
+     * @param length 文本长度, 没有文本则为 0
+     */
+    public void add(TokenKind kind, int start, int length) {
+        add(kind, start, length, -1);
+    }
+
+    /**
+     * 在末尾加入一个 token
+     *
+     * @param kind   类型
+     * @param start  文本起始下标
+     * @param length 文本长度, 没有文本则为 0
+     * @param symbol 标识符在符号表中的编号, 不是标识符则为 -1
+     */
+    public void add(TokenKind kind, int start, int length, int symbol) {
+        ensureCapacity(size + 1);
+
+        kinds.set(size, kind.getCode());
+        starts.set(size, start);
+        lengths.set(size, length);
+        symbols.set(size, symbol);
+        size++;
+    }
+
+    /**
+     * 在末尾按顺序加入另一个缓冲区中的全部 token, 两者应当基于同一个源缓冲区
+     *
+     * @param other 另一个缓冲区
+     */
+    public void addAll(TokenBuffer other) {
+        if (other.source != source) {
+            throw new RuntimeException("Can not concatenate tokens from different sources");
+        }
+
+        addRange(other, 0, other.size, 0);
+    }
+
+    /**
+     * 在末尾按顺序加入另一个缓冲区中的全部 token, 两者应当基于同一个源缓冲区.
+     * 另一个缓冲区的符号编号属于另一个符号表, 按 symbolMap 换成本缓冲区符号表中的编号.
+     *
+     * @param other     另一个缓冲区
+     * @param symbolMap 另一个符号表中的编号到本缓冲区符号表中的编号
+     */
+    public void addAll(TokenBuffer other, int[] symbolMap) {
+        final var from = size;
+        addAll(other);
+        for (int idx = from; idx < size; idx++) {
+            final var symbol = other.symbols.get(idx - from);
+            symbols.set(idx, symbol < 0 ? -1 : symbolMap[symbol]);
+        }
+    }
+
+    /**
+     * 在末尾按顺序加入另一个缓冲区中 [from, to) 范围内的 token, 并将它们的起始下标统一平移 shift.
+     * 用于在源文本被编辑后拼接编辑位置前后未受影响的 token, 此时两个缓冲区可以基于不同的源缓冲区.
+     * 两个缓冲区的符号表不同时, 加入的 token 不带符号编号.
+     *
+     * @param other 另一个缓冲区
+     * @param from  起始 token 下标 (含)
+     * @param to    结束 token 下标 (不含)
+     * @param shift 起始下标的平移量
+     */
+    public void addRange(TokenBuffer other, int from, int to, int shift) {
+        final var count = to - from;
+        final var sameSymbols = other.symbolTable == symbolTable;
+        ensureCapacity(size + count);
+        for (int idx = 0; idx < count; idx++) {
+            kinds.set(size + idx, other.kinds.get(from + idx));
+            starts.set(size + idx, other.starts.get(from + idx) + shift);
+            lengths.set(size + idx, other.lengths.get(from + idx));
+            symbols.set(size + idx, sameSymbols ? other.symbols.get(from + idx) : -1);
+        }
+        size += count;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= capacity) {
+            return;
+        }
+
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        kinds = kinds.grow(capacity);
+        starts = starts.grow(capacity);
+        lengths = lengths.grow(capacity);
+        symbols = symbols.grow(capacity);
+    }
+
+    /**
+     * @return token 数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return token 文本所在的源缓冲区
+     */
+    public SourceBuffer getSource() {
+        return source;
+    }
+
+    /**
+     * @return {@link #symbolAt(int)} 的编号所在的符号表, 不记录符号编号时为 null
+     */
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * @param index 下标
+     * @return 该 token 类型的码点, 不构造任何对象
+     */
+    public int codeAt(int index) {
+        return kinds.get(index);
+    }
+
+    public TokenKind kindAt(int index) {
+        return kindOfCode(kinds.get(index));
+    }
+
+    public int startAt(int index) {
+        return starts.get(index);
+    }
+
+    public int lengthAt(int index) {
+        return lengths.get(index);
+    }
+
+    /**
+     * @param index 下标
+     * @return 该标识符在 {@link #getSymbolTable()} 中的编号, 不是标识符或没有记录时为 -1
+     */
+    public int symbolAt(int index) {
+        return symbols.get(index);
+    }
+
+    /**
+     * @param index 下标
+     * @return 该 token 的文本, 每次调用都会生成新的字符串
+     */
+    public String textAt(int index) {
+        final var start = starts.get(index);
+        return source.substring(start, start + lengths.get(index));
+    }
+
+    /**
+     * 构造第 index 个 token 的对象. 没有文本的 token 对每种类型只构造一次.
+     * 该方法不修改任何状态, 多个线程可以同时调用 (比如并行回放的观察者).
+     *
+     * @param index 下标
+     * @return token
+     */
+    public Token get(int index) {
+        final var code = kinds.get(index);
+        final var length = lengths.get(index);
+        if (length == 0) {
+            return simpleTokens[code - codes.minCode()];
+        }
+
+        return Token.normal(kindOfCode(code), textAt(index));
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Token next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * 按 {@link Token#toString()} 的格式直接从缓冲区输出所有 token, 不构造任何 Token 对象
+     *
+     * @param path 文件路径
+     */
+    public void dump(String path) {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+            for (int idx = 0; idx < size; idx++) {
+                writer.write('(');
+                writer.write(kindAt(idx).getIdentifier());
+                writer.write(',');
+                final var start = starts.get(idx);
+                final var end = start + lengths.get(idx);
+                for (int pos = start; pos < end; pos++) {
+                    writer.write(source.charAt(pos));
+                }
+                writer.write(')');
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private final SourceBuffer source;
+    private final SymbolTable symbolTable;
+    private Column kinds;
+    private Column starts;
+    private Column lengths;
+    private Column symbols;
+    private int capacity;
+    private int size = 0;
+
+    // 构造时取得, 之后只读; 各缓冲区共用同一份码点表, 但各自持有一份没有文本的 token
+    private final KindTable codes;
+    private final Token[] simpleTokens;
+
+    private TokenKind kindOfCode(int code) {
+        return codes.kindByCode()[code - codes.minCode()];
+    }
+
+    /**
+     * 码点到 TokenKind 的映射, 码点很小 (EOF 为 -1), 直接用数组.
+     * 首次使用时在锁内建好整张表再发布, 其它线程不会看到建到一半的表.
+     */
+    private record KindTable(TokenKind[] kindByCode, int minCode) {
+        private static KindTable instance = null;
+
+        static synchronized KindTable get() {
+            if (instance == null) {
+                final var all = TokenKind.allAllowedTokenKinds().values();
+                final var minCode = all.stream().mapToInt(TokenKind::getCode).min().orElse(0);
+                final var maxCode = all.stream().mapToInt(TokenKind::getCode).max().orElse(0);
+                final var kindByCode = new TokenKind[maxCode - minCode + 1];
+                for (final var kind : all) {
+                    kindByCode[kind.getCode() - minCode] = kind;
+                }
+                instance = new KindTable(kindByCode, minCode);
+            }
+            return instance;
+        }
+
+        /**
+         * @return 每种类型一个没有文本的 token, 下标为码点减去 minCode
+         */
+        Token[] simpleTokens() {
+            final var tokens = new Token[kindByCode.length];
+            for (final var kind : kindByCode) {
+                if (kind != null) {
+                    tokens[kind.getCode() - minCode] = kind.getCode() == TokenKind.eof().getCode() ? Token.eof() : Token.simple(kind);
+                }
+            }
+            return tokens;
+        }
+    }
+
+    /**
+     * 一列 int, 在堆上或堆外
+     */
+    private interface Column {
+        static Column create(int capacity, boolean offHeap) {
+            return offHeap ? new DirectColumn(capacity) : new HeapColumn(new int[capacity]);
+        }
+
+        int get(int index);
+
+        void set(int index, int value);
+
+        Column grow(int capacity);
+    }
+
+    private record HeapColumn(int[] data) implements Column {
+        @Override
+        public int get(int index) {
+            return data[index];
+        }
+
+        @Override
+        public void set(int index, int value) {
+            data[index] = value;
+        }
+
+        @Override
+        public Column grow(int capacity) {
+            return new HeapColumn(Arrays.copyOf(data, capacity));
+        }
+    }
+
+    private record DirectColumn(IntBuffer data) implements Column {
+        DirectColumn(int capacity) {
+            this(ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer());
+        }
+
+        @Override
+        public int get(int index) {
+            return data.get(index);
+        }
+
+        @Override
+        public void set(int index, int value) {
+            data.put(index, value);
+        }
+
+        @Override
+        public Column grow(int capacity) {
+            final var grown = new DirectColumn(capacity);
+            grown.data.put(0, data, 0, data.capacity());
+            return grown;
+        }
+    }
+}
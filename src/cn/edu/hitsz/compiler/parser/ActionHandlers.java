@@ -0,0 +1,259 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个观察者按产生式与按终结符注册的语义动作
+ * <br>
+ * 与 yacc 中写在每条产生式后面的动作类似, 观察者只为它关心的产生式 (按 grammar.txt 中的行号) 与终结符注册处理函数,
+ * 可另外注册一个 "其余" 处理函数兜底. 没有注册任何处理函数的产生式或终结符上, 该观察者根本不会被调用.
+ * <br>
+ * {@link SyntaxAnalyzer} 在分析开始前把所有观察者的处理函数合并为按产生式, 按终结符索引的数组, 每个动作只需一次数组访问
+ * 即可找到所有需要调用的处理函数.
+ *
+ * @see IndexedActionObserver
+ */
+public final class ActionHandlers {
+    @FunctionalInterface
+    public interface ShiftHandler {
+        void onShift(Status currentStatus, Token currentToken);
+    }
+
+    /**
+     * 按符号编号处理标识符移入的处理函数. 词法单元存放在 TokenBuffer 中且其符号编号属于分析器的符号表时,
+     * 驱动程序直接传入词法分析时记下的编号, 不为它构造 Token; 否则 (流式分析, 增量分析等) 仍调用 onShift(Status, Token).
+     */
+    public interface SymbolShiftHandler extends ShiftHandler {
+        void onShift(Status currentStatus, int symbol);
+    }
+
+    @FunctionalInterface
+    public interface ReduceHandler {
+        void onReduce(Status currentStatus, Production production);
+    }
+
+    @FunctionalInterface
+    public interface AcceptHandler {
+        void onAccept(Status currentStatus);
+    }
+
+    /**
+     * 获得一个观察者的处理函数. 普通的 {@link ActionObserver} 被视为在所有产生式与终结符上都注册了处理函数.
+     *
+     * @param observer 观察者
+     * @return 处理函数
+     */
+    public static ActionHandlers of(ActionObserver observer) {
+        if (observer instanceof IndexedActionObserver indexed) {
+            return indexed.getHandlers();
+        }
+
+        return new ActionHandlers()
+            .onOtherShift(observer::whenShift)
+            .onOtherReduce(observer::whenReduce)
+            .onAccept(observer::whenAccept);
+    }
+
+    public ActionHandlers() {
+        final var kinds = TokenKind.allAllowedTokenKinds().values();
+        this.minCode = kinds.stream().mapToInt(TokenKind::getCode).min().orElse(0);
+        final var maxCode = kinds.stream().mapToInt(TokenKind::getCode).max().orElse(0);
+        this.shiftByCode = new ShiftHandler[maxCode - minCode + 1];
+        this.reduceByProduction = new ReduceHandler[GrammarInfo.getProductionsInOrder().size() + 1];
+    }
+
+    /**
+     * 为一条产生式注册处理函数
+     *
+     * @param production 产生式在 grammar.txt 中的行号
+     * @param handler    处理函数
+     * @return this
+     */
+    public ActionHandlers onReduce(int production, ReduceHandler handler) {
+        if (reduceByProduction[production] != null) {
+            throw new RuntimeException("Reduce handler for production %d registered twice".formatted(production));
+        }
+        reduceByProduction[production] = handler;
+        return this;
+    }
+
+    /**
+     * 为所有没有单独注册的产生式注册处理函数
+     */
+    public ActionHandlers onOtherReduce(ReduceHandler handler) {
+        otherReduce = handler;
+        return this;
+    }
+
+    /**
+     * 为一种终结符的移入注册处理函数
+     *
+     * @param kind    终结符的标识符, 如 "id"
+     * @param handler 处理函数
+     * @return this
+     */
+    public ActionHandlers onShift(String kind, ShiftHandler handler) {
+        final var slot = TokenKind.fromString(kind).getCode() - minCode;
+        if (shiftByCode[slot] != null) {
+            throw new RuntimeException("Shift handler for %s registered twice".formatted(kind));
+        }
+        shiftByCode[slot] = handler;
+        return this;
+    }
+
+    /**
+     * 为所有没有单独注册的终结符的移入注册处理函数
+     */
+    public ActionHandlers onOtherShift(ShiftHandler handler) {
+        otherShift = handler;
+        return this;
+    }
+
+    public ActionHandlers onAccept(AcceptHandler handler) {
+        accept = handler;
+        return this;
+    }
+
+    /**
+     * 按注册的处理函数分派一次移入, 未注册时什么也不做
+     */
+    public void shift(Status currentStatus, Token currentToken) {
+        final var handler = shiftHandler(currentToken.getKind().getCode());
+        if (handler != null) {
+            handler.onShift(currentStatus, currentToken);
+        }
+    }
+
+    /**
+     * 按注册的处理函数分派 buffer 中第 position 个 token 的移入, 未注册时什么也不做
+     *
+     * @param symbol 该 token 在观察者的符号表中的编号, 未知时为 -1
+     */
+    public void shift(Status currentStatus, TokenBuffer buffer, int position, int symbol) {
+        final var handler = shiftHandler(buffer.codeAt(position));
+        if (symbol >= 0 && handler instanceof SymbolShiftHandler symbolHandler) {
+            symbolHandler.onShift(currentStatus, symbol);
+        } else if (handler != null) {
+            handler.onShift(currentStatus, buffer.get(position));
+        }
+    }
+
+    /**
+     * 按注册的处理函数分派一次规约, 未注册时什么也不做
+     */
+    public void reduce(Status currentStatus, Production production) {
+        final var handler = reduceHandler(production.index());
+        if (handler != null) {
+            handler.onReduce(currentStatus, production);
+        }
+    }
+
+    /**
+     * 分派一次接受, 未注册时什么也不做
+     */
+    public void accept(Status currentStatus) {
+        if (accept != null) {
+            accept.onAccept(currentStatus);
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private final int minCode;
+    private final ShiftHandler[] shiftByCode;
+    private final ReduceHandler[] reduceByProduction;
+    private ShiftHandler otherShift = null;
+    private ReduceHandler otherReduce = null;
+    private AcceptHandler accept = null;
+
+    ShiftHandler shiftHandler(int code) {
+        final var handler = shiftByCode[code - minCode];
+        return handler != null ? handler : otherShift;
+    }
+
+    ReduceHandler reduceHandler(int production) {
+        final var handler = reduceByProduction[production];
+        return handler != null ? handler : otherReduce;
+    }
+
+    /**
+     * @return 是否为该产生式单独注册了处理函数 (不含 "其余" 处理函数)
+     */
+    boolean hasReduceHandler(int production) {
+        return reduceByProduction[production] != null;
+    }
+
+    AcceptHandler acceptHandler() {
+        return accept;
+    }
+
+    int minCode() {
+        return minCode;
+    }
+
+    int codeCount() {
+        return shiftByCode.length;
+    }
+
+    int productionLimit() {
+        return reduceByProduction.length;
+    }
+
+    /**
+     * 按观察者的注册顺序合并多个观察者的处理函数
+     */
+    static final class Dispatch {
+        Dispatch(List<ActionHandlers> all) {
+            final var first = all.isEmpty() ? new ActionHandlers() : all.get(0);
+            this.minCode = first.minCode();
+            this.shiftByCode = new ShiftHandler[first.codeCount()][];
+            for (int slot = 0; slot < shiftByCode.length; slot++) {
+                final var handlers = new ArrayList<ShiftHandler>();
+                for (final var observer : all) {
+                    final var handler = observer.shiftHandler(slot + minCode);
+                    if (handler != null) {
+                        handlers.add(handler);
+                    }
+                }
+                shiftByCode[slot] = handlers.toArray(new ShiftHandler[0]);
+            }
+
+            this.reduceByProduction = new ReduceHandler[first.productionLimit()][];
+            this.reduceAttached = new boolean[first.productionLimit()];
+            for (int production = 0; production < reduceByProduction.length; production++) {
+                final var handlers = new ArrayList<ReduceHandler>();
+                for (final var observer : all) {
+                    final var handler = observer.reduceHandler(production);
+                    if (handler != null) {
+                        handlers.add(handler);
+                    }
+                    reduceAttached[production] |= observer.hasReduceHandler(production);
+                }
+                reduceByProduction[production] = handlers.toArray(new ReduceHandler[0]);
+            }
+
+            final var accepts = new ArrayList<AcceptHandler>();
+            for (final var observer : all) {
+                if (observer.acceptHandler() != null) {
+                    accepts.add(observer.acceptHandler());
+                }
+            }
+            this.accept = accepts.toArray(new AcceptHandler[0]);
+        }
+
+        final int minCode;
+        final ShiftHandler[][] shiftByCode;
+        final ReduceHandler[][] reduceByProduction;
+        // 有观察者为其单独注册了语义动作的产生式
+        final boolean[] reduceAttached;
+        final AcceptHandler[] accept;
+    }
+}
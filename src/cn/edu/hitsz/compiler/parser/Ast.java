@@ -0,0 +1,207 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * 存放在整数数组中的语法树, 由 {@link AstBuilder} 构造
+ * <br>
+ * 结点按创建的顺序 (即移入与规约的顺序, 子结点总在父结点之前) 编号, 每个结点只占四个 int, 没有任何结点对象:
+ * <ul>
+ *     <li>kind: 叶结点 (终结符) 为其词法单元类型的码点, 内部结点为其产生式在 grammar.txt 中的行号取负;</li>
+ *     <li>firstChild / nextSibling: 第一个子结点与下一个兄弟结点, 没有则为 -1;</li>
+ *     <li>token: 叶结点为该词法单元在 TokenBuffer 中的下标, 内部结点为其子树中的第一个词法单元 (空产生式为其后的词法单元).</li>
+ * </ul>
+ * 构造完成后不再修改, 可以在多个线程中同时读取. 一千万个结点约占 160 MB, 构造时按倍数扩容, 数组至多再空出一倍.
+ */
+public final class Ast {
+    /**
+     * @return 结点数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 根结点, 即开始产生式的结点
+     */
+    public int root() {
+        return root;
+    }
+
+    public int kind(int node) {
+        return kind[node];
+    }
+
+    public boolean isLeaf(int node) {
+        return kind[node] >= 0;
+    }
+
+    /**
+     * @return 内部结点的产生式行号
+     */
+    public int production(int node) {
+        return -kind[node];
+    }
+
+    /**
+     * @return 叶结点的词法单元类型的码点
+     */
+    public int code(int node) {
+        return kind[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int token(int node) {
+        return token[node];
+    }
+
+    /**
+     * 以 node 为根的子树的先序遍历, 使用显式的栈, 不受树高的限制
+     *
+     * @param node    子树的根
+     * @param visitor 依次接收各结点
+     */
+    public void preorder(int node, IntConsumer visitor) {
+        var stack = new int[64];
+        var top = 0;
+        stack[0] = node;
+        while (top >= 0) {
+            final var current = stack[top--];
+            visitor.accept(current);
+            // 先压入兄弟再压入第一个子结点, 整棵子树都在兄弟之前访问
+            if (top + 2 >= stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (current != node && nextSibling[current] >= 0) {
+                stack[++top] = nextSibling[current];
+            }
+            if (firstChild[current] >= 0) {
+                stack[++top] = firstChild[current];
+            }
+        }
+    }
+
+    /**
+     * @param head 产生式头的名字, 如 "S"
+     * @return 按先序排列的, 产生式头为 head 的所有结点
+     */
+    public int[] nodesOf(String head) {
+        final var productions = GrammarInfo.getProductionsInOrder();
+        final var matches = new boolean[productions.size() + 1];
+        for (final var production : productions) {
+            matches[production.index()] = production.head().getTermName().equals(head);
+        }
+
+        final var result = IntStream.builder();
+        preorder(root, node -> {
+            if (!isLeaf(node) && matches[production(node)]) {
+                result.add(node);
+            }
+        });
+        return result.build().toArray();
+    }
+
+    /**
+     * 在公共 ForkJoinPool 中并行地处理各结点 (如 {@link #nodesOf(String)} 得到的各条语句), action 之间不应有依赖
+     *
+     * @param nodes  结点
+     * @param action 对每个结点的处理
+     */
+    public void forEachParallel(int[] nodes, IntConsumer action) {
+        IntStream.of(nodes).parallel().forEach(action);
+    }
+
+    /**
+     * 写出到文件: 文件头 (MAGIC, VERSION, 结点数, 根结点) 之后依次为四个数组, 均为小端序 int
+     *
+     * @param path 文件路径
+     */
+    public void write(Path path) {
+        try (final var channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final var buffer = ByteBuffer.allocateDirect(CHUNK * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(root).flip();
+            channel.write(buffer);
+            for (final var array : new int[][]{kind, firstChild, nextSibling, token}) {
+                for (int from = 0; from < size; from += CHUNK) {
+                    buffer.clear();
+                    buffer.asIntBuffer().put(array, from, Math.min(CHUNK, size - from));
+                    buffer.limit(Math.min(CHUNK, size - from) * Integer.BYTES);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write AST to " + path, e);
+        }
+    }
+
+    /**
+     * 读取 {@link #write(Path)} 写出的语法树
+     *
+     * @param path 文件路径
+     * @return 语法树
+     */
+    public static Ast read(Path path) {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var ints = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            if (ints.get() != MAGIC || ints.get() != VERSION) {
+                throw new RuntimeException("Not an AST file: " + path);
+            }
+            final var size = ints.get();
+            final var root = ints.get();
+            return new Ast(size, root, take(ints, size), take(ints, size), take(ints, size), take(ints, size));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read AST from " + path, e);
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private static final int MAGIC = 0x41535431;
+    private static final int VERSION = 1;
+    private static final int CHUNK = 1 << 14;
+
+    private final int size;
+    private final int root;
+    // 四个数组的长度可能大于 size, 多出的部分不使用
+    private final int[] kind;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] token;
+
+    Ast(int size, int root, int[] kind, int[] firstChild, int[] nextSibling, int[] token) {
+        this.size = size;
+        this.root = root;
+        this.kind = kind;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.token = token;
+    }
+
+    private static int[] take(IntBuffer ints, int count) {
+        final var array = new int[count];
+        ints.get(array);
+        return array;
+    }
+}
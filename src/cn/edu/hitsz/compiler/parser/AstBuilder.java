@@ -0,0 +1,109 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.Arrays;
+
+/**
+ * 构造 {@link Ast} 的观察者
+ * <br>
+ * 每次移入创建一个叶结点, 每次规约创建一个内部结点并把属性栈中产生式体各符号的结点 ($1..$n) 串成它的子结点,
+ * 接受时再为开始产生式创建根结点. 结点直接写入四个按需扩容的 int 数组, 属性栈中只存放结点编号 ({@link AttributeStack.IntSlots}),
+ * 整个过程不为结点创建对象.
+ * <br>
+ * 叶结点的词法单元下标按移入的顺序计数, 与 TokenBuffer 中的下标一致. 在 {@link cn.edu.hitsz.compiler.parser.table.ReductionShortcuts.Mode#ELIDE}
+ * 模式下被跳过的单产生式不会生成结点, 其子结点直接代替它; 需要完整的语法树时应使用 REPORT_ELIDED 或不开启该优化.
+ */
+public class AstBuilder implements IndexedActionObserver {
+    private final AttributeStack.IntSlots nodes = new AttributeStack.IntSlots();
+    private final ActionHandlers handlers = new ActionHandlers()
+        .onOtherShift((status, token) -> nodes.set(leaf(token)))
+        .onOtherReduce((status, production) -> nodes.set(interior(production)))
+        .onAccept(status -> accept());
+
+    @Override
+    public ActionHandlers getHandlers() {
+        return handlers;
+    }
+
+    @Override
+    public void setAttributeStack(AttributeStack attributes) {
+        attributes.attach(nodes);
+    }
+
+    @Override
+    public void setSymbolTable(SymbolTable table) {
+    }
+
+    /**
+     * @return 最近一次分析得到的语法树, 还没有分析完成时为 null
+     */
+    public Ast getAst() {
+        return ast;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private int[] kind = new int[1024];
+    private int[] firstChild = new int[1024];
+    private int[] nextSibling = new int[1024];
+    private int[] token = new int[1024];
+    private int size = 0;
+    // 已移入的词法单元数, 即下一个词法单元的下标
+    private int shifted = 0;
+    // 最近创建的结点, 接受时即为开始产生式体的结点
+    private int last = -1;
+    private Ast ast = null;
+
+    private int leaf(Token currentToken) {
+        final var node = allocate(currentToken.getKind().getCode(), shifted++);
+        firstChild[node] = -1;
+        return node;
+    }
+
+    private int interior(Production production) {
+        final var length = production.body().size();
+        final var first = length == 0 ? -1 : nodes.get(1);
+        final var node = allocate(-production.index(), first < 0 ? shifted : token[first]);
+        firstChild[node] = first;
+        for (int i = 1; i < length; i++) {
+            nextSibling[nodes.get(i)] = nodes.get(i + 1);
+        }
+        return node;
+    }
+
+    private void accept() {
+        final var body = last;
+        final var root = allocate(-GrammarInfo.getBeginProduction().index(), body < 0 ? 0 : token[body]);
+        firstChild[root] = body;
+        ast = new Ast(size, root, kind, firstChild, nextSibling, token);
+
+        // 数组已交给 ast, 下一次分析使用新的数组
+        kind = new int[1024];
+        firstChild = new int[1024];
+        nextSibling = new int[1024];
+        token = new int[1024];
+        size = 0;
+        shifted = 0;
+        last = -1;
+    }
+
+    private int allocate(int nodeKind, int tokenIndex) {
+        if (size == kind.length) {
+            final var capacity = size * 2;
+            kind = Arrays.copyOf(kind, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            token = Arrays.copyOf(token, capacity);
+        }
+        final var node = size++;
+        kind[node] = nodeKind;
+        nextSibling[node] = -1;
+        token[node] = tokenIndex;
+        last = node;
+        return node;
+    }
+}
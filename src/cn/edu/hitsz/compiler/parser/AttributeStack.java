@@ -0,0 +1,209 @@
+package cn.edu.hitsz.compiler.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 语法制导翻译用的属性栈
+ * <br>
+ * 属性栈与语法分析栈一一对应: 栈中每个文法符号占一个槽位, 由驱动程序 (而不是各个观察者) 在移入与规约时统一维护.
+ * 各观察者把自己的属性存放在挂到栈上的通道 ({@link Slots} 或存放 int 的 {@link IntSlots}) 中, 所有通道共用同一套槽位下标.
+ * <ul>
+ *     <li>规约 A -> X1 X2 ... Xn 时, 观察者通过 get(i) 读取 Xi 的属性 (即 yacc 中的 $i), 通过 set 写入 A 的属性 ($$);</li>
+ *     <li>移入时, set 写入被移入的终结符的属性;</li>
+ *     <li>规约时没有写入 $$ 的通道保留 $1 的值 (与 yacc 的默认动作 $$ = $1 相同), 因此 E -> A 这样的单产生式无需任何处理.</li>
+ * </ul>
+ * $$ 与 $1 位于同一个槽位, 同一个通道应当先读取所有 $i 再写入 $$. 每次规约只移动栈顶, 与产生式长度和观察者数量都无关.
+ */
+public final class AttributeStack {
+    /**
+     * 存放对象的属性通道
+     *
+     * @param <T> 属性类型
+     */
+    public static final class Slots<T> extends Channel {
+        /**
+         * @param i 产生式体中符号的位置, 从 1 开始
+         * @return 正在规约的产生式体中第 i 个符号的属性, 即 $i
+         */
+        @SuppressWarnings("unchecked")
+        public T get(int i) {
+            return (T) values[owner.base + i - 1];
+        }
+
+        /**
+         * 写入当前动作产生的文法符号的属性, 即 $$
+         */
+        public void set(T value) {
+            values[owner.base] = value;
+        }
+
+        private Object[] values = new Object[0];
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void reset(int slot) {
+            values[slot] = null;
+        }
+
+        @Override
+        void release(int from, int to) {
+            Arrays.fill(values, from, to, null);
+        }
+    }
+
+    /**
+     * 存放 int 的属性通道, 不对属性装箱
+     */
+    public static final class IntSlots extends Channel {
+        /**
+         * @param i 产生式体中符号的位置, 从 1 开始
+         * @return 正在规约的产生式体中第 i 个符号的属性, 即 $i
+         */
+        public int get(int i) {
+            return values[owner.base + i - 1];
+        }
+
+        /**
+         * 写入当前动作产生的文法符号的属性, 即 $$
+         */
+        public void set(int value) {
+            values[owner.base] = value;
+        }
+
+        private int[] values = new int[0];
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void reset(int slot) {
+            values[slot] = 0;
+        }
+
+        @Override
+        void release(int from, int to) {
+        }
+    }
+
+    /**
+     * 把一个通道挂到该栈上. 通道只属于一个栈, 挂到新的栈上时会离开原来的栈, 原有的属性不会保留.
+     *
+     * @param channel 通道
+     */
+    public void attach(Channel channel) {
+        if (channel.owner == this) {
+            return;
+        }
+        if (channel.owner != null) {
+            channel.owner.channels.remove(channel);
+        }
+        channel.owner = this;
+        channel.resize(capacity);
+        channels.add(channel);
+        channelArray = channels.toArray(new Channel[0]);
+    }
+
+    /**
+     * @return 栈中的符号数
+     */
+    public int size() {
+        return top + 1;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 属性通道, 只能是 {@link Slots} 或 {@link IntSlots}
+     */
+    public abstract static sealed class Channel permits Slots, IntSlots {
+        AttributeStack owner = null;
+
+        abstract void resize(int capacity);
+
+        /**
+         * 把一个槽位恢复为默认值
+         */
+        abstract void reset(int slot);
+
+        /**
+         * 释放 [from, to) 中的对象引用
+         */
+        abstract void release(int from, int to);
+    }
+
+    private final List<Channel> channels = new ArrayList<>();
+    private Channel[] channelArray = new Channel[0];
+    private int capacity = 64;
+    // 栈顶符号的槽位, 栈为空时为 -1
+    private int top = -1;
+    // 当前动作的 $$ 与 $1 所在的槽位
+    private int base = 0;
+
+    /**
+     * 移入前调用: 为被移入的终结符压入一个槽位, 所有通道中该槽位均为默认值
+     */
+    void push() {
+        base = ++top;
+        clearSlot(base);
+    }
+
+    /**
+     * 规约前调用: 把产生式体的 n 个符号作为 $1..$n
+     */
+    void enter(int bodyLength) {
+        base = top - bodyLength + 1;
+        if (bodyLength == 0) {
+            clearSlot(base);
+        }
+    }
+
+    /**
+     * 规约后调用: 弹出产生式体, 只留下 $$
+     */
+    void leave() {
+        top = base;
+    }
+
+    /**
+     * 把栈截断为 size 个符号, 用于从某个已知的分析栈继续分析
+     */
+    void truncate(int size) {
+        release(size);
+        top = size - 1;
+    }
+
+    /**
+     * 清空栈, 并释放各通道持有的对象
+     */
+    void clear() {
+        truncate(0);
+    }
+
+    private void clearSlot(int slot) {
+        if (slot == capacity) {
+            capacity *= 2;
+            for (final var channel : channelArray) {
+                channel.resize(capacity);
+            }
+        }
+        for (final var channel : channelArray) {
+            channel.reset(slot);
+        }
+    }
+
+    private void release(int size) {
+        if (size <= top) {
+            for (final var channel : channelArray) {
+                channel.release(size, top + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+
+/**
+ * 由 {@link ParserCodeGenerator} 从 LR 分析表生成的直接编码的语法分析器
+ * <br>
+ * 分析过程与 {@link SyntaxAnalyzer#run()} 完全一致, 动作通过 notifier 的 callWhenInShift/callWhenInReduce/callWhenInAccept
+ * 通知注册在其上的观察者, 并遵循 notifier 上设置的 {@link cn.edu.hitsz.compiler.parser.table.ReductionShortcuts}.
+ * notifier 设置了并行通知观察者或表达式分析时, 直接编码的分析器无法照做, 会抛出异常.
+ */
+public interface DirectParser {
+    /**
+     * 分析一列词法单元, 末尾应为 EOF
+     *
+     * @param tokens   词法单元
+     * @param notifier 注册了观察者的 SyntaxAnalyzer
+     */
+    void run(TokenBuffer tokens, SyntaxAnalyzer notifier);
+}
@@ -0,0 +1,96 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+
+import java.util.Arrays;
+
+/**
+ * 语法分析过程中的动作记录
+ * <br>
+ * 每个动作占两个 int: 第一个的低 2 位为动作类型 (与 {@link CompiledLRTable} 中的编码相同), 其余位为状态编号;
+ * 第二个为载荷 (移入时为 token 下标, 规约时为产生式行号, 接受时为 0).
+ * 记录完成后, 各观察者可以分别在自己的线程中回放, 得到与分析时直接通知完全相同的调用序列.
+ */
+public final class EventLog {
+    /**
+     * @param tokens 被分析的 token 序列, 移入动作直接记录其下标. 其符号编号所在的符号表即观察者使用的符号表,
+     *               回放时标识符直接以符号编号交给观察者, 回放线程因而不会向符号表中加入符号
+     */
+    EventLog(TokenBuffer tokens) {
+        this.buffer = tokens;
+    }
+
+    void shift(int state, int tokenIndex) {
+        append((state << 2) | CompiledLRTable.SHIFT, tokenIndex);
+    }
+
+    void reduce(int state, int production) {
+        append((state << 2) | CompiledLRTable.REDUCE, production);
+    }
+
+    void accept(int state) {
+        append((state << 2) | CompiledLRTable.ACCEPT, 0);
+    }
+
+    /**
+     * @return 记录的动作数
+     */
+    public int size() {
+        return size / 2;
+    }
+
+    /**
+     * 按记录的顺序向观察者回放所有动作. 多个观察者可以在不同线程中同时回放同一个记录.
+     * {@link IndexedActionObserver} 在回放期间会被挂到一个单独的属性栈上.
+     *
+     * @param observer 观察者
+     * @param table    记录时使用的分析表, 用于取回 Status 与 Production 对象
+     */
+    public void replay(ActionObserver observer, CompiledLRTable table) {
+        final var attributes = new AttributeStack();
+        if (observer instanceof IndexedActionObserver indexed) {
+            indexed.setAttributeStack(attributes);
+        }
+        final var handlers = observer instanceof IndexedActionObserver indexed ? indexed.getHandlers() : null;
+        for (int idx = 0; idx < size; idx += 2) {
+            final var header = events[idx];
+            final var payload = events[idx + 1];
+            final var status = table.status(header >>> 2);
+            switch (header & 3) {
+                case CompiledLRTable.SHIFT -> {
+                    attributes.push();
+                    if (handlers != null) {
+                        handlers.shift(status, buffer, payload, buffer.symbolAt(payload));
+                    } else {
+                        observer.whenShift(status, buffer.get(payload));
+                    }
+                }
+                case CompiledLRTable.REDUCE -> {
+                    attributes.enter(table.bodyLengthOf(payload));
+                    observer.whenReduce(status, table.production(payload));
+                    attributes.leave();
+                }
+                case CompiledLRTable.ACCEPT -> {
+                    observer.whenAccept(status);
+                    attributes.clear();
+                }
+                default -> throw new RuntimeException("Broken event log");
+            }
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private final TokenBuffer buffer;
+    private int[] events = new int[1024];
+    private int size = 0;
+
+    private void append(int header, int payload) {
+        if (size + 2 > events.length) {
+            events = Arrays.copyOf(events, events.length * 2);
+        }
+        events[size++] = header;
+        events[size++] = payload;
+    }
+}
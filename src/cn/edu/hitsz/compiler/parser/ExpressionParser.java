@@ -0,0 +1,441 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.NonTerminal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 嵌入 LR 驱动程序的表达式算符优先分析 (precedence climbing)
+ * <br>
+ * 在分析表的文法中识别如下的分层表达式文法, 层数与每层的运算符个数任意, 运算符都是左结合的二元运算符:
+ * <pre>
+ * N_1 -> N_1 op N_2 | ... | N_2;
+ * ...
+ * N_k -> N_k op N_{k+1} | ... | N_{k+1};
+ * N_{k+1} -> ( N_1 ) | t | ...;
+ * </pre>
+ * 实验文法中即为 E, A 与 B. LR 驱动程序在期待 N_1 的状态 (入口状态) 遇到表达式的第一个词法单元时, 把整个表达式交给本类:
+ * 本类按运算符所在的层直接决定何时规约, 不再为决定动作查 ACTION 表, 分析完后由驱动程序转移到 GOTO(入口状态, N_1) 继续.
+ * <br>
+ * 分层文法是无二义的, 语法树唯一, 因此本类通知的移入与规约 (包括 E -> A 这样的单产生式) 与 LR 分析的顺序完全一致.
+ * 观察者收到的 Status 也与 LR 分析相同: 本类维护一个从入口状态开始的状态栈, 移入时查一次 ACTION 表取得目标状态, 规约时查一次 GOTO 表.
+ * 与 LR 驱动程序相比, 省去的只是每次规约之前读取向前看符号并查 ACTION 表的那一次.
+ */
+public final class ExpressionParser {
+    /**
+     * 接收分析过程中的动作, 由驱动程序实现
+     */
+    interface Events {
+        /**
+         * @param target   移入后的状态
+         * @param position 被移入的词法单元的下标
+         */
+        void shift(int target, int position);
+
+        /**
+         * @param state      规约时的栈顶状态
+         * @param production 产生式行号
+         */
+        void reduce(int state, int production);
+    }
+
+    /**
+     * 在分析表中识别分层表达式文法. 有多个候选时取层数最多的
+     *
+     * @param table 分析表
+     * @return 分析器, 文法中没有分层表达式或没有可用的入口状态时为 null
+     */
+    public static ExpressionParser detect(CompiledLRTable table) {
+        final var grammar = new Grammar(table);
+        ExpressionParser best = null;
+        for (int root = table.terminalCount(); root < table.terminalCount() + table.nonTerminalCount(); root++) {
+            final var candidate = grammar.layersFrom(root);
+            if (candidate != null && (best == null || candidate.levelCount() > best.levelCount())) {
+                best = candidate;
+            }
+        }
+        return best == null || best.entryStateCount() == 0 ? null : best;
+    }
+
+    /**
+     * @return 表达式文法的开始符号 N_1 的非终结符编号
+     */
+    public int root() {
+        return levelColumns[0];
+    }
+
+    /**
+     * @return 二元运算符的层数 k
+     */
+    public int levelCount() {
+        return unitOf.length;
+    }
+
+    /**
+     * @return 可以交给本类分析的入口状态数
+     */
+    public int entryStateCount() {
+        var count = 0;
+        for (final var entry : entries) {
+            count += entry ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * @return 各层的非终结符与运算符, 如 "E(+ -) A(*) B"
+     */
+    public String describe() {
+        final var result = new StringBuilder();
+        for (int level = 0; level <= levelCount(); level++) {
+            result.append(level == 0 ? "" : " ").append(table.nonTerminal(levelColumns[level]));
+            if (level < levelCount()) {
+                final var operators = new ArrayList<String>();
+                for (int terminal = 0; terminal < levelOf.length; terminal++) {
+                    if (levelOf[terminal] == level) {
+                        operators.add(table.terminal(terminal).toString());
+                    }
+                }
+                result.append("(").append(String.join(" ", operators)).append(")");
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param state    LR 分析当前的状态
+     * @param terminal 向前看符号的终结符编号
+     * @return 是否应当在此处把表达式交给本类
+     */
+    boolean startsAt(int state, int terminal) {
+        return entries[state] && terminal >= 0 && (terminal == open || primaryOf[terminal] != 0);
+    }
+
+    /**
+     * 从入口状态开始分析一个完整的表达式, 依次通知其中的移入与规约, 不包括最后在入口状态上对 N_1 的 GOTO
+     *
+     * @param entry    入口状态
+     * @param position 表达式第一个词法单元的下标
+     * @param tokens   词法单元
+     * @param events   接收动作
+     * @return 表达式之后第一个词法单元的下标
+     */
+    int parse(int entry, int position, TokenBuffer tokens, Events events) {
+        this.tokens = tokens;
+        this.events = events;
+        this.position = position;
+        top = 0;
+        stack[0] = entry;
+        climb(0);
+        this.tokens = null;
+        this.events = null;
+        return this.position;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private final CompiledLRTable table;
+    // 各层的非终结符编号, 最后一个为初等式 N_{k+1}
+    private final int[] levelColumns;
+    // N_i -> N_{i+1} 的产生式行号, 以层为下标
+    private final int[] unitOf;
+    // 以终结符编号为下标: 二元运算符所在的层 (不是运算符则为 -1), 以及对应的产生式行号
+    private final int[] levelOf;
+    private final int[] binaryOf;
+    // 以终结符编号为下标: N_{k+1} -> t 的产生式行号, 没有则为 0
+    private final int[] primaryOf;
+    // 括号的终结符编号与 N_{k+1} -> ( N_1 ) 的产生式行号, 没有括号时都为 -1
+    private final int open;
+    private final int close;
+    private final int parenthesized;
+    // 以状态为下标, 是否为可用的入口状态
+    private final boolean[] entries;
+
+    // 一次分析中的状态
+    private int[] stack = new int[64];
+    private int top = 0;
+    private int position = 0;
+    private TokenBuffer tokens = null;
+    private Events events = null;
+
+    private ExpressionParser(CompiledLRTable table, int[] levelColumns, int[] unitOf, int[] levelOf, int[] binaryOf,
+                             int[] primaryOf, int open, int close, int parenthesized) {
+        this.table = table;
+        this.levelColumns = levelColumns;
+        this.unitOf = unitOf;
+        this.levelOf = levelOf;
+        this.binaryOf = binaryOf;
+        this.primaryOf = primaryOf;
+        this.open = open;
+        this.close = close;
+        this.parenthesized = parenthesized;
+        this.entries = new boolean[table.stateCount()];
+        for (int state = 0; state < entries.length; state++) {
+            entries[state] = isEntry(state);
+        }
+    }
+
+    /**
+     * 分析一个层次不低于 minLevel 的表达式, 结束时栈顶为 N_{minLevel}
+     */
+    private void climb(int minLevel) {
+        primary();
+        var level = levelCount();
+        while (true) {
+            final var terminal = lookahead();
+            final var operatorLevel = terminal < 0 ? -1 : levelOf[terminal];
+            if (operatorLevel < minLevel) {
+                break;
+            }
+            // 左操作数先规约到运算符所在的层, 右操作数只能包含更高层的运算符
+            lift(level, operatorLevel);
+            shift(terminal);
+            climb(operatorLevel + 1);
+            reduce(binaryOf[terminal]);
+            level = operatorLevel;
+        }
+        lift(level, minLevel);
+    }
+
+    /**
+     * 用单产生式把栈顶的 N_{from} 依次规约为 N_{to}
+     */
+    private void lift(int from, int to) {
+        for (int level = from - 1; level >= to; level--) {
+            reduce(unitOf[level]);
+        }
+    }
+
+    private void primary() {
+        final var terminal = lookahead();
+        if (terminal >= 0 && terminal == open) {
+            shift(terminal);
+            climb(0);
+            if (lookahead() != close) {
+                throw new RuntimeException("Error");
+            }
+            shift(close);
+            reduce(parenthesized);
+        } else if (terminal >= 0 && primaryOf[terminal] != 0) {
+            shift(terminal);
+            reduce(primaryOf[terminal]);
+        } else {
+            throw new RuntimeException("Error");
+        }
+    }
+
+    private int lookahead() {
+        return table.terminalOfCode(tokens.codeAt(position));
+    }
+
+    private void shift(int terminal) {
+        final var action = table.action(stack[top], terminal);
+        if (CompiledLRTable.kindOf(action) != CompiledLRTable.SHIFT) {
+            throw new RuntimeException("Error");
+        }
+        final var target = CompiledLRTable.payloadOf(action);
+        events.shift(target, position);
+        position++;
+        push(target);
+    }
+
+    private void reduce(int production) {
+        events.reduce(stack[top], production);
+        top -= table.bodyLengthOf(production);
+        push(table.goto_(stack[top], table.headOf(production)));
+    }
+
+    private void push(int state) {
+        if (++top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top] = state;
+    }
+
+    /**
+     * 入口状态应满足: 有对 N_1 的 GOTO; 表达式的每个首符号都在此移入, 其中 N_{k+1} -> t 的 t 移入后只能按该产生式规约,
+     * 左括号移入后有对 N_1 的 GOTO; 且 GOTO(state, N_1) 上只有第一层的运算符可以移入, 其余层的运算符都是错误.
+     * 前两条保证表达式确实从这里开始, 最后一条保证表达式在 LR 分析会停下的同一个词法单元处结束.
+     */
+    private boolean isEntry(int state) {
+        final var after = table.goto_(state, root());
+        if (after < 0) {
+            return false;
+        }
+        for (int terminal = 0; terminal < levelOf.length; terminal++) {
+            final var action = table.action(state, terminal);
+            if (terminal == open) {
+                if (CompiledLRTable.kindOf(action) != CompiledLRTable.SHIFT
+                    || table.goto_(CompiledLRTable.payloadOf(action), root()) < 0) {
+                    return false;
+                }
+            } else if (primaryOf[terminal] != 0) {
+                if (CompiledLRTable.kindOf(action) != CompiledLRTable.SHIFT
+                    || !reducesOnly(CompiledLRTable.payloadOf(action), primaryOf[terminal])) {
+                    return false;
+                }
+            }
+            if (levelOf[terminal] >= 0) {
+                final var kind = CompiledLRTable.kindOf(table.action(after, terminal));
+                if (kind != (levelOf[terminal] == 0 ? CompiledLRTable.SHIFT : CompiledLRTable.ERROR)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean reducesOnly(int state, int production) {
+        for (int terminal = 0; terminal < levelOf.length; terminal++) {
+            final var action = table.action(state, terminal);
+            if (action != CompiledLRTable.ERROR
+                && (CompiledLRTable.kindOf(action) != CompiledLRTable.REDUCE || CompiledLRTable.payloadOf(action) != production)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 以列号表示的产生式, 用于识别分层表达式文法
+     */
+    private static final class Grammar {
+        private final CompiledLRTable table;
+        // 以非终结符编号为下标, 该非终结符的各产生式行号
+        private final List<List<Integer>> productionsOf = new ArrayList<>();
+        // 以产生式行号为下标, 产生式体中各符号的列号 (不在表中的终结符为 -1)
+        private final int[][] bodies;
+
+        Grammar(CompiledLRTable table) {
+            this.table = table;
+            final var columnOf = new HashMap<NonTerminal, Integer>();
+            for (int idx = 0; idx < table.nonTerminalCount(); idx++) {
+                columnOf.put(table.nonTerminal(table.terminalCount() + idx), table.terminalCount() + idx);
+                productionsOf.add(new ArrayList<>());
+            }
+
+            bodies = new int[table.productionLimit()][];
+            for (int production = 0; production < bodies.length; production++) {
+                final var object = table.production(production);
+                if (object == null || table.headOf(production) < 0) {
+                    continue;
+                }
+                bodies[production] = object.body().stream()
+                    .mapToInt(term -> term instanceof TokenKind kind ? table.terminalOf(kind) : columnOf.getOrDefault(term, -1))
+                    .toArray();
+                productionsOf.get(table.headOf(production) - table.terminalCount()).add(production);
+            }
+        }
+
+        /**
+         * 从 root 开始逐层识别
+         *
+         * @return 分析器, root 不是分层表达式文法的开始符号时为 null
+         */
+        ExpressionParser layersFrom(int root) {
+            final var terminalCount = table.terminalCount();
+            final var levelColumns = new ArrayList<Integer>();
+            final var units = new ArrayList<Integer>();
+            final var levelOf = new int[terminalCount];
+            final var binaryOf = new int[terminalCount];
+            Arrays.fill(levelOf, -1);
+
+            var current = root;
+            while (true) {
+                levelColumns.add(current);
+                final var next = nextLevel(current, levelColumns.size() - 1, levelOf, binaryOf, units);
+                if (next < 0) {
+                    break;
+                }
+                if (levelColumns.contains(next)) {
+                    return null;
+                }
+                current = next;
+            }
+            if (units.isEmpty()) {
+                return null;
+            }
+
+            // 最后一层为初等式: N_{k+1} -> t 或 N_{k+1} -> ( N_1 )
+            final var primaryOf = new int[terminalCount];
+            var open = -1;
+            var close = -1;
+            var parenthesized = -1;
+            for (final var production : productionsOf.get(current - terminalCount)) {
+                final var body = bodies[production];
+                if (body.length == 1 && isTerminal(body[0]) && levelOf[body[0]] < 0 && primaryOf[body[0]] == 0) {
+                    primaryOf[body[0]] = production;
+                } else if (body.length == 3 && parenthesized < 0 && isTerminal(body[0]) && body[1] == root
+                    && isTerminal(body[2]) && levelOf[body[0]] < 0 && levelOf[body[2]] < 0 && body[0] != body[2]) {
+                    open = body[0];
+                    close = body[2];
+                    parenthesized = production;
+                } else {
+                    return null;
+                }
+            }
+            if ((open >= 0 && (primaryOf[open] != 0 || primaryOf[close] != 0)) || Arrays.stream(primaryOf).allMatch(p -> p == 0)) {
+                return null;
+            }
+
+            return new ExpressionParser(table, levelColumns.stream().mapToInt(Integer::intValue).toArray(),
+                units.stream().mapToInt(Integer::intValue).toArray(), levelOf, binaryOf, primaryOf, open, close, parenthesized);
+        }
+
+        /**
+         * 识别 N -> N op M | ... | M 形式的一层, 记录其中的运算符与产生式
+         *
+         * @return 下一层的非终结符 M, current 不是这种形式时为 -1
+         */
+        private int nextLevel(int current, int level, int[] levelOf, int[] binaryOf, List<Integer> units) {
+            var next = -1;
+            var unit = -1;
+            final var operators = new ArrayList<Integer>();
+            for (final var production : productionsOf.get(current - table.terminalCount())) {
+                final var body = bodies[production];
+                final int operand;
+                if (body.length == 1 && !isTerminal(body[0])) {
+                    if (unit >= 0) {
+                        return -1;
+                    }
+                    unit = production;
+                    operand = body[0];
+                } else if (body.length == 3 && body[0] == current && isTerminal(body[1]) && !isTerminal(body[2])
+                    && levelOf[body[1]] < 0 && !operators.contains(body[1])) {
+                    operators.add(body[1]);
+                    operand = body[2];
+                } else {
+                    return -1;
+                }
+                if (operand == current || (next >= 0 && operand != next)) {
+                    return -1;
+                }
+                next = operand;
+            }
+            if (unit < 0 || operators.isEmpty()) {
+                return -1;
+            }
+
+            for (final var operator : operators) {
+                levelOf[operator] = level;
+                for (final var production : productionsOf.get(current - table.terminalCount())) {
+                    if (bodies[production].length == 3 && bodies[production][1] == operator) {
+                        binaryOf[operator] = production;
+                    }
+                }
+            }
+            units.add(unit);
+            return next;
+        }
+
+        private boolean isTerminal(int column) {
+            return column >= 0 && column < table.terminalCount();
+        }
+    }
+}
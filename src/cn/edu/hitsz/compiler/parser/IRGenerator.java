@@ -4,10 +4,9 @@ import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariableTable;
 import cn.edu.hitsz.compiler.ir.Instruction;
 import cn.edu.hitsz.compiler.lexer.Token;
-import cn.edu.hitsz.compiler.lexer.TokenKind;
-import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
@@ -15,118 +14,105 @@ import cn.edu.hitsz.compiler.utils.FileUtils;
 import java.util.ArrayList;
 import java.util.List;
 
-public class IRGenerator implements ActionObserver {
+public class IRGenerator implements IndexedActionObserver, StatementObserver {
 
     private final List<Instruction> irList = new ArrayList<>();
-    private final List<IRValue> valueStack = new ArrayList<>();
+    // 增量分析时按语句撤下与重用 irList 中的指令
+    private final StatementSegments<Instruction> statements = new StatementSegments<>(irList);
+    // 本编译单元的 IR 变量, 具名变量经符号表驻留; 注册到语法分析器时换成使用其符号表的新表
+    private IRVariableTable variables = new IRVariableTable(new SymbolTable());
+    // 各文法符号的值: id 与 IntConst 为对应的变量与立即数, E/A/B 为存放结果的变量或立即数
+    private final AttributeStack.Slots<IRValue> values = new AttributeStack.Slots<>();
+
+    // 只为会产生值或指令的产生式注册动作, E -> A 之类的单产生式由属性栈的默认动作 $$ = $1 完成
+    private final ActionHandlers handlers = new ActionHandlers()
+            .onShift("id", new ActionHandlers.SymbolShiftHandler() {
+                @Override
+                public void onShift(Status currentStatus, Token currentToken) {
+                    values.set(variables.named(currentToken.getText()));
+                }
+
+                // 词法分析时记下的符号编号, 不必再按文本查找
+                @Override
+                public void onShift(Status currentStatus, int symbol) {
+                    values.set(variables.named(symbol));
+                }
+            })
+            .onShift("IntConst", (status, token) -> values.set(IRImmediate.of(Integer.parseInt(token.getText()))))
+            // S -> id = E
+            .onReduce(6, (status, production) -> irList.add(Instruction.createMov((IRVariable) values.get(1), values.get(3))))
+            // S -> return E
+            .onReduce(7, (status, production) -> irList.add(Instruction.createRet(values.get(2))))
+            .onReduce(8, (status, production) -> reduceBinary(Instruction::createAdd))
+            .onReduce(9, (status, production) -> reduceBinary(Instruction::createSub))
+            .onReduce(11, (status, production) -> reduceBinary(Instruction::createMul))
+            // B -> ( E )
+            .onReduce(13, (status, production) -> values.set(values.get(2)));
 
     @Override
-    public void whenShift(Status currentStatus, Token currentToken) {
-        if (currentToken.getKind().equals(TokenKind.fromString("id"))) {
-            valueStack.add(IRVariable.named(currentToken.getText()));
-        } else if (currentToken.getKind().equals(TokenKind.fromString("IntConst"))) {
-            valueStack.add(IRImmediate.of(Integer.parseInt(currentToken.getText())));
+    public ActionHandlers getHandlers() {
+        return handlers;
+    }
+
+    @Override
+    public void setAttributeStack(AttributeStack attributes) {
+        attributes.attach(values);
+    }
+
+    /**
+     * 规约 X -> X op Y, 左操作数已经是临时变量时直接复用它
+     */
+    private void reduceBinary(BinaryInstruction create) {
+        final var lhs = values.get(1);
+        final var rhs = values.get(3);
+        IRVariable res;
+        if (lhs.isImmediate()) {
+            res = variables.temp();
+        } else if (!((IRVariable) lhs).isTemp()) {
+            res = variables.temp();
         } else {
-            valueStack.add(null);
+            res = (IRVariable) lhs;
         }
+        irList.add(create.create(res, lhs, rhs));
+        values.set(res);
+    }
+
+    @FunctionalInterface
+    private interface BinaryInstruction {
+        Instruction create(IRVariable result, IRValue lhs, IRValue rhs);
     }
 
     @Override
-    public void whenReduce(Status currentStatus, Production production) {
-        switch (production.index()) {
-            case 2 -> {
-                for (int i = 0; i < 2; i++) valueStack.removeLast();
-            }
-            case 3, 4 -> {
-                valueStack.removeLast();
-            }
-            case 6 -> {
-                irList.add(Instruction.createMov(
-                        (IRVariable) valueStack.get(valueStack.size() - 3),
-                        valueStack.getLast()
-                ));
-                for (int i = 0; i < 3; i++) valueStack.removeLast();
-                valueStack.add(null);
-            }
-            case 7 -> {
-                irList.add(Instruction.createRet(valueStack.getLast()));
-                for (int i = 0; i < 2; i++) valueStack.removeLast();
-                valueStack.add(null);
-            }
-            case 8 -> {
-                IRVariable res;
-                if (valueStack.get(valueStack.size() - 3).isImmediate()) {
-                    res = IRVariable.temp();
-                } else if (!((IRVariable) valueStack.get(valueStack.size() - 3)).getName().startsWith("$")) {
-                    res = IRVariable.temp();
-                } else {
-                    res = (IRVariable) valueStack.get(valueStack.size() - 3);
-                }
-                irList.add(Instruction.createAdd(
-                        res,
-                        valueStack.get(valueStack.size() - 3),
-                        valueStack.getLast()
-                ));
-                for (int i = 0; i < 3; i++) valueStack.removeLast();
-                valueStack.add(res);
-            }
-            case 9 -> {
-                IRVariable res;
-                if (valueStack.get(valueStack.size() - 3).isImmediate()) {
-                    res = IRVariable.temp();
-                } else if (!((IRVariable) valueStack.get(valueStack.size() - 3)).getName().startsWith("$")) {
-                    res = IRVariable.temp();
-                } else {
-                    res = (IRVariable) valueStack.get(valueStack.size() - 3);
-                }
-                irList.add(Instruction.createSub(
-                        res,
-                        valueStack.get(valueStack.size() - 3),
-                        valueStack.getLast()
-                ));
-                for (int i = 0; i < 3; i++) valueStack.removeLast();
-                valueStack.add(res);
-            }
-            case 11 -> {
-                IRVariable res;
-                if (valueStack.get(valueStack.size() - 3).isImmediate()) {
-                    res = IRVariable.temp();
-                } else if (!((IRVariable) valueStack.get(valueStack.size() - 3)).getName().startsWith("$")) {
-                    res = IRVariable.temp();
-                } else {
-                    res = (IRVariable) valueStack.get(valueStack.size() - 3);
-                }
-                irList.add(Instruction.createMul(
-                        res,
-                        valueStack.get(valueStack.size() - 3),
-                        valueStack.getLast()
-                ));
-                for (int i = 0; i < 3; i++) valueStack.removeLast();
-                valueStack.add(res);
-            }
-            case 13 -> {
-                valueStack.removeLast();
-                IRValue tmp = valueStack.getLast();
-                valueStack.removeLast();
-                valueStack.removeLast();
-                valueStack.add(tmp);
-            }
-        }
+    public void setSymbolTable(SymbolTable table) {
+        variables = new IRVariableTable(table);
     }
 
+    @Override
+    public void replaceStatements(int first) {
+        statements.replace(first);
+    }
 
     @Override
-    public void whenAccept(Status currentStatus) {
+    public void whenStatementEnd() {
+        statements.end();
     }
 
     @Override
-    public void setSymbolTable(SymbolTable table) {
+    public void reuseStatements(int oldFirst) {
+        statements.reuse(oldFirst);
     }
 
     public List<Instruction> getIR() {
         return irList;
     }
 
+    /**
+     * @return 生成的 IR 中的全部变量, 以变量编号为下标的数组长度取其 size() 即可
+     */
+    public IRVariableTable getVariables() {
+        return variables;
+    }
+
     public void dumpIR(String path) {
         FileUtils.writeLines(path, getIR().stream().map(Instruction::toString).toList());
     }
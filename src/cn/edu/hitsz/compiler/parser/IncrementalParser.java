@@ -0,0 +1,303 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.SourceBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量词法与语法分析
+ * <br>
+ * 在源文本被反复小幅修改的场景下, 保留上一次的 token 序列与以分号划分的语句边界, 以及每个语句边界处 (刚移入分号之后)
+ * 的 LR 状态栈. 一次编辑之后:
+ * <ul>
+ *     <li>只重新分析从编辑位置前最近的语句边界, 到编辑位置后第一个未被触及的分号之间的文本;</li>
+ *     <li>从该语句边界处保存的状态栈继续驱动 LR 分析, 每越过一个编辑区域之后的语句边界, 就与旧的状态栈比较,
+ *     二者相同即说明后续分析过程与之前完全一致, 可以立即停止.</li>
+ * </ul>
+ * 注册的观察者只会收到重新分析的那些语句的动作, 因此观察者必须是 {@link StatementObserver}: 重新分析之前, 观察者撤下受损语句及其之后各语句的输出;
+ * 重新分析之后, 再接回收敛位置之后未受影响的语句的输出. 这样每次编辑之后观察者的输出 (比如 {@link IRGenerator#getIR()})
+ * 都与完整分析新的源文本得到的结果相同, 只是临时变量的编号可能不同.
+ * <br>
+ * 若编辑位于最后一条语句中, 或改变了后续的分析过程, 重新分析会一直进行到 EOF, 观察者也就会收到末尾的规约与 Accept 动作.
+ * 此时属性栈中未被重新分析的语句的属性均为默认值, 所以观察者在一条语句中的动作只应依赖该语句自身的文法符号.
+ * <br>
+ * 状态栈以共享尾部的链表保存, 每个语句边界处的快照只需 O(1) 的额外空间. 编辑时源文本与 token 序列仍会被整体拷贝一次,
+ * 但那只是数组拷贝, 分析与观察者的工作量只与被编辑的语句数量有关.
+ */
+public class IncrementalParser {
+    public IncrementalParser(SymbolTable symbolTable, LRTable table) {
+        this.symbolTable = symbolTable;
+        this.table = table;
+        this.notifier = new SyntaxAnalyzer(symbolTable);
+        this.semicolon = TokenKind.fromString("Semicolon");
+    }
+
+    /**
+     * 注册新的观察者
+     *
+     * @param observer 能按语句撤销与重用输出的观察者
+     */
+    public void registerObserver(StatementObserver observer) {
+        notifier.registerObserver(observer);
+        observers.add(observer);
+    }
+
+    /**
+     * 完整地分析一段源文本, 观察者会收到所有动作. 之前分析的源文本产生的输出会被全部撤下.
+     *
+     * @param source 源文本
+     */
+    public void load(SourceBuffer source) {
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadSource(source);
+        lexer.run();
+
+        this.source = source;
+        this.tokens = lexer.getTokenBuffer();
+        this.boundaries = new ArrayList<>();
+
+        for (final var observer : observers) {
+            observer.replaceStatements(0);
+        }
+        final var bottom = new Frame(table.getInit(), null);
+        parse(bottom, 0, Integer.MAX_VALUE, List.of(), 0, 0);
+    }
+
+    /**
+     * 将源文本中 [offset, offset + removedLength) 替换为 insertedText, 并增量地重新分析
+     *
+     * @param offset        编辑位置
+     * @param removedLength 删除的字符数
+     * @param insertedText  插入的文本
+     */
+    public void edit(int offset, int removedLength, String insertedText) {
+        final var oldSource = source;
+        final var oldTokens = tokens;
+        final var oldBoundaries = boundaries;
+        final var removedEnd = offset + removedLength;
+        if (offset < 0 || removedEnd > oldSource.length()) {
+            throw new RuntimeException("Edit out of range");
+        }
+
+        // 编辑位置之前 (含恰好在编辑位置处) 的最后一个语句边界, 其前面的分号未被触及
+        final var before = firstBoundaryAfter(oldTokens, oldBoundaries, offset) - 1;
+        // 编辑区域之后的第一个语句边界, 其前面的分号同样未被触及
+        final var after = firstBoundaryAfter(oldTokens, oldBoundaries, removedEnd);
+
+        final var lexBegin = before < 0 ? 0 : positionOf(oldTokens, oldBoundaries.get(before));
+        final var tokenBegin = before < 0 ? 0 : oldBoundaries.get(before).token();
+        final var lexEndOld = after < oldBoundaries.size() ? positionOf(oldTokens, oldBoundaries.get(after)) : oldSource.length();
+        // 最后的 EOF 总在末尾, 不属于受损区域
+        final var tokenEndOld = after < oldBoundaries.size() ? oldBoundaries.get(after).token() : oldTokens.size() - 1;
+
+        // 重新分析受损区域
+        final var newSource = SourceBuffer.of(
+            oldSource.substring(0, offset) + insertedText + oldSource.substring(removedEnd, oldSource.length()));
+        final var shift = insertedText.length() - removedLength;
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadSource(newSource);
+        final var damaged = lexer.runRange(lexBegin, lexEndOld + shift);
+
+        // 拼接: 受损区域之前的 token 不变, 之后的 token 平移
+        final var newTokens = new TokenBuffer(newSource, false, symbolTable);
+        newTokens.addRange(oldTokens, 0, tokenBegin, 0);
+        newTokens.addRange(damaged, 0, damaged.size(), 0);
+        newTokens.addRange(oldTokens, tokenEndOld, oldTokens.size(), shift);
+        final var tokenShift = damaged.size() - (tokenEndOld - tokenBegin);
+
+        // 受损区域之后的旧语句边界, 平移到新的 token 下标上, 供判断收敛
+        final var suffix = new ArrayList<Boundary>();
+        for (int idx = after; idx < oldBoundaries.size(); idx++) {
+            final var boundary = oldBoundaries.get(idx);
+            suffix.add(new Boundary(boundary.token() + tokenShift, boundary.stack()));
+        }
+
+        this.source = newSource;
+        this.tokens = newTokens;
+        this.boundaries = new ArrayList<>(oldBoundaries.subList(0, before + 1));
+        this.lastReparsedTokens = 0;
+
+        // 第 before 个语句边界及之前的语句未受影响, 其输出保留
+        for (final var observer : observers) {
+            observer.replaceStatements(before + 1);
+        }
+        final var start = before < 0 ? new Frame(table.getInit(), null) : oldBoundaries.get(before).stack();
+        parse(start, tokenBegin, tokenBegin + damaged.size(), suffix, after, 0);
+    }
+
+    /**
+     * @return 当前的源文本
+     */
+    public SourceBuffer getSource() {
+        return source;
+    }
+
+    /**
+     * @return 当前的 token 序列
+     */
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return 当前的语句数量 (即分号数量)
+     */
+    public int getStatementCount() {
+        return boundaries.size();
+    }
+
+    /**
+     * @return 上一次 load 或 edit 中重新交给 LR 驱动程序的 token 数量
+     */
+    public int getLastReparsedTokens() {
+        return lastReparsedTokens;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 状态栈的一层, 下层共享
+     *
+     * @param status 状态
+     * @param below  下一层, 栈底为 null
+     * @param depth  栈中的文法符号数, 即层数减一
+     */
+    private record Frame(Status status, Frame below, int depth) {
+        Frame(Status status, Frame below) {
+            this(status, below, below == null ? 0 : below.depth() + 1);
+        }
+    }
+
+    /**
+     * 语句边界
+     *
+     * @param token 紧跟在分号后面的 token 的下标
+     * @param stack 刚移入该分号之后的状态栈
+     */
+    private record Boundary(int token, Frame stack) {
+    }
+
+    private final SymbolTable symbolTable;
+    private final LRTable table;
+    private final SyntaxAnalyzer notifier;
+    private final List<StatementObserver> observers = new ArrayList<>();
+    private final TokenKind semicolon;
+
+    private SourceBuffer source;
+    private TokenBuffer tokens;
+    private List<Boundary> boundaries;
+    private int lastReparsedTokens;
+
+    /**
+     * @return 语句边界在源文本中的位置, 即分号之后的位置
+     */
+    private static int positionOf(TokenBuffer tokens, Boundary boundary) {
+        return tokens.startAt(boundary.token() - 1) + 1;
+    }
+
+    /**
+     * 二分查找第一个位置严格大于 position 的语句边界
+     *
+     * @return 其下标, 不存在则为边界数量
+     */
+    private static int firstBoundaryAfter(TokenBuffer tokens, List<Boundary> boundaries, int position) {
+        int lo = 0;
+        int hi = boundaries.size();
+        while (lo < hi) {
+            final var mid = (lo + hi) >>> 1;
+            if (positionOf(tokens, boundaries.get(mid)) <= position) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 两个状态栈自顶向下逐层比较, 遇到同一个共享节点即可停止
+     */
+    private static boolean sameStack(Frame lhs, Frame rhs) {
+        while (lhs != rhs) {
+            if (lhs == null || rhs == null || !lhs.status().equals(rhs.status())) {
+                return false;
+            }
+            lhs = lhs.below();
+            rhs = rhs.below();
+        }
+        return true;
+    }
+
+    /**
+     * LR 驱动程序, 从给定的状态栈与 token 下标开始分析
+     *
+     * @param stack       初始状态栈
+     * @param next        第一个要读取的 token 的下标
+     * @param damagedEnd  受损区域之后第一个 token 的下标, 越过它之后的语句边界才可能收敛
+     * @param oldSuffix   受损区域之后的旧语句边界 (已平移到新的 token 下标上)
+     * @param suffixBase  oldSuffix 中第一个边界在编辑前的编号
+     * @param suffixIndex oldSuffix 中下一个待比较的边界
+     */
+    private void parse(Frame stack, int next, int damagedEnd, List<Boundary> oldSuffix, int suffixBase, int suffixIndex) {
+        final var parseBegin = next;
+        // 属性栈与保存的状态栈对齐; 未重新分析的符号的属性在上一次分析结束时已被清空, 为默认值
+        notifier.truncateAttributes(stack.depth());
+        while (true) {
+            final var token = tokens.get(next);
+            final var action = stack.status().getAction(token);
+            switch (action.getKind()) {
+                case Shift -> {
+                    notifier.callWhenInShift(action.getStatus(), token);
+                    stack = new Frame(action.getStatus(), stack);
+                    next++;
+
+                    if (token.getKind().equals(semicolon)) {
+                        for (final var observer : observers) {
+                            observer.whenStatementEnd();
+                        }
+                        if (next >= damagedEnd) {
+                            while (suffixIndex < oldSuffix.size() && oldSuffix.get(suffixIndex).token() < next) {
+                                suffixIndex++;
+                            }
+                            if (suffixIndex < oldSuffix.size() && oldSuffix.get(suffixIndex).token() == next
+                                && sameStack(stack, oldSuffix.get(suffixIndex).stack())) {
+                                // 收敛: 之后的分析与上一次完全一致, 沿用旧的语句边界与其后各语句的输出
+                                boundaries.addAll(oldSuffix.subList(suffixIndex, oldSuffix.size()));
+                                for (final var observer : observers) {
+                                    observer.reuseStatements(suffixBase + suffixIndex + 1);
+                                }
+                                lastReparsedTokens = next - parseBegin;
+                                return;
+                            }
+                        }
+                        boundaries.add(new Boundary(next, stack));
+                    }
+                }
+                case Reduce -> {
+                    final var production = action.getProduction();
+                    notifier.callWhenInReduce(stack.status(), production);
+                    for (int i = 0; i < production.body().size(); i++) {
+                        stack = stack.below();
+                    }
+                    stack = new Frame(stack.status().getGoto(production.head()), stack);
+                }
+                case Accept -> {
+                    notifier.callWhenInAccept(stack.status());
+                    for (final var observer : observers) {
+                        observer.reuseStatements(-1);
+                    }
+                    lastReparsedTokens = next - parseBegin + 1;
+                    return;
+                }
+                case Error -> throw new RuntimeException("Error");
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+
+/**
+ * 按产生式与终结符注册语义动作的观察者
+ * <br>
+ * 实现者只需在 {@link #getHandlers()} 中返回 (通常是构造时就注册好的) {@link ActionHandlers}.
+ * {@link SyntaxAnalyzer} 只会在注册了处理函数的产生式与终结符上调用它; 直接调用 whenShift/whenReduce/whenAccept
+ * (如回放 {@link EventLog} 时) 也会按同样的处理函数分派.
+ */
+public interface IndexedActionObserver extends ActionObserver {
+    /**
+     * @return 该观察者注册的处理函数, 每次调用应返回同一个对象
+     */
+    ActionHandlers getHandlers();
+
+    /**
+     * 注册到语法分析器时被调用, 观察者应在此把自己的属性通道挂到 attributes 上 ({@link AttributeStack#attach}).
+     * 同一个观察者可能先后被挂到不同的属性栈上 (如并行回放时).
+     *
+     * @param attributes 属性栈
+     */
+    default void setAttributeStack(AttributeStack attributes) {
+    }
+
+    @Override
+    default void whenShift(Status currentStatus, Token currentToken) {
+        getHandlers().shift(currentStatus, currentToken);
+    }
+
+    @Override
+    default void whenReduce(Status currentStatus, Production production) {
+        getHandlers().reduce(currentStatus, production);
+    }
+
+    @Override
+    default void whenAccept(Status currentStatus) {
+        getHandlers().accept(currentStatus);
+    }
+}
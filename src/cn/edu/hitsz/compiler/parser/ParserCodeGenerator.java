@@ -0,0 +1,283 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * 将 LR 分析表生成为直接编码的 Java 语法分析器
+ * <br>
+ * 生成的类中每个状态是主循环里 switch 的一个分支, 分支内再按当前 token 的码点 switch 出移入, 规约或接受动作;
+ * 每个非终结符的 GOTO 列生成为一个按状态 switch 的方法. 这样每一步只剩两次 tableswitch, 不再读取任何表.
+ * <br>
+ * 生成的源码可以用 {@link #dumpSource(String)} 输出后随项目一起编译 (此时用构造函数 (CompiledLRTable) 传入同一张表实例化),
+ * 也可以用 {@link #load()} 在运行时经 javax.tools 编译为隐藏类直接使用 (需在 JDK 上运行). 观察者仍注册在 SyntaxAnalyzer 上,
+ * 以它作为 notifier 调用 {@code new ParserCodeGenerator(table).load().run(lexer.getTokenBuffer(), parser)} 即可代替 parser.run().
+ * <br>
+ * 与 {@link SyntaxAnalyzer#run()} 一样, 状态栈在多次分析之间复用, 只为有观察者关心的终结符构造 Token 对象,
+ * 并遵循 notifier 上设置的 {@link cn.edu.hitsz.compiler.parser.table.ReductionShortcuts}: 只有一个规约动作的状态生成为默认规约,
+ * 开启时不读取向前看符号; 单产生式的跳过依赖观察者, 开启时规约之后的 GOTO 改由 notifier 查表完成.
+ */
+public class ParserCodeGenerator {
+    private static final String PACKAGE = ParserCodeGenerator.class.getPackageName();
+    private static final String CLASS_NAME = "GeneratedLRParser";
+
+    public ParserCodeGenerator(LRTable table) {
+        this.table = CompiledLRTable.compile(table);
+    }
+
+    /**
+     * @return 生成的 Java 源码
+     */
+    public String generateSource() {
+        final var code = new StringBuilder();
+        code.append("""
+            package %s;
+
+            import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+            import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+            import cn.edu.hitsz.compiler.parser.table.Production;
+            import cn.edu.hitsz.compiler.parser.table.ReductionShortcuts;
+            import cn.edu.hitsz.compiler.parser.table.Status;
+
+            /**
+             * 由 ParserCodeGenerator 生成, 请勿手动修改
+             */
+            final class %s implements DirectParser {
+                private final CompiledLRTable t;
+                private final Status[] s;
+                private final Production[] p;
+                // 状态栈, 在多次 run 之间复用
+                private int[] stack = new int[64];
+
+                %s(CompiledLRTable table) {
+                    this.t = table;
+                    this.s = new Status[table.stateCount()];
+                    for (int state = 0; state < s.length; state++) {
+                        s[state] = table.status(state);
+                    }
+                    this.p = new Production[table.productionLimit()];
+                    for (int production = 0; production < p.length; production++) {
+                        p[production] = table.production(production);
+                    }
+                }
+
+                @Override
+                public void run(TokenBuffer tokens, SyntaxAnalyzer n) {
+                    final ReductionShortcuts r = n.beginDirect(t);
+                    int[] stack = this.stack;
+                    int top = 0;
+                    int pos = 0;
+                    int state = %d;
+                    stack[0] = state;
+                    while (true) {
+                        switch (state) {
+            """.formatted(PACKAGE, CLASS_NAME, CLASS_NAME, table.init()));
+
+        for (int state = 0; state < table.stateCount(); state++) {
+            appendState(code, state);
+        }
+
+        code.append("""
+                            default -> throw new RuntimeException("Error");
+                        }
+                        if (++top == stack.length) {
+                            stack = this.stack = java.util.Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[top] = state;
+                    }
+                }
+            """);
+
+        for (int nonTerminal = table.terminalCount(); nonTerminal < table.terminalCount() + table.nonTerminalCount(); nonTerminal++) {
+            appendGoto(code, nonTerminal);
+        }
+
+        code.append("}\n");
+        return code.toString();
+    }
+
+    /**
+     * 输出生成的源码, 用于在构建时生成
+     *
+     * @param path 文件路径
+     */
+    public void dumpSource(String path) {
+        FileUtils.writeFile(path, generateSource());
+    }
+
+    /**
+     * 在运行时编译生成的源码, 并作为隐藏类载入
+     *
+     * @return 生成的语法分析器
+     */
+    public DirectParser load() {
+        final var bytes = compile(generateSource());
+        try {
+            final var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            final var constructor = lookup.findConstructor(lookup.lookupClass(),
+                MethodType.methodType(void.class, CompiledLRTable.class));
+            return (DirectParser) constructor.invoke(table);
+        } catch (Throwable e) {
+            throw new RuntimeException("Can not load generated parser", e);
+        }
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private final CompiledLRTable table;
+
+    private void appendState(StringBuilder code, int state) {
+        // 同一个动作往往对应多个 token, 合并为一个分支
+        final var arms = new LinkedHashMap<Integer, List<Integer>>();
+        for (int terminal = 0; terminal < table.terminalCount(); terminal++) {
+            final var action = table.action(state, terminal);
+            if (CompiledLRTable.kindOf(action) != CompiledLRTable.ERROR) {
+                arms.computeIfAbsent(action, key -> new ArrayList<>()).add(table.terminal(terminal).getCode());
+            }
+        }
+
+        code.append("                case ").append(state).append(" -> {\n");
+        if (arms.size() == 1 && CompiledLRTable.kindOf(arms.keySet().iterator().next()) == CompiledLRTable.REDUCE) {
+            // 与 ReductionShortcuts 的默认规约相同: 开启时不必读取向前看符号
+            final var arm = arms.entrySet().iterator().next();
+            code.append("                    if (r == null) {\n");
+            code.append("                        switch (tokens.codeAt(pos)) {\n");
+            code.append("                            case ").append(labels(arm.getValue())).append(" -> {\n");
+            code.append("                            }\n");
+            code.append("                            default -> throw new RuntimeException(\"Error\");\n");
+            code.append("                        }\n");
+            code.append("                    }\n");
+            appendReduce(code, state, CompiledLRTable.payloadOf(arm.getKey()), "                    ");
+            code.append("                }\n");
+            return;
+        }
+
+        code.append("                    final int code = tokens.codeAt(pos);\n");
+        code.append("                    switch (code) {\n");
+        for (final var arm : arms.entrySet()) {
+            final var action = arm.getKey();
+            final var payload = CompiledLRTable.payloadOf(action);
+            code.append("                        case ").append(labels(arm.getValue())).append(" -> {\n");
+            switch (CompiledLRTable.kindOf(action)) {
+                // 与表驱动程序相同, 只有存在关心该终结符的观察者时才构造 Token 对象
+                case CompiledLRTable.SHIFT -> code.append("""
+                                                if (n.hasShiftHandlers(code)) {
+                                                    n.callWhenInShift(s[%d], tokens, pos);
+                                                } else {
+                                                    n.shiftUnobserved();
+                                                }
+                                                pos++;
+                                                state = %d;
+                    """.formatted(payload, payload));
+                case CompiledLRTable.REDUCE -> appendReduce(code, state, payload, "                            ");
+                case CompiledLRTable.ACCEPT -> code.append("""
+                                                n.callWhenInAccept(s[%d]);
+                                                return;
+                    """.formatted(state));
+                default -> throw new RuntimeException("Unexpected action " + action);
+            }
+            code.append("                        }\n");
+        }
+        code.append("                        default -> throw new RuntimeException(\"Error\");\n");
+        code.append("                    }\n");
+        code.append("                }\n");
+    }
+
+    /**
+     * 规约之后, 跳过单产生式时 GOTO 交给 notifier, 以便按需通知被跳过的规约
+     */
+    private void appendReduce(StringBuilder code, int state, int production, String indent) {
+        final var head = table.headOf(production);
+        code.append(indent).append("// ").append(table.production(production)).append("\n");
+        code.append(indent).append("n.callWhenInReduce(s[%d], p[%d]);\n".formatted(state, production));
+        code.append(indent).append("top -= %d;\n".formatted(table.bodyLengthOf(production)));
+        code.append(indent).append("state = r == null ? goto%d(stack[top]) : n.shortcutGoto(t, r, stack[top], %d);\n".formatted(head, head));
+    }
+
+    private static String labels(List<Integer> codes) {
+        return String.join(", ", codes.stream().map(String::valueOf).toList());
+    }
+
+    private void appendGoto(StringBuilder code, int nonTerminal) {
+        // 开始符号的列是空的, 也不会被规约, 不需要生成
+        boolean empty = true;
+        for (int state = 0; state < table.stateCount(); state++) {
+            empty &= table.goto_(state, nonTerminal) < 0;
+        }
+        if (empty) {
+            return;
+        }
+
+        code.append("\n    // GOTO ").append(table.nonTerminal(nonTerminal)).append("\n");
+        code.append("    private static int goto").append(nonTerminal).append("(int state) {\n");
+        code.append("        return switch (state) {\n");
+        for (int state = 0; state < table.stateCount(); state++) {
+            final var target = table.goto_(state, nonTerminal);
+            if (target >= 0) {
+                code.append("            case ").append(state).append(" -> ").append(target).append(";\n");
+            }
+        }
+        code.append("            default -> throw new RuntimeException(\"Error\");\n");
+        code.append("        };\n");
+        code.append("    }\n");
+    }
+
+    /**
+     * 用 javax.tools 在内存中编译生成的源码
+     *
+     * @return 类文件的字节
+     */
+    private static byte[] compile(String source) {
+        final var compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new RuntimeException("No system Java compiler, please run on a JDK");
+        }
+
+        final var classFile = new ByteArrayOutputStream();
+        final var sourceFile = new SimpleJavaFileObject(
+            URI.create("string:///" + PACKAGE.replace('.', '/') + "/" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        final var fileManager = new ForwardingJavaFileManager<JavaFileManager>(
+            compiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                       JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///" + className + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return classFile;
+                    }
+                };
+            }
+        };
+
+        final var diagnostics = new StringWriter();
+        final var options = List.of("-classpath", System.getProperty("java.class.path"), "-g:none");
+        final var succeeded = compiler.getTask(diagnostics, fileManager, null, options, null, List.of(sourceFile)).call();
+        if (!succeeded) {
+            throw new RuntimeException("Can not compile generated parser:\n" + diagnostics);
+        }
+        return classFile.toByteArray();
+    }
+}
@@ -1,56 +1,40 @@
 package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
-import cn.edu.hitsz.compiler.lexer.Token;
-import cn.edu.hitsz.compiler.parser.table.Production;
-import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.symtab.SymbolTableEntry;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
-public class SemanticAnalyzer implements ActionObserver {
+public class SemanticAnalyzer implements IndexedActionObserver, StatementObserver {
 
     private SymbolTable symbolTable;
-    private final ArrayList<Token> tokenStack = new ArrayList<>();
-    private final ArrayList<SourceCodeType> dataStack = new ArrayList<>();
+    // id 的名字
+    private final AttributeStack.Slots<String> names = new AttributeStack.Slots<>();
+    // D 的类型
+    private final AttributeStack.Slots<SourceCodeType> types = new AttributeStack.Slots<>();
+    // 已经写入符号表的声明, 增量分析时按语句撤下与重新写入
+    private final List<Declaration> declarations = new ArrayList<>();
+    private final StatementSegments<Declaration> statements = new StatementSegments<>(declarations);
 
-    @Override
-    public void whenAccept(Status currentStatus) {
-    }
+    private final ActionHandlers handlers = new ActionHandlers()
+            .onShift("id", (status, token) -> names.set(token.getText()))
+            // S -> D id
+            .onReduce(4, (status, production) -> declare(new Declaration(symbolTable.get(names.get(2)), types.get(1))))
+            // D -> int
+            .onReduce(5, (status, production) -> types.set(SourceCodeType.Int));
 
     @Override
-    public void whenReduce(Status currentStatus, Production production) {
-        switch (production.index()) {
-            case 4 -> {
-                symbolTable.get(tokenStack.getLast().getText()).setType(dataStack.get(dataStack.size() - 2));
-            }
-            case 5 -> {
-                tokenStack.removeLast();
-                dataStack.removeLast();
-                tokenStack.add(null);
-                dataStack.add(SourceCodeType.Int);
-            }
-            default -> {
-                for (int i = 0; i < production.body().size(); i++) {
-                    tokenStack.removeLast();
-                    dataStack.removeLast();
-                }
-                tokenStack.add(null);
-                dataStack.add(null);
-            }
-        }
+    public ActionHandlers getHandlers() {
+        return handlers;
     }
 
     @Override
-    public void whenShift(Status currentStatus, Token currentToken) {
-        tokenStack.add(currentToken);
-        if (currentToken.getKind().getTermName().equals("int"))
-            dataStack.add(SourceCodeType.Int);
-        else
-            dataStack.add(null);
+    public void setAttributeStack(AttributeStack attributes) {
+        attributes.attach(names);
+        attributes.attach(types);
     }
 
     @Override
@@ -58,5 +42,32 @@ public class SemanticAnalyzer implements ActionObserver {
         // 如果需要使用符号表的话, 可以将它或者它的一部分信息存起来, 比如使用一个成员变量存储
         symbolTable = table;
     }
-}
 
+    @Override
+    public void replaceStatements(int first) {
+        // 撤下的声明可能被重新分析的语句再次声明, 先从符号表中撤销
+        for (final var declaration : statements.replace(first)) {
+            declaration.entry().clearType();
+        }
+    }
+
+    @Override
+    public void whenStatementEnd() {
+        statements.end();
+    }
+
+    @Override
+    public void reuseStatements(int oldFirst) {
+        for (final var declaration : statements.reuse(oldFirst)) {
+            declaration.entry().setType(declaration.type());
+        }
+    }
+
+    private void declare(Declaration declaration) {
+        declaration.entry().setType(declaration.type());
+        declarations.add(declaration);
+    }
+
+    private record Declaration(SymbolTableEntry entry, SourceCodeType type) {
+    }
+}
@@ -0,0 +1,36 @@
+package cn.edu.hitsz.compiler.parser;
+
+/**
+ * 能按语句撤销与重用自身输出的观察者, 供 {@link IncrementalParser} 使用
+ * <br>
+ * 观察者的输出按语句边界 (刚移入分号之后) 分段: 第 i 段是从第 i - 1 个分号之后到移入第 i 个分号为止的动作产生的输出,
+ * 最后一段是最后一个分号之后直到 Accept 的输出. 一次编辑之后, 增量分析器:
+ * <ol>
+ *     <li>调用 {@link #replaceStatements(int)}, 观察者撤下从受损语句开始的各段, 暂存起来;</li>
+ *     <li>重新分析受损的语句, 观察者照常收到动作, 每个分号移入之后收到 {@link #whenStatementEnd()};</li>
+ *     <li>调用 {@link #reuseStatements(int)}, 观察者把暂存的旧段中仍然有效的那些接回末尾, 并丢弃其余的.</li>
+ * </ol>
+ * 这要求一条语句产生的输出只取决于该语句自身的文法符号, 这对 grammar.txt 成立.
+ *
+ * @see StatementSegments
+ */
+public interface StatementObserver extends ActionObserver {
+    /**
+     * 撤下从第 first 段开始的全部输出, 暂存起来以备重用
+     *
+     * @param first 第一个被撤下的段
+     */
+    void replaceStatements(int first);
+
+    /**
+     * 刚移入一个分号, 之前的输出构成一段
+     */
+    void whenStatementEnd();
+
+    /**
+     * 重新分析结束, 将暂存的旧段中从 oldFirst 开始的各段接回末尾, 并丢弃暂存
+     *
+     * @param oldFirst 第一个重用的旧段, 为负数时不重用任何旧段 (重新分析一直进行到了 Accept)
+     */
+    void reuseStatements(int oldFirst);
+}
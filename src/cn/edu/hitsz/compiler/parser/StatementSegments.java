@@ -0,0 +1,97 @@
+package cn.edu.hitsz.compiler.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按语句分段的输出序列, 实现 {@link StatementObserver} 时用来记录各段的边界
+ * <br>
+ * 输出本身仍存放在观察者自己的列表中, 这里只记录每段在列表中的结束位置, 以及被撤下的旧段.
+ *
+ * @param <T> 输出的元素类型
+ */
+final class StatementSegments<T> {
+    /**
+     * @param items 观察者的输出列表, 按语句顺序追加
+     */
+    StatementSegments(List<T> items) {
+        this.items = items;
+    }
+
+    /**
+     * @see StatementObserver#whenStatementEnd()
+     */
+    void end() {
+        ends = append(ends, endCount++, items.size());
+    }
+
+    /**
+     * 把从第 first 段开始的输出从列表末尾移入暂存
+     *
+     * @return 被撤下的输出
+     * @see StatementObserver#replaceStatements(int)
+     */
+    List<T> replace(int first) {
+        final var from = first == 0 ? 0 : ends[first - 1];
+        final var tail = items.subList(from, items.size());
+        stash = new ArrayList<>(tail);
+        tail.clear();
+
+        stashBase = first;
+        stashEndCount = 0;
+        for (int idx = first; idx < endCount; idx++) {
+            stashEnds = append(stashEnds, stashEndCount++, ends[idx] - from);
+        }
+        endCount = first;
+        return stash;
+    }
+
+    /**
+     * 把暂存的旧段中从 oldFirst 开始的各段接回列表末尾, 并丢弃暂存
+     *
+     * @param oldFirst 第一个重用的旧段在编辑前的段号, 为负数时不重用
+     * @return 接回的输出
+     * @see StatementObserver#reuseStatements(int)
+     */
+    List<T> reuse(int oldFirst) {
+        final List<T> reused;
+        if (oldFirst < 0) {
+            reused = List.of();
+        } else {
+            final var skip = oldFirst - stashBase;
+            final var from = skip == 0 ? 0 : stashEnds[skip - 1];
+            reused = stash.subList(from, stash.size());
+            final var shift = items.size() - from;
+            for (int idx = skip; idx < stashEndCount; idx++) {
+                ends = append(ends, endCount++, stashEnds[idx] + shift);
+            }
+            items.addAll(reused);
+        }
+        stash = List.of();
+        stashEndCount = 0;
+        return reused;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private final List<T> items;
+    // 第 i 段在 items 中的结束位置 (不含), 最后一段没有结束位置
+    private int[] ends = new int[16];
+    private int endCount = 0;
+
+    private List<T> stash = List.of();
+    // 暂存中第一段在编辑前的段号
+    private int stashBase = 0;
+    // 暂存中第 i 段的结束位置, 相对于暂存的开头
+    private int[] stashEnds = new int[16];
+    private int stashEndCount = 0;
+
+    private static int[] append(int[] array, int size, int value) {
+        if (size == array.length) {
+            array = Arrays.copyOf(array, size * 2);
+        }
+        array[size] = value;
+        return array;
+    }
+}
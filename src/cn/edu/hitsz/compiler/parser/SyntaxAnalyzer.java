@@ -2,6 +2,7 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
 import cn.edu.hitsz.compiler.parser.table.*;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
@@ -21,8 +22,29 @@ import java.util.*;
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
     private final List<ActionObserver> observers = new ArrayList<>();
-    private final Deque<Token> tokens = new ArrayDeque<>();
-    private LRTable lrTable;
+    // 各观察者的处理函数, 与 observers 一一对应
+    private final List<ActionHandlers> handlers = new ArrayList<>();
+    private ActionHandlers.Dispatch dispatch = null;
+    // 所有观察者共用的属性栈, 与状态栈同步地移入与规约
+    private final AttributeStack attributes = new AttributeStack();
+    private Iterator<Token> tokens;
+    // 向前看的一个 token, 为 null 代表还未读取
+    private Token lookahead = null;
+    // 词法单元已全部存放在 TokenBuffer 中时直接按下标读取, 否则为 null
+    private TokenBuffer tokenBuffer = null;
+    // 状态栈, 在多次 run 之间复用
+    private int[] stateStack = new int[64];
+    // 为 true 时先记录所有动作, 分析结束后各观察者在各自的虚拟线程中回放
+    private boolean parallelObservers = false;
+    private ReductionShortcuts.Mode reductionMode = ReductionShortcuts.Mode.OFF;
+    // 按当前的分析表, 观察者与 reductionMode 构造的优化, 任一者改变后重新构造
+    private ReductionShortcuts shortcuts = null;
+    private CompiledLRTable shortcutsTable = null;
+    // 为 true 时表达式交给 ExpressionParser 分析, 分析表改变后重新识别
+    private boolean hybridExpressions = false;
+    private ExpressionParser expressions = null;
+    private CompiledLRTable expressionsTable = null;
+    private CompiledLRTable lrTable;
 
 
     public SyntaxAnalyzer(SymbolTable symbolTable) {
@@ -37,6 +59,12 @@ public class SyntaxAnalyzer {
     public void registerObserver(ActionObserver observer) {
         observers.add(observer);
         observer.setSymbolTable(symbolTable);
+        handlers.add(ActionHandlers.of(observer));
+        dispatch = null;
+        shortcuts = null;
+        if (observer instanceof IndexedActionObserver indexed) {
+            indexed.setAttributeStack(attributes);
+        }
     }
 
     /**
@@ -46,8 +74,32 @@ public class SyntaxAnalyzer {
      * @param currentToken  当前词法单元
      */
     public void callWhenInShift(Status currentStatus, Token currentToken) {
-        for (final var listener : observers) {
-            listener.whenShift(currentStatus, currentToken);
+        // 只调用为该终结符注册了处理函数的观察者
+        attributes.push();
+        final var dispatch = dispatch();
+        for (final var handler : dispatch.shiftByCode[currentToken.getKind().getCode() - dispatch.minCode]) {
+            handler.onShift(currentStatus, currentToken);
+        }
+    }
+
+    /**
+     * 在执行 shift 动作时通知各个观察者, 移入的是 buffer 中第 position 个 token.
+     * 标识符的符号编号属于本分析器的符号表时直接交给 {@link ActionHandlers.SymbolShiftHandler}, 只有其余处理函数需要时才构造 Token 对象
+     */
+    void callWhenInShift(Status currentStatus, TokenBuffer buffer, int position) {
+        attributes.push();
+        final var dispatch = dispatch();
+        final var symbol = buffer.getSymbolTable() == symbolTable ? buffer.symbolAt(position) : -1;
+        Token token = null;
+        for (final var handler : dispatch.shiftByCode[buffer.codeAt(position) - dispatch.minCode]) {
+            if (symbol >= 0 && handler instanceof ActionHandlers.SymbolShiftHandler symbolHandler) {
+                symbolHandler.onShift(currentStatus, symbol);
+            } else {
+                if (token == null) {
+                    token = buffer.get(position);
+                }
+                handler.onShift(currentStatus, token);
+            }
         }
     }
 
@@ -58,9 +110,11 @@ public class SyntaxAnalyzer {
      * @param production    待规约的产生式
      */
     public void callWhenInReduce(Status currentStatus, Production production) {
-        for (final var listener : observers) {
-            listener.whenReduce(currentStatus, production);
+        attributes.enter(production.body().size());
+        for (final var handler : dispatch().reduceByProduction[production.index()]) {
+            handler.onReduce(currentStatus, production);
         }
+        attributes.leave();
     }
 
     /**
@@ -69,22 +123,192 @@ public class SyntaxAnalyzer {
      * @param currentStatus 当前状态
      */
     public void callWhenInAccept(Status currentStatus) {
-        for (final var listener : observers) {
-            listener.whenAccept(currentStatus);
+        for (final var handler : dispatch().accept) {
+            handler.onAccept(currentStatus);
+        }
+        attributes.clear();
+    }
+
+    /**
+     * @return 合并后的处理函数表, 注册新的观察者后重新构造
+     */
+    private ActionHandlers.Dispatch dispatch() {
+        if (dispatch == null) {
+            dispatch = new ActionHandlers.Dispatch(handlers);
+        }
+        return dispatch;
+    }
+
+    /**
+     * @param code 终结符的码点
+     * @return 是否有观察者关心该终结符的移入
+     */
+    boolean hasShiftHandlers(int code) {
+        final var dispatch = dispatch();
+        return dispatch.shiftByCode[code - dispatch.minCode].length != 0;
+    }
+
+    /**
+     * 移入一个没有观察者关心的终结符, 只在属性栈中占一个槽位, 供 {@link DirectParser} 使用
+     */
+    void shiftUnobserved() {
+        attributes.push();
+    }
+
+    /**
+     * 供 {@link DirectParser} 在开始分析前调用: 清空属性栈, 并取得当前设置下的 {@link ReductionShortcuts}.
+     * 直接编码的语法分析器不支持并行通知观察者与表达式分析, 设置了二者之一时抛出异常.
+     *
+     * @param table 生成该语法分析器的分析表
+     * @return 未开启时为 null
+     */
+    ReductionShortcuts beginDirect(CompiledLRTable table) {
+        if (parallelObservers || hybridExpressions) {
+            throw new RuntimeException("DirectParser supports neither parallel observers nor the expression parser");
+        }
+        attributes.clear();
+        return shortcuts(table);
+    }
+
+    /**
+     * 跳过单产生式时 {@link DirectParser} 规约之后的 GOTO, 按需通知被跳过的规约
+     */
+    int shortcutGoto(CompiledLRTable table, ReductionShortcuts shortcuts, int below, int head) {
+        return goto_(table, shortcuts, below, head, null);
+    }
+
+    /**
+     * 把属性栈截断为 size 个符号, 供从保存的状态栈继续分析的增量分析器使用
+     */
+    void truncateAttributes(int size) {
+        attributes.truncate(size);
+    }
+
+    /**
+     * @return 是否注册了观察者, 供生成的语法分析器省去无人接收的 Token 对象
+     */
+    boolean hasObservers() {
+        return !observers.isEmpty();
+    }
+
+    /**
+     * 设置是否并行地通知观察者
+     * <br>
+     * 开启后分析过程中只把动作记录到 {@link EventLog} 中, 分析结束后每个观察者在自己的虚拟线程中回放完整的记录,
+     * 各观察者看到的调用序列与串行通知时完全相同. 要求各观察者之间互不依赖 (框架自带的几个观察者各自维护独立的栈).
+     * 记录与回放本身有额外开销 (每个观察者都要各自构造 Token 对象), 只有在多核机器上才值得开启.
+     * <br>
+     * 各观察者共用本分析器的符号表, 回放期间只能读取它: 词法单元必须存放在以该符号表分析出的 TokenBuffer 中,
+     * 此时标识符在词法分析时都已加入符号表, 并以符号编号交给 {@link ActionHandlers.SymbolShiftHandler}.
+     * 不满足时 run 抛出异常, 而不是让回放线程在其它线程读取符号表的同时向其中加入符号.
+     *
+     * @param parallel 是否并行
+     */
+    public void setParallelObservers(boolean parallel) {
+        this.parallelObservers = parallel;
+    }
+
+    /**
+     * 设置是否使用默认规约与跳过单产生式 (见 {@link ReductionShortcuts})
+     * <br>
+     * {@link ReductionShortcuts.Mode#ELIDE} 只跳过没有观察者为其单独注册语义动作的单产生式, 这些规约不会通知任何观察者;
+     * 需要完整的规约序列 (如 ProductionCollector 的输出) 时应使用 {@link ReductionShortcuts.Mode#REPORT_ELIDED}.
+     *
+     * @param mode 使用方式
+     */
+    public void setReductionShortcuts(ReductionShortcuts.Mode mode) {
+        this.reductionMode = mode;
+        this.shortcuts = null;
+    }
+
+    /**
+     * @return 当前分析表上的优化, 未开启时为 null
+     */
+    private ReductionShortcuts shortcuts(CompiledLRTable table) {
+        if (reductionMode == ReductionShortcuts.Mode.OFF) {
+            return null;
+        }
+        if (shortcuts == null || shortcutsTable != table) {
+            final var elidable = new boolean[table.productionLimit()];
+            for (int production = 0; production < elidable.length; production++) {
+                elidable[production] = reductionMode == ReductionShortcuts.Mode.REPORT_ELIDED
+                    || !dispatch().reduceAttached[production];
+            }
+            shortcuts = ReductionShortcuts.build(table, elidable);
+            shortcutsTable = table;
         }
+        return shortcuts;
+    }
+
+    /**
+     * 设置是否把表达式交给算符优先分析 (见 {@link ExpressionParser})
+     * <br>
+     * 开启后, 若分析表的文法中有 E -> E + A | A 这样的分层表达式, 驱动程序在期待表达式的状态遇到表达式的开头时,
+     * 由 ExpressionParser 分析整个表达式再转移回 LR 分析. 观察者看到的动作序列 (包括各动作的 Status) 与不开启时完全一致.
+     * 只在词法单元存放在 TokenBuffer 中时生效, 文法中没有分层表达式时仍使用 LR 分析.
+     *
+     * @param enabled 是否开启
+     */
+    public void setExpressionParser(boolean enabled) {
+        this.hybridExpressions = enabled;
+        this.expressions = null;
+    }
+
+    /**
+     * @return 当前分析表上的表达式分析器, 未开启或文法中没有分层表达式时为 null
+     */
+    private ExpressionParser expressions(CompiledLRTable table) {
+        if (!hybridExpressions) {
+            return null;
+        }
+        if (expressionsTable != table) {
+            expressions = ExpressionParser.detect(table);
+            expressionsTable = table;
+        }
+        return expressions;
     }
 
     public void loadTokens(Iterable<Token> tokens) {
         // 你可以自行选择要如何存储词法单元, 譬如使用迭代器, 或是栈, 或是干脆使用一个 list 全存起来
         // 需要注意的是, 在实现驱动程序的过程中, 你会需要面对只读取一个 token 而不能消耗它的情况,
         // 在自行设计的时候请加以考虑此种情况
-        for (Token token: tokens)
-            this.tokens.addLast(token);
+        // 直接持有迭代器, 词法分析器处于流式模式时便是边分析边解析
+        this.tokens = tokens.iterator();
+        this.lookahead = null;
+        this.tokenBuffer = tokens instanceof TokenBuffer buffer ? buffer : null;
+    }
+
+    /**
+     * @return 向前看的 token, 不消耗它
+     */
+    private Token peekToken() {
+        if (lookahead == null) {
+            lookahead = tokens.next();
+        }
+        return lookahead;
+    }
+
+    /**
+     * @return 消耗掉向前看的 token
+     */
+    private Token consumeToken() {
+        final var token = peekToken();
+        lookahead = null;
+        return token;
     }
 
     public void loadLRTable(LRTable table) {
         // 你可以自行选择要如何使用该表格:
         // 是直接对 LRTable 调用 getAction/getGoto, 抑或是直接将 initStatus 存起来使用
+        lrTable = CompiledLRTable.compile(table);
+    }
+
+    /**
+     * 直接加载已编译的分析表, 如 {@link TableCache} 读出的表
+     *
+     * @param table 已编译的分析表
+     */
+    public void loadLRTable(CompiledLRTable table) {
         lrTable = table;
     }
 
@@ -93,67 +317,206 @@ public class SyntaxAnalyzer {
         // 请分别在遇到 Shift, Reduce, Accept 的时候调用上面的 callWhenInShift, callWhenInReduce, callWhenInAccept
         // 否则用于为实验二打分的产生式输出可能不会正常工作
 
-        // Inner class for containing both token and nonTerminal in stack
-        class Symbol {
-            Token token;
-            NonTerminal nonTerminal;
+        // 驱动程序只做数组下标访问, Status/Production 对象仅在通知观察者时才取出.
+        // 词法单元来自 TokenBuffer 时按下标读取码点, 只有存在关心该终结符的观察者时才为移入的 token 构造 Token 对象 (没有文本的 token 不会重复构造),
+        // 此时除了状态栈偶尔扩容之外, 移入与规约都不分配任何对象
+        final var table = lrTable;
+        final var buffer = tokenBuffer;
+        final var log = parallelObservers && !observers.isEmpty() ? new EventLog(sharedSymbols(buffer)) : null;
+        final var shortcuts = shortcuts(table);
+        final var expressions = buffer != null ? expressions(table) : null;
+        final var expressionEvents = expressions != null ? expressionEvents(table, buffer, log, shortcuts) : null;
+        attributes.clear();
+        var stack = stateStack;
+        int top = 0;
+        int position = 0;
+        stack[top] = table.init();
+        while (true) {
+            final var state = stack[top];
+            // 有默认规约的状态不必读取向前看符号
+            final var defaultReduce = shortcuts != null ? shortcuts.defaultReduce(state) : CompiledLRTable.ERROR;
+            final var code = defaultReduce != CompiledLRTable.ERROR ? 0
+                : buffer != null ? buffer.codeAt(position) : peekToken().getKind().getCode();
+            final var terminal = defaultReduce != CompiledLRTable.ERROR ? -1 : table.terminalOfCode(code);
+            final var action = defaultReduce != CompiledLRTable.ERROR ? defaultReduce : table.action(state, terminal);
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    if (expressions != null && expressions.startsAt(state, terminal)) {
+                        // 整个表达式交给 ExpressionParser, 之后如同刚刚规约出了表达式的开始符号
+                        position = expressions.parse(state, position, buffer, expressionEvents);
+                        if (++top == stack.length) {
+                            stack = stateStack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[top] = goto_(table, shortcuts, state, expressions.root(), log);
+                        continue;
+                    }
+                    final var target = CompiledLRTable.payloadOf(action);
+                    if (log != null) {
+                        log.shift(target, position);
+                    } else if (buffer == null) {
+                        callWhenInShift(table.status(target), consumeToken());
+                    } else if (hasShiftHandlers(code)) {
+                        callWhenInShift(table.status(target), buffer, position);
+                    } else {
+                        // 无人关心的终结符也要在属性栈中占一个槽位
+                        attributes.push();
+                    }
+                    position++;
+                    if (++top == stack.length) {
+                        stack = stateStack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top] = target;
+                }
+                case CompiledLRTable.REDUCE -> {
+                    final var production = CompiledLRTable.payloadOf(action);
+                    if (log != null) {
+                        log.reduce(state, production);
+                    } else {
+                        callWhenInReduce(table.status(state), table.production(production));
+                    }
+                    top -= table.bodyLengthOf(production);
+                    final var target = goto_(table, shortcuts, stack[top], table.headOf(production), log);
+                    if (++top == stack.length) {
+                        stack = stateStack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top] = target;
+                }
+                case CompiledLRTable.ACCEPT -> {
+                    if (log != null) {
+                        log.accept(state);
+                        replayInParallel(log, table);
+                    } else {
+                        callWhenInAccept(table.status(state));
+                    }
+                    return;
+                }
+                default -> throw new RuntimeException("Error");
+            }
+        }
+    }
+
+    /**
+     * 规约出 head 之后的 GOTO, 跳过单产生式时按需通知被跳过的规约
+     */
+    private int goto_(CompiledLRTable table, ReductionShortcuts shortcuts, int below, int head, EventLog log) {
+        if (shortcuts == null) {
+            return table.goto_(below, head);
+        }
+        if (reductionMode == ReductionShortcuts.Mode.REPORT_ELIDED) {
+            reportElided(shortcuts.elided(below, head), table, log);
+        }
+        return shortcuts.goto_(below, head);
+    }
 
-            private Symbol(Token token, NonTerminal nonTerminal){
-                this.token = token;
-                this.nonTerminal = nonTerminal;
+    /**
+     * 把 ExpressionParser 的动作如同 LR 分析时一样通知给观察者 (或记录到 log 中)
+     */
+    private ExpressionParser.Events expressionEvents(CompiledLRTable table, TokenBuffer buffer, EventLog log,
+                                                     ReductionShortcuts shortcuts) {
+        final var elide = shortcuts != null && reductionMode == ReductionShortcuts.Mode.ELIDE;
+        return new ExpressionParser.Events() {
+            @Override
+            public void shift(int target, int position) {
+                if (log != null) {
+                    log.shift(target, position);
+                } else if (hasShiftHandlers(buffer.codeAt(position))) {
+                    callWhenInShift(table.status(target), buffer, position);
+                } else {
+                    attributes.push();
+                }
             }
 
-            public Symbol(Token token){
-                this(token, null);
+            @Override
+            public void reduce(int state, int production) {
+                // ELIDE 模式下, LR 分析会跳过的单产生式规约同样不通知
+                if (elide && isElided(table, shortcuts, state, production)) {
+                    return;
+                }
+                if (log != null) {
+                    log.reduce(state, production);
+                } else {
+                    callWhenInReduce(table.status(state), table.production(production));
+                }
             }
+        };
+    }
 
-            public Symbol(NonTerminal nonTerminal){
-                this(null, nonTerminal);
+    /**
+     * 与 {@link ReductionShortcuts#build} 的条件相同: 产生式体为单个非终结符, 该状态的唯一动作就是按它规约, 且没有观察者为它注册动作.
+     * B -> id 这样移入之后的规约不经过 GOTO, 不会被跳过
+     */
+    private boolean isElided(CompiledLRTable table, ReductionShortcuts shortcuts, int state, int production) {
+        final var sole = shortcuts.defaultReduce(state);
+        return CompiledLRTable.kindOf(sole) == CompiledLRTable.REDUCE && CompiledLRTable.payloadOf(sole) == production
+            && table.bodyLengthOf(production) == 1 && table.production(production).body().get(0) instanceof NonTerminal
+            && !dispatch().reduceAttached[production];
+    }
+
+    /**
+     * 按原来的顺序通知被跳过的单产生式规约
+     *
+     * @param elided 依次为 (栈顶状态, 产生式行号) 的数组
+     */
+    private void reportElided(int[] elided, CompiledLRTable table, EventLog log) {
+        for (int idx = 0; idx < elided.length; idx += 2) {
+            if (log != null) {
+                log.reduce(elided[idx], elided[idx + 1]);
+            } else {
+                callWhenInReduce(table.status(elided[idx]), table.production(elided[idx + 1]));
             }
+        }
+    }
+
+    /**
+     * 并行回放的前提: 词法单元存放在以本分析器的符号表分析出的 TokenBuffer 中 (见 {@link #setParallelObservers})
+     *
+     * @return buffer 本身
+     */
+    private TokenBuffer sharedSymbols(TokenBuffer buffer) {
+        if (buffer == null || buffer.getSymbolTable() != symbolTable) {
+            throw new RuntimeException("Parallel observers need a TokenBuffer lexed into the parser's symbol table");
+        }
+        return buffer;
+    }
+
+    /**
+     * 每个观察者在一个虚拟线程中回放记录, 全部结束后返回
+     */
+    private void replayInParallel(EventLog log, CompiledLRTable table) {
+        // 虚拟线程中抛出的异常需要转交给调用者
+        final var failures = new RuntimeException[observers.size()];
+        final var threads = new ArrayList<Thread>();
+        for (int idx = 0; idx < observers.size(); idx++) {
+            final var observer = observers.get(idx);
+            final var slot = idx;
+            threads.add(Thread.ofVirtual().start(() -> {
+                try {
+                    log.replay(observer, table);
+                } catch (RuntimeException e) {
+                    failures[slot] = e;
+                }
+            }));
+        }
 
-            public boolean isToken(){
-                return this.token != null;
+        for (final var thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while replaying actions", e);
             }
+        }
 
-            public boolean isNonTerminal(){
-                return this.nonTerminal != null;
+        // 回放时各观察者使用各自的属性栈, 结束后挂回共用的属性栈
+        for (final var observer : observers) {
+            if (observer instanceof IndexedActionObserver indexed) {
+                indexed.setAttributeStack(attributes);
             }
         }
 
-        // do LR analysis
-        Stack<Status> statusStack = new Stack<>();
-        Stack<Symbol> symbolStack = new Stack<>();
-        statusStack.push(lrTable.getInit());
-        symbolStack.push(new Symbol(Token.eof()));
-        while (true) {
-            Status status = statusStack.peek();
-            Symbol symbol = symbolStack.peek();
-            // Action
-            Token token = tokens.getFirst();
-            Action action = status.getAction(token);
-            switch (action.getKind()) {
-                case Shift -> {
-                    callWhenInShift(action.getStatus(), token);
-                    statusStack.push(action.getStatus());
-                    symbolStack.push(new Symbol(tokens.removeFirst()));
-                }
-                case Reduce -> {
-                    callWhenInReduce(status, action.getProduction());
-                    int n = action.getProduction().body().size();
-                    for (int i = 0; i < n; i++) {
-                        statusStack.pop();
-                        symbolStack.pop();
-                    }
-                    symbolStack.push(new Symbol(new NonTerminal(action.getProduction().head().getTermName())));
-                    statusStack.push(statusStack.peek().getGoto(symbolStack.peek().nonTerminal));
-                }
-                case Accept -> {
-                    callWhenInAccept(status);
-                    return;
-                }
-                case Error -> {
-                    throw new RuntimeException("Error");
-                }
+        for (final var failure : failures) {
+            if (failure != null) {
+                throw failure;
             }
         }
     }
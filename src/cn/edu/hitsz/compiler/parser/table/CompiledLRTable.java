@@ -0,0 +1,519 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * 编译为整数数组的 LR 分析表
+ * <br>
+ * 状态, 终结符与非终结符都被稠密地编号: 状态按 {@link LRTable} 中的顺序编号, 起始状态为 0;
+ * 终结符编号为 [0, terminalCount), 非终结符编号为 [terminalCount, terminalCount + nonTerminalCount), 二者共用列号.
+ * <br>
+ * ACTION 表中的一项打包为一个 int: 低 2 位为动作类型 ({@link #ERROR}, {@link #SHIFT}, {@link #REDUCE}, {@link #ACCEPT}),
+ * 其余位为载荷 (移入的目标状态, 或规约的产生式在 grammar.txt 中的行号). GOTO 表中的一项直接为目标状态.
+ * 错误动作恰好为 0.
+ * <br>
+ * 整张表是稀疏的, 用行位移法 (comb vector) 压缩: 内容完全相同的若干状态共用一行, 状态 state 使用第 {@code rowOf[state]} 行;
+ * 每一行被平移 {@code base[row]} 后叠放进同一对 {@code next/check} 数组, 要求各行的非空项互不重叠.
+ * 查表时若 {@code check[base[row] + column] != row} 即为空项 (错误).
+ * <br>
+ * 原有的 {@link Status}/{@link Action} 仍可通过 {@link #status(int)} 获得, 供观察者使用.
+ */
+public final class CompiledLRTable {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    /**
+     * @param action 打包的动作
+     * @return 动作类型
+     */
+    public static int kindOf(int action) {
+        return action & 3;
+    }
+
+    /**
+     * @param action 打包的动作
+     * @return 动作的载荷
+     */
+    public static int payloadOf(int action) {
+        return action >>> 2;
+    }
+
+    /**
+     * @return 起始状态
+     */
+    public int init() {
+        return 0;
+    }
+
+    /**
+     * @param code 词法单元类型的码点
+     * @return 对应的终结符编号, 若该类型不在表中则为 -1
+     */
+    public int terminalOfCode(int code) {
+        final var slot = code - minCode;
+        return slot >= 0 && slot < terminalByCode.length ? terminalByCode[slot] : -1;
+    }
+
+    /**
+     * @param kind 词法单元类型
+     * @return 对应的终结符编号, 若该类型不在表中则为 -1
+     */
+    public int terminalOf(TokenKind kind) {
+        return terminalOfCode(kind.getCode());
+    }
+
+    /**
+     * @param state    状态
+     * @param terminal 终结符编号, -1 代表不在表中的终结符
+     * @return 打包的动作
+     */
+    public int action(int state, int terminal) {
+        if (terminal < 0) {
+            return ERROR;
+        }
+        final var row = rowOf[state];
+        final var slot = base[row] + terminal;
+        return check[slot] == row ? next[slot] : ERROR;
+    }
+
+    /**
+     * @param state       状态
+     * @param nonTerminal 非终结符编号
+     * @return 目标状态, 若不存在则为 -1
+     */
+    public int goto_(int state, int nonTerminal) {
+        final var row = rowOf[state];
+        final var slot = base[row] + nonTerminal;
+        return check[slot] == row ? next[slot] : -1;
+    }
+
+    /**
+     * @param production 产生式的行号
+     * @return 产生式头的非终结符编号, 开始符号不在表中时为 -1
+     */
+    public int headOf(int production) {
+        return heads[production];
+    }
+
+    /**
+     * @param production 产生式的行号
+     * @return 产生式体的长度
+     */
+    public int bodyLengthOf(int production) {
+        return bodyLengths[production];
+    }
+
+    /**
+     * @param production 产生式的行号
+     * @return 产生式对象
+     */
+    public Production production(int production) {
+        return productions[production];
+    }
+
+    /**
+     * @param state 状态
+     * @return 对应的 Status 对象
+     */
+    public Status status(int state) {
+        return statuses[state];
+    }
+
+    /**
+     * @param terminal 终结符编号
+     * @return 对应的词法单元类型
+     */
+    public TokenKind terminal(int terminal) {
+        return terminals.get(terminal);
+    }
+
+    /**
+     * @param nonTerminal 非终结符编号, 即 [terminalCount, terminalCount + nonTerminalCount) 中的列号
+     * @return 对应的非终结符
+     */
+    public NonTerminal nonTerminal(int nonTerminal) {
+        return nonTerminals.get(nonTerminal - terminalCount);
+    }
+
+    /**
+     * @return 产生式行号的上界 (不含)
+     */
+    public int productionLimit() {
+        return productions.length;
+    }
+
+    public int stateCount() {
+        return statuses.length;
+    }
+
+    public int terminalCount() {
+        return terminalCount;
+    }
+
+    public int nonTerminalCount() {
+        return nonTerminalCount;
+    }
+
+    /**
+     * @return 压缩后 next/check 数组的长度, 未压缩的表需要 stateCount * (terminalCount + nonTerminalCount) 项
+     */
+    public int packedSize() {
+        return next.length;
+    }
+
+    /**
+     * @return 去重后不同的行数, 不超过状态数
+     */
+    public int distinctRowCount() {
+        return base.length;
+    }
+
+    /**
+     * @return 查表时用到的数组 (rowOf, base, next, check) 共占的字节数
+     */
+    public int footprintBytes() {
+        return (rowOf.length + base.length + next.length + check.length) * Integer.BYTES;
+    }
+
+    /**
+     * 编译 LR 分析表
+     * <br>
+     * 只使用 LRTable 的公开接口: 从起始状态出发, 沿移入与 GOTO 遍历所有可达的状态, 状态仍按其编号排列.
+     * 终结符按码点排列, 非终结符按名字排列, 二者都只包含表中实际出现过的.
+     *
+     * @param table 分析表
+     * @return 编译后的表
+     */
+    public static CompiledLRTable compile(LRTable table) {
+        final var init = table.getInit();
+        final var reached = new HashSet<Status>();
+        final var pending = new ArrayDeque<Status>();
+        reached.add(init);
+        pending.add(init);
+        final var terminalSet = new HashSet<TokenKind>();
+        final var nonTerminalSet = new HashSet<NonTerminal>();
+        while (!pending.isEmpty()) {
+            final var status = pending.poll();
+            final var targets = new ArrayList<Status>(status.goto_().values());
+            for (final var entry : status.action().entrySet()) {
+                terminalSet.add(entry.getKey());
+                if (entry.getValue().getKind() == Action.ActionKind.Shift) {
+                    targets.add(entry.getValue().getStatus());
+                }
+            }
+            nonTerminalSet.addAll(status.goto_().keySet());
+            for (final var target : targets) {
+                if (!target.isError() && reached.add(target)) {
+                    pending.add(target);
+                }
+            }
+        }
+
+        // 起始状态必须编号为 0, 其余按原编号排列
+        final var statuses = new ArrayList<Status>(reached.size());
+        statuses.add(init);
+        reached.stream()
+            .filter(status -> !status.equals(init))
+            .sorted(Comparator.comparingInt(Status::index))
+            .forEach(statuses::add);
+        final var terminals = terminalSet.stream().sorted(Comparator.comparingInt(TokenKind::getCode)).toList();
+        final var nonTerminals = nonTerminalSet.stream().sorted(Comparator.comparing(NonTerminal::getTermName)).toList();
+        return compile(statuses, terminals, nonTerminals);
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * 编译 LR 分析表
+     *
+     * @param statuses     按编号排列的状态
+     * @param terminals    终结符
+     * @param nonTerminals 非终结符
+     * @return 编译后的表
+     */
+    static CompiledLRTable compile(List<Status> statuses, List<TokenKind> terminals, List<NonTerminal> nonTerminals) {
+        final var stateCount = statuses.size();
+        final var terminalCount = terminals.size();
+        final var columnCount = terminalCount + nonTerminals.size();
+
+        final var stateOf = new HashMap<Status, Integer>();
+        for (int state = 0; state < stateCount; state++) {
+            stateOf.put(statuses.get(state), state);
+        }
+
+        // 先展开为稠密的行
+        final var rows = new int[stateCount][columnCount];
+        final var present = new boolean[stateCount][columnCount];
+        for (int state = 0; state < stateCount; state++) {
+            final var status = statuses.get(state);
+            for (int terminal = 0; terminal < terminalCount; terminal++) {
+                final var action = status.getAction(terminals.get(terminal));
+                final var packed = switch (action.getKind()) {
+                    case Shift -> (stateOf.get(action.getStatus()) << 2) | SHIFT;
+                    case Reduce -> (action.getProduction().index() << 2) | REDUCE;
+                    case Accept -> ACCEPT;
+                    case Error -> ERROR;
+                };
+                rows[state][terminal] = packed;
+                present[state][terminal] = packed != ERROR;
+            }
+            for (int idx = 0; idx < nonTerminals.size(); idx++) {
+                final var target = status.getGoto(nonTerminals.get(idx));
+                if (!target.isError()) {
+                    rows[state][terminalCount + idx] = stateOf.get(target);
+                    present[state][terminalCount + idx] = true;
+                }
+            }
+        }
+
+        // 相同的行只保留一份, 行按第一次出现的顺序编号
+        final var rowOf = new int[stateCount];
+        final var distinct = new ArrayList<Integer>();
+        final var rowIds = new HashMap<IntBuffer, Integer>();
+        for (int state = 0; state < stateCount; state++) {
+            // IntBuffer 按内容比较; 空项记为 -1, 以区分 GOTO 到状态 0 与没有 GOTO
+            final var key = new int[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                key[column] = present[state][column] ? rows[state][column] : -1;
+            }
+            final var id = rowIds.computeIfAbsent(IntBuffer.wrap(key), k -> distinct.size());
+            if (id == distinct.size()) {
+                distinct.add(state);
+            }
+            rowOf[state] = id;
+        }
+        final var rowCount = distinct.size();
+
+        // 行位移压缩: 按非空项数从多到少, 为每一行找到第一个不冲突的位移
+        final var order = new Integer[rowCount];
+        final var filled = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            order[row] = row;
+            for (final var p : present[distinct.get(row)]) {
+                filled[row] += p ? 1 : 0;
+            }
+        }
+        Arrays.sort(order, (lhs, rhs) -> Integer.compare(filled[rhs], filled[lhs]));
+
+        final var base = new int[rowCount];
+        var next = new int[columnCount * 2];
+        var check = new int[columnCount * 2];
+        Arrays.fill(check, -1);
+        var used = new boolean[columnCount * 2];
+        int length = 0;
+        for (final int row : order) {
+            final var state = distinct.get(row);
+            int offset = 0;
+            while (!fits(present[state], used, offset)) {
+                offset++;
+            }
+            // 保证任何 base + column 都不越界
+            if (offset + columnCount > next.length) {
+                final var capacity = Math.max(next.length * 2, offset + columnCount);
+                next = Arrays.copyOf(next, capacity);
+                used = Arrays.copyOf(used, capacity);
+                final var oldLength = check.length;
+                check = Arrays.copyOf(check, capacity);
+                Arrays.fill(check, oldLength, capacity, -1);
+            }
+            base[row] = offset;
+            for (int column = 0; column < columnCount; column++) {
+                if (present[state][column]) {
+                    next[offset + column] = rows[state][column];
+                    check[offset + column] = row;
+                    used[offset + column] = true;
+                }
+            }
+            length = Math.max(length, offset + columnCount);
+        }
+
+        return new CompiledLRTable(
+            statuses.toArray(new Status[0]), List.copyOf(terminals), List.copyOf(nonTerminals),
+            rowOf, base, Arrays.copyOf(next, length), Arrays.copyOf(check, length));
+    }
+
+    private static boolean fits(boolean[] row, boolean[] used, int offset) {
+        for (int column = 0; column < row.length; column++) {
+            if (row[column] && offset + column < used.length && used[offset + column]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按 {@link TableCache} 的格式写出 (不含文件头)
+     *
+     * @param out 输出流
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(statuses.length);
+        out.writeInt(terminalCount);
+        out.writeInt(nonTerminalCount);
+        out.writeInt(base.length);
+        out.writeInt(next.length);
+        for (final var terminal : terminals) {
+            out.writeUTF(terminal.getIdentifier());
+        }
+        for (final var nonTerminal : nonTerminals) {
+            out.writeUTF(nonTerminal.getTermName());
+        }
+        for (final var status : statuses) {
+            out.writeInt(status.index());
+        }
+        for (final var array : List.of(rowOf, base, next, check)) {
+            for (final var value : array) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    /**
+     * 读取 {@link #write(DataOutputStream)} 写出的表, 并重建供观察者使用的 Status/Action 对象
+     *
+     * @param in 输入缓冲区, 从当前位置开始读取
+     * @return 读出的表
+     */
+    static CompiledLRTable read(ByteBuffer in) {
+        final var stateCount = in.getInt();
+        final var terminalCount = in.getInt();
+        final var nonTerminalCount = in.getInt();
+        final var rowCount = in.getInt();
+        final var packedSize = in.getInt();
+
+        final var terminals = new ArrayList<TokenKind>(terminalCount);
+        for (int idx = 0; idx < terminalCount; idx++) {
+            terminals.add(TokenKind.fromString(readUTF(in)));
+        }
+        final var nonTerminals = new ArrayList<NonTerminal>(nonTerminalCount);
+        for (int idx = 0; idx < nonTerminalCount; idx++) {
+            nonTerminals.add(new NonTerminal(readUTF(in)));
+        }
+
+        final var statuses = new Status[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            statuses[state] = Status.create(in.getInt());
+        }
+
+        final var ints = in.asIntBuffer();
+        final var rowOf = new int[stateCount];
+        final var base = new int[rowCount];
+        final var next = new int[packedSize];
+        final var check = new int[packedSize];
+        ints.get(rowOf).get(base).get(next).get(check);
+        in.position(in.position() + ints.position() * Integer.BYTES);
+
+        final var table = new CompiledLRTable(statuses, List.copyOf(terminals), List.copyOf(nonTerminals), rowOf, base, next, check);
+        table.fillStatuses();
+        return table;
+    }
+
+    private static String readUTF(ByteBuffer in) {
+        final var bytes = new byte[Short.toUnsignedInt(in.getShort())];
+        in.get(bytes);
+        // 词法单元与非终结符的名字都是 ASCII, modified UTF-8 与标准 UTF-8 在此一致
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按整数表填充 Status 对象中的 action 与 goto
+     */
+    private void fillStatuses() {
+        for (int state = 0; state < statuses.length; state++) {
+            final var status = statuses[state];
+            for (int terminal = 0; terminal < terminalCount; terminal++) {
+                final var packed = action(state, terminal);
+                final var action = switch (kindOf(packed)) {
+                    case SHIFT -> Action.shift(statuses[payloadOf(packed)]);
+                    case REDUCE -> Action.reduce(productions[payloadOf(packed)]);
+                    case ACCEPT -> Action.accept();
+                    default -> Action.error();
+                };
+                status.setAction(terminals.get(terminal), action);
+            }
+            for (int idx = 0; idx < nonTerminalCount; idx++) {
+                final var target = goto_(state, terminalCount + idx);
+                status.setGoto(nonTerminals.get(idx), target < 0 ? Status.error() : statuses[target]);
+            }
+        }
+    }
+
+    // 供 TableMinimizer 重建 LRTable 时使用
+    List<TokenKind> terminals() {
+        return terminals;
+    }
+
+    List<NonTerminal> nonTerminals() {
+        return nonTerminals;
+    }
+
+    private CompiledLRTable(Status[] statuses, List<TokenKind> terminals, List<NonTerminal> nonTerminals,
+                            int[] rowOf, int[] base, int[] next, int[] check) {
+        this.statuses = statuses;
+        this.terminals = terminals;
+        this.nonTerminals = nonTerminals;
+        this.terminalCount = terminals.size();
+        this.nonTerminalCount = nonTerminals.size();
+        this.rowOf = rowOf;
+        this.base = base;
+        this.next = next;
+        this.check = check;
+
+        // 码点到终结符编号. 这里在冷启动路径上, 不用 Stream 以免引入额外的类加载
+        int minCode = Integer.MAX_VALUE;
+        int maxCode = Integer.MIN_VALUE;
+        for (final var terminal : terminals) {
+            minCode = Math.min(minCode, terminal.getCode());
+            maxCode = Math.max(maxCode, terminal.getCode());
+        }
+        this.minCode = terminals.isEmpty() ? 0 : minCode;
+        this.terminalByCode = new int[terminals.isEmpty() ? 0 : maxCode - minCode + 1];
+        Arrays.fill(terminalByCode, -1);
+        for (int terminal = 0; terminal < terminalCount; terminal++) {
+            terminalByCode[terminals.get(terminal).getCode() - this.minCode] = terminal;
+        }
+
+        // 产生式按行号编号
+        final var grammar = GrammarInfo.getProductionsInOrder();
+        this.productions = new Production[grammar.size() + 1];
+        this.heads = new int[grammar.size() + 1];
+        this.bodyLengths = new int[grammar.size() + 1];
+        for (final var production : grammar) {
+            productions[production.index()] = production;
+            // 开始符号可能不在 GOTO 表中, 它只会被接受而不会被规约
+            final var head = nonTerminals.indexOf(production.head());
+            heads[production.index()] = head < 0 ? -1 : terminalCount + head;
+            bodyLengths[production.index()] = production.body().size();
+        }
+    }
+
+    private final Status[] statuses;
+    private final List<TokenKind> terminals;
+    private final List<NonTerminal> nonTerminals;
+    private final int terminalCount;
+    private final int nonTerminalCount;
+    private final int[] terminalByCode;
+    private final int minCode;
+    private final int[] rowOf;
+    private final int[] base;
+    private final int[] next;
+    private final int[] check;
+    private final Production[] productions;
+    private final int[] heads;
+    private final int[] bodyLengths;
+}
@@ -0,0 +1,129 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 供 {@link TableGenerator} 使用的文法: 产生式与优先级声明
+ * <br>
+ * {@link GrammarInfo} 只在第一次使用时读取 grammar.txt, 之后不再改变. 在同一进程中修改语法文件后重新构造分析表时
+ * (例如配合 {@link TableGenerator#keepStateNumbersOf(TableGenerator)} 比较修改前后的分析表), 可以用 {@link #read(String, String)}
+ * 读取任意路径下的语法文件. 文件格式与产生式的编号都与 GrammarInfo 相同.
+ * <br>
+ * 优先级声明写在单独的文件中 (默认为 {@link FilePathConfig#PRECEDENCE_PATH}), 每行一个 yacc 风格的声明, 如 {@code %left + -}.
+ * 同一行的终结符优先级相同, 越靠后的声明优先级越高. 文件不存在时没有任何声明.
+ */
+public final class GrammarFile {
+    /**
+     * @return GrammarInfo 读出的文法, 即 grammar.txt, 以及 {@link FilePathConfig#PRECEDENCE_PATH} 中的优先级声明
+     */
+    public static GrammarFile current() {
+        return new GrammarFile(GrammarInfo.getProductionsInOrder(), readPrecedences(FilePathConfig.PRECEDENCE_PATH));
+    }
+
+    /**
+     * 重新读取语法文件
+     *
+     * @param grammarPath    语法文件的路径
+     * @param precedencePath 优先级声明的路径, 文件不存在时没有任何声明
+     * @return 读出的文法
+     */
+    public static GrammarFile read(String grammarPath, String precedencePath) {
+        final var nonTerminals = new HashMap<String, NonTerminal>();
+        final var productions = new ArrayList<Production>();
+        final var lines = FileUtils.readLines(grammarPath);
+        for (int idx = 0; idx < lines.size(); idx++) {
+            // 与 GrammarInfo 一样: 先删除分号, 按 -> 切, 再按空格切 body
+            final var words = lines.get(idx).replace(";", "").split(" -> ");
+            final var head = nonTerminals.computeIfAbsent(words[0], NonTerminal::new);
+
+            final var body = new ArrayList<Term>();
+            for (final var termName : words[1].split(" ")) {
+                if (TokenKind.isAllowed(termName)) {
+                    body.add(TokenKind.fromString(termName));
+                } else {
+                    body.add(nonTerminals.computeIfAbsent(termName, NonTerminal::new));
+                }
+            }
+
+            productions.add(new Production(idx + 1, head, body));
+        }
+        return new GrammarFile(productions, readPrecedences(precedencePath));
+    }
+
+    /**
+     * @return 按出现顺序排列的产生式, 第一条为 S' -> S
+     */
+    public List<Production> productions() {
+        return productions;
+    }
+
+    /**
+     * @param terminal 终结符
+     * @return 声明的优先级, 未声明时为空
+     */
+    public Optional<Precedence> precedenceOf(TokenKind terminal) {
+        return Optional.ofNullable(precedences.get(terminal));
+    }
+
+    /**
+     * @param production 产生式
+     * @return 产生式的优先级, 即其体中最后一个终结符的优先级; 体中没有终结符或该终结符未声明优先级时为空
+     */
+    public Optional<Precedence> precedenceOf(Production production) {
+        final var body = production.body();
+        for (int i = body.size() - 1; i >= 0; i--) {
+            if (body.get(i) instanceof TokenKind terminal) {
+                return precedenceOf(terminal);
+            }
+        }
+        return Optional.empty();
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private final List<Production> productions;
+    private final Map<TokenKind, Precedence> precedences;
+
+    private GrammarFile(List<Production> productions, Map<TokenKind, Precedence> precedences) {
+        this.productions = Collections.unmodifiableList(productions);
+        this.precedences = precedences;
+    }
+
+    private static Map<TokenKind, Precedence> readPrecedences(String path) {
+        final var precedences = new HashMap<TokenKind, Precedence>();
+        if (!Files.isRegularFile(Paths.get(path))) {
+            return precedences;
+        }
+
+        int level = 0;
+        for (final var line : FileUtils.readLines(path)) {
+            if (line.isBlank()) {
+                continue;
+            }
+
+            // 形如 `%left + -` 的优先级声明, 每行一个优先级, 后声明的更高
+            final var words = line.replace(";", "").trim().split("\\s+");
+            final var associativity = Precedence.associativityOf(words[0]);
+            if (associativity == null) {
+                throw new RuntimeException("Unknown precedence declaration: " + line);
+            }
+            level++;
+            final var precedence = new Precedence(level, associativity);
+            for (int i = 1; i < words.length; i++) {
+                precedences.put(TokenKind.fromString(words[i]), precedence);
+            }
+        }
+        return precedences;
+    }
+}
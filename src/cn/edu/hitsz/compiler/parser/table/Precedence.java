@@ -0,0 +1,26 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+/**
+ * 终结符或产生式的优先级与结合性, 由 yacc 风格的 %left, %right 与 %nonassoc 声明给出 (见 {@link GrammarFile})
+ * <br>
+ * 同一行声明的终结符优先级相同, 越靠后的声明优先级越高. 产生式的优先级为其体中最后一个终结符的优先级.
+ *
+ * @param level         优先级, 从 1 开始, 越大越优先
+ * @param associativity 结合性
+ */
+public record Precedence(int level, Associativity associativity) {
+    public enum Associativity {LEFT, RIGHT, NONASSOC}
+
+    /**
+     * @param keyword 声明的关键字, 如 %left
+     * @return 对应的结合性, 不是优先级声明时为 null
+     */
+    static Associativity associativityOf(String keyword) {
+        return switch (keyword) {
+            case "%left" -> Associativity.LEFT;
+            case "%right" -> Associativity.RIGHT;
+            case "%nonassoc" -> Associativity.NONASSOC;
+            default -> null;
+        };
+    }
+}
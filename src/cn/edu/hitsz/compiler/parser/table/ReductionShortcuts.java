@@ -0,0 +1,176 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.Arrays;
+
+/**
+ * LR 分析表的后处理: 跳过单产生式的规约, 以及默认规约
+ * <br>
+ * 两项优化都不改变分析表本身, 而是在 {@link CompiledLRTable} 之上叠加两张稠密的小表:
+ * <ul>
+ *     <li>默认规约: 若一个状态中所有非错误动作都是同一个规约, 则在该状态下不必读取向前看符号, 直接规约.
+ *     对错误输入而言, 错误会推迟到下一次移入之前才被发现, 但合法输入的动作序列完全不变;</li>
+ *     <li>跳过单产生式: 对 A -> B 这样产生式体只有一个非终结符的产生式, 若 GOTO(s, B) 到达的状态只做 "按 A -> B 规约" 这一个动作,
+ *     就把 GOTO(s, B) 直接改为 GOTO(s, A), 省去一次规约与一次 GOTO. 可以连续跳过多个单产生式.</li>
+ * </ul>
+ * 被跳过的规约 (及其发生时所在的状态) 按顺序记录在 {@link #elided(int, int)} 中, 驱动程序可以据此仍然通知观察者,
+ * 使观察者看到的动作序列与不做优化时完全一致.
+ */
+public final class ReductionShortcuts {
+    /**
+     * 驱动程序使用该优化的方式
+     */
+    public enum Mode {
+        /**
+         * 不使用
+         */
+        OFF,
+        /**
+         * 跳过没有注册语义动作的单产生式, 不通知任何观察者; 普通观察者 (如 ProductionCollector) 将看不到这些规约
+         */
+        ELIDE,
+        /**
+         * 跳过所有单产生式, 但仍按原来的顺序把被跳过的规约通知给观察者, 观察者看到的动作序列与不优化时完全一致
+         */
+        REPORT_ELIDED,
+    }
+
+    /**
+     * 在分析表上构造优化
+     *
+     * @param table    分析表
+     * @param elidable 以产生式行号为下标, 为 true 的单产生式可以被跳过; 非单产生式即使为 true 也不会被跳过
+     * @return 构造出的优化
+     */
+    public static ReductionShortcuts build(CompiledLRTable table, boolean[] elidable) {
+        final var stateCount = table.stateCount();
+        final var terminalCount = table.terminalCount();
+        final var nonTerminalCount = table.nonTerminalCount();
+
+        // 每个状态唯一的规约动作, 没有则为 ERROR
+        final var soleReduce = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            var sole = CompiledLRTable.ERROR;
+            for (int terminal = 0; terminal < terminalCount; terminal++) {
+                final var action = table.action(state, terminal);
+                if (action == CompiledLRTable.ERROR) {
+                    continue;
+                }
+                if (CompiledLRTable.kindOf(action) != CompiledLRTable.REDUCE || (sole != CompiledLRTable.ERROR && sole != action)) {
+                    sole = CompiledLRTable.ERROR;
+                    break;
+                }
+                sole = action;
+            }
+            soleReduce[state] = sole;
+        }
+
+        final var gotos = new int[stateCount * nonTerminalCount];
+        final var elided = new int[stateCount * nonTerminalCount][];
+        int bypassed = 0;
+        for (int state = 0; state < stateCount; state++) {
+            for (int idx = 0; idx < nonTerminalCount; idx++) {
+                var target = table.goto_(state, terminalCount + idx);
+                var chain = NONE;
+                // GOTO(state, B) 到达的状态只会按 A -> B 规约, 则继续 GOTO(state, A). 单产生式成环的文法是二义的, 链长不会超过产生式数
+                while (target >= 0 && soleReduce[target] != CompiledLRTable.ERROR && chain.length < 2 * table.productionLimit()) {
+                    final var production = CompiledLRTable.payloadOf(soleReduce[target]);
+                    if (!isElidable(table, elidable, production)) {
+                        break;
+                    }
+                    chain = append(chain, target, production);
+                    target = table.goto_(state, table.headOf(production));
+                }
+                gotos[state * nonTerminalCount + idx] = target;
+                elided[state * nonTerminalCount + idx] = chain;
+                bypassed += chain.length == 0 ? 0 : 1;
+            }
+        }
+
+        return new ReductionShortcuts(terminalCount, nonTerminalCount, soleReduce, gotos, elided, bypassed);
+    }
+
+    /**
+     * @param state 状态
+     * @return 该状态的默认规约 (打包的 REDUCE 动作), 没有则为 {@link CompiledLRTable#ERROR}
+     */
+    public int defaultReduce(int state) {
+        return defaultReduces[state];
+    }
+
+    /**
+     * 跳过单产生式之后的 GOTO
+     *
+     * @param state       状态
+     * @param nonTerminal 非终结符编号
+     * @return 目标状态, 若不存在则为 -1
+     */
+    public int goto_(int state, int nonTerminal) {
+        return gotos[state * nonTerminalCount + nonTerminal - terminalCount];
+    }
+
+    /**
+     * 被 {@link #goto_(int, int)} 跳过的规约
+     *
+     * @param state       状态
+     * @param nonTerminal 非终结符编号
+     * @return 依次为 (规约发生时的栈顶状态, 产生式行号) 的数组, 没有跳过任何规约时为空数组. 调用者不应修改它.
+     */
+    public int[] elided(int state, int nonTerminal) {
+        return elided[state * nonTerminalCount + nonTerminal - terminalCount];
+    }
+
+    /**
+     * @return 有默认规约的状态数
+     */
+    public int defaultReductionCount() {
+        int count = 0;
+        for (final var action : defaultReduces) {
+            count += action != CompiledLRTable.ERROR ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * @return 跳过了至少一个单产生式的 GOTO 项数
+     */
+    public int bypassedGotoCount() {
+        return bypassedGotoCount;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private static final int[] NONE = new int[0];
+
+    private final int terminalCount;
+    private final int nonTerminalCount;
+    private final int[] defaultReduces;
+    private final int[] gotos;
+    private final int[][] elided;
+    private final int bypassedGotoCount;
+
+    private ReductionShortcuts(int terminalCount, int nonTerminalCount, int[] defaultReduces,
+                               int[] gotos, int[][] elided, int bypassedGotoCount) {
+        this.terminalCount = terminalCount;
+        this.nonTerminalCount = nonTerminalCount;
+        this.defaultReduces = defaultReduces;
+        this.gotos = gotos;
+        this.elided = elided;
+        this.bypassedGotoCount = bypassedGotoCount;
+    }
+
+    /**
+     * 只有产生式体恰为一个符号, 且产生式头在表中的产生式才能被跳过. 该方法只在 GOTO 到达的状态上调用,
+     * 此时产生式体的唯一符号必然是刚刚 GOTO 的非终结符.
+     */
+    private static boolean isElidable(CompiledLRTable table, boolean[] elidable, int production) {
+        return production < elidable.length && elidable[production]
+            && table.bodyLengthOf(production) == 1 && table.headOf(production) >= 0;
+    }
+
+    private static int[] append(int[] chain, int state, int production) {
+        final var longer = Arrays.copyOf(chain, chain.length + 2);
+        longer[chain.length] = state;
+        longer[chain.length + 1] = production;
+        return longer;
+    }
+}
@@ -0,0 +1,194 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * LR 分析表的二进制缓存
+ * <br>
+ * 读取 CSV 分析表需要逐格切分字符串, 并对每个规约动作按产生式文本查找 {@link GrammarInfo}; 从文法构造分析表则更慢.
+ * 缓存文件直接保存 {@link CompiledLRTable} 的整数数组, 读取时整体映射到内存, 只需批量读出几个 int 数组.
+ * 得到的就是 CompiledLRTable, 直接交给 {@link cn.edu.hitsz.compiler.parser.SyntaxAnalyzer#loadLRTable(CompiledLRTable)},
+ * 不再经过 LRTable. 不经缓存时则照常用 {@link TableLoader} 读取 CSV 得到 LRTable.
+ * <br>
+ * 文件格式 (大端序):
+ * <pre>
+ * int  magic        'LRTB'
+ * int  version
+ * int  grammar.txt 的 CRC32C
+ * int  coding_map.csv 的 CRC32C
+ * int  优先级声明 (precedence.txt) 的 CRC32C, 文件不存在时为 0
+ * int  分析表来源: 0 为 CSV, 1 为 TableGenerator
+ * int  CSV 分析表 (如 LR1_table.csv) 的 CRC32C, 由 TableGenerator 生成时为 0
+ * int  TableGenerator 所用算法的序号, 读取 CSV 时为 -1
+ * int  {@link TableGenerator#VERSION}, 读取 CSV 时为 0
+ * ...  CompiledLRTable 的内容
+ * </pre>
+ * 以上任一字段不符即视为过期, 此时退回到 CSV 或 TableGenerator, 并重新写出缓存.
+ */
+public class TableCache {
+    private static final int MAGIC = 0x4C525442;
+    private static final int VERSION = 4;
+
+    /**
+     * @param cachePath 缓存文件路径
+     */
+    public TableCache(String cachePath) {
+        this.cachePath = Paths.get(cachePath);
+    }
+
+    /**
+     * 读取 CSV 分析表, 缓存有效时直接使用缓存
+     *
+     * @param csvPath CSV 格式的分析表路径
+     * @return 编译后的分析表
+     */
+    public CompiledLRTable load(String csvPath) {
+        final var source = new Source(SOURCE_CSV, checksumOf(Paths.get(csvPath)), -1, 0);
+        return loadOrElse(source, () -> CompiledLRTable.compile(new TableLoader().load(csvPath)));
+    }
+
+    /**
+     * 从文法构造分析表, 缓存有效时直接使用缓存
+     *
+     * @return 编译后的分析表
+     */
+    public CompiledLRTable generate() {
+        return generate(TableGenerator.Algorithm.SLR);
+    }
+
+    /**
+     * 用给定的算法从文法构造分析表, 缓存有效 (且是由同一算法构造的) 时直接使用缓存
+     *
+     * @param algorithm 构造算法
+     * @return 编译后的分析表
+     */
+    public CompiledLRTable generate(TableGenerator.Algorithm algorithm) {
+        final var source = new Source(SOURCE_GENERATOR, 0, algorithm.ordinal(), TableGenerator.VERSION);
+        return loadOrElse(source, () -> {
+            final var generator = new TableGenerator(algorithm);
+            generator.run();
+            return CompiledLRTable.compile(generator.getTable());
+        });
+    }
+
+    /**
+     * @return 上一次 load/generate 是否命中了缓存
+     */
+    public boolean isHit() {
+        return hit;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private static final int SOURCE_CSV = 0;
+    private static final int SOURCE_GENERATOR = 1;
+
+    private final Path cachePath;
+    private boolean hit = false;
+
+    /**
+     * 缓存文件头中描述分析表来源的部分
+     */
+    private record Source(int kind, int csvChecksum, int algorithm, int generatorVersion) {
+        boolean matches(ByteBuffer buffer) {
+            return buffer.getInt() == kind
+                && buffer.getInt() == csvChecksum
+                && buffer.getInt() == algorithm
+                && buffer.getInt() == generatorVersion;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(kind);
+            out.writeInt(csvChecksum);
+            out.writeInt(algorithm);
+            out.writeInt(generatorVersion);
+        }
+    }
+
+    private CompiledLRTable loadOrElse(Source source, Supplier<CompiledLRTable> fallback) {
+        final var grammarChecksum = checksumOf(Paths.get(FilePathConfig.GRAMMAR_PATH));
+        final var codingMapChecksum = checksumOf(Paths.get(FilePathConfig.CODING_MAP_PATH));
+        final var precedencePath = Paths.get(FilePathConfig.PRECEDENCE_PATH);
+        final var precedenceChecksum = Files.isRegularFile(precedencePath) ? checksumOf(precedencePath) : 0;
+
+        final var cached = tryRead(grammarChecksum, codingMapChecksum, precedenceChecksum, source);
+        hit = cached != null;
+        if (cached != null) {
+            return cached;
+        }
+
+        final var table = fallback.get();
+        write(table, grammarChecksum, codingMapChecksum, precedenceChecksum, source);
+        return table;
+    }
+
+    /**
+     * @return 缓存有效时为读出的表, 不存在/过期/损坏时为 null
+     */
+    private CompiledLRTable tryRead(int grammarChecksum, int codingMapChecksum, int precedenceChecksum, Source source) {
+        if (!Files.isRegularFile(cachePath)) {
+            return null;
+        }
+
+        try (final var channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION
+                || buffer.getInt() != grammarChecksum
+                || buffer.getInt() != codingMapChecksum
+                || buffer.getInt() != precedenceChecksum
+                || !source.matches(buffer)) {
+                return null;
+            }
+            return CompiledLRTable.read(buffer);
+        } catch (IOException | RuntimeException e) {
+            // 损坏的缓存与过期的缓存一样处理, 重新生成即可
+            return null;
+        }
+    }
+
+    private void write(CompiledLRTable table, int grammarChecksum, int codingMapChecksum, int precedenceChecksum,
+                       Source source) {
+        try {
+            final var parent = cachePath.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (final var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(cachePath)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(grammarChecksum);
+                out.writeInt(codingMapChecksum);
+                out.writeInt(precedenceChecksum);
+                source.write(out);
+                table.write(out);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + cachePath, e);
+        }
+    }
+
+    private static int checksumOf(Path path) {
+        // 这些文件都很小, 直接读入比映射更快
+        try {
+            final var content = Files.readAllBytes(path);
+            final var crc = new CRC32C();
+            crc.update(content, 0, content.length);
+            return (int) crc.getValue();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+}
@@ -4,34 +4,246 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * 根据语法文件构造 LR 分析表.
  * <br>
  * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1) 分析表生成程序的参考. 正常情况下你不需要了解该文件.
+ * <br>
+ * 除 SLR(1) 外, 还可以构造 LALR(1) 与 LR(1) 分析表 (见 {@link Algorithm}), 从而不必借助第三方工具即可处理 LR(1) 文法.
+ * 以所选算法构造后调用 {@link #run()}, 再用 {@link #getTable()} 取得分析表代替读入的 LR1_table.csv;
+ * 经 {@link TableCache#generate(Algorithm)} 构造时, 文法, 优先级声明与编码表都未改变则直接读取上一次的结果.
+ * 与 FIRST 集合的计算一样, 这些算法都假定文法中没有空产生式.
+ * 有优先级声明 (见 {@link GrammarFile}) 时, 移入-规约冲突按 yacc 的规则解决, 因而也可以使用 E -> E + E 这样的二义文法.
+ * <br>
+ * 为了在有数百条产生式的文法上也只需几毫秒, 构造过程全部在整数上进行:
+ * <ul>
+ *     <li>终结符编号为 [0, T), 非终结符编号为 [T, T + N), 产生式按 grammar.txt 中的顺序编号为 [0, P);</li>
+ *     <li>项目 A -> alpha . beta 被编号为 {@code itemBase[产生式] + 点的位置}, 同一产生式的项目编号连续, 后继项目即编号加一;</li>
+ *     <li>FIRST, FOLLOW 与向前看符号都是以终结符编号为下标的 long[] 位集, 用工作表迭代到不动点;</li>
+ *     <li>状态由其核心项目唯一确定, 核心项目排序后的 int[] 即为查找状态用的键.</li>
+ * </ul>
+ * 只有在最后填充 {@link Status} 时才转换回 TokenKind, NonTerminal 与 Production 对象.
  */
 public class TableGenerator {
+    /**
+     * 构造过程的版本号, 随 {@link TableCache} 的缓存一起保存.
+     * 修改构造过程且会改变生成的分析表 (例如状态的编号顺序或冲突的解决方式) 时应将其加一, 使旧的缓存失效.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * 分析表的构造算法
+     */
+    public enum Algorithm {
+        /**
+         * LR(0) 项目集族, 按 FOLLOW 集合规约
+         */
+        SLR,
+        /**
+         * LR(0) 项目集族, 按 DeRemer–Pennello 算法 (DR/includes/lookback 关系上的 digraph 算法) 求出的向前看符号规约
+         */
+        LALR,
+        /**
+         * 规范 LR(1) 项目集族, 不合并任何状态
+         */
+        LR1,
+        /**
+         * LR(1) 项目集族, 按 Pager 的弱相容性判定合并同核心的状态. 对 LR(1) 文法不会引入冲突, 状态数通常与 LALR(1) 相当
+         */
+        PAGER,
+    }
+
     public TableGenerator() {
-        this.productions = GrammarInfo.getProductionsInOrder();
-        this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
-        this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
+        this(Algorithm.SLR);
+    }
+
+    /**
+     * @param algorithm 构造算法
+     */
+    public TableGenerator(Algorithm algorithm) {
+        this(algorithm, GrammarFile.current());
+    }
+
+    /**
+     * @param algorithm 构造算法
+     * @param grammar   文法, 例如用 {@link GrammarFile#read(String)} 重新读取的语法文件
+     */
+    public TableGenerator(Algorithm algorithm, GrammarFile grammar) {
+        this.algorithm = algorithm;
+        this.grammar = grammar;
+        this.productions = grammar.productions();
 
         if (productions.get(0).body().size() != 1) {
             throw new RuntimeException("The first production in grammar file must like S -> S'");
         }
+
+        // 终结符按码点排序, 非终结符按在文法中出现的顺序, 使状态编号与 HashMap 的迭代顺序无关
+        final var terminalSet = new TreeSet<TokenKind>(Comparator.comparingInt(TokenKind::getCode));
+        terminalSet.addAll(TokenKind.allAllowedTokenKinds().values());
+        this.terminals = List.copyOf(terminalSet);
+        final var nonTerminalSet = new LinkedHashSet<NonTerminal>();
+        for (final var production : productions) {
+            nonTerminalSet.add(production.head());
+        }
+        for (final var production : productions) {
+            for (final var term : production.body()) {
+                if (term instanceof NonTerminal nonTerminal) {
+                    nonTerminalSet.add(nonTerminal);
+                }
+            }
+        }
+        this.nonTerminals = List.copyOf(nonTerminalSet);
+
+        this.terminalCount = terminals.size();
+        this.symbolCount = terminalCount + nonTerminals.size();
+        this.words = (terminalCount + 63) >>> 6;
+        final var symbolOf = new HashMap<Term, Integer>();
+        for (int idx = 0; idx < terminalCount; idx++) {
+            symbolOf.put(terminals.get(idx), idx);
+        }
+        for (int idx = 0; idx < nonTerminals.size(); idx++) {
+            symbolOf.put(nonTerminals.get(idx), terminalCount + idx);
+        }
+        this.eof = symbolOf.get(TokenKind.eof());
+
+        // 产生式与项目编号
+        final var productionCount = productions.size();
+        this.heads = new int[productionCount];
+        this.bodies = new int[productionCount][];
+        this.itemBase = new int[productionCount];
+        int itemCount = 0;
+        for (int p = 0; p < productionCount; p++) {
+            final var production = productions.get(p);
+            heads[p] = symbolOf.get(production.head());
+            bodies[p] = production.body().stream().mapToInt(symbolOf::get).toArray();
+            itemBase[p] = itemCount;
+            itemCount += bodies[p].length + 1;
+        }
+        this.itemProduction = new int[itemCount];
+        this.itemSymbol = new int[itemCount];
+        for (int p = 0; p < productionCount; p++) {
+            for (int dot = 0; dot <= bodies[p].length; dot++) {
+                itemProduction[itemBase[p] + dot] = p;
+                itemSymbol[itemBase[p] + dot] = dot < bodies[p].length ? bodies[p][dot] : -1;
+            }
+        }
+
+        final var byHead = new ArrayList<List<Integer>>();
+        for (int idx = 0; idx < nonTerminals.size(); idx++) {
+            byHead.add(new ArrayList<>());
+        }
+        for (int p = 0; p < productionCount; p++) {
+            byHead.get(heads[p] - terminalCount).add(p);
+        }
+        this.productionsOf = byHead.stream().map(list -> list.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+        this.itemSlot = new int[itemCount];
+        this.scratch = new Scratch();
+    }
+
+    /**
+     * 设置构造 LR(0) 项目集族 (SLR 与 LALR) 时使用的线程数. 每一层 BFS 的待扩展状态会被分块, 在 fork-join 线程池上
+     * 分别求闭包与后继项目集的核, 再按状态与文法符号的顺序统一编号, 因此状态编号与分析表都与单线程时完全相同. 必须在 run 之前设置.
+     *
+     * @param parallelism 线程数, 为 1 时不并行
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new RuntimeException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 修改文法之后重新构造分析表时, 尽量保持状态编号与上一次构造相同. 必须在 run 之前设置.
+     * <br>
+     * 这不是增量构造: 分析表仍然完整地重新构造, 耗时与普通构造相同. 之后按文本对应新旧产生式,
+     * 与上一次构造的某个状态核心相同的状态沿用其编号, 其余状态依次填入空出的编号.
+     * 这样只改动少数产生式时, 未受影响的状态编号不变, 新旧分析表可以直接逐行比较.
+     * 终结符有变化时不重新编号.
+     * <br>
+     * 只支持 SLR 与 LALR: LR(1) 与 Pager 算法的状态还带有向前看符号, 核心相同的状态可能有多个.
+     *
+     * @param previous 上一次 (已经 run 过的) SLR 或 LALR 构造
+     * @throws RuntimeException 本次或上一次构造使用的不是 SLR 或 LALR, 或上一次构造尚未 run
+     */
+    public void keepStateNumbersOf(TableGenerator previous) {
+        if (!keepsNumbers(algorithm) || !keepsNumbers(previous.algorithm)) {
+            throw new RuntimeException("Stable state numbers are only supported between SLR and LALR tables");
+        }
+        if (previous.kernels.isEmpty()) {
+            throw new RuntimeException("The previous TableGenerator has not been run");
+        }
+        this.previous = previous;
     }
 
     /**
      * 主体方法
      */
     public void run() {
+        final var begin = System.nanoTime();
         calcFirst();
         calcFollow();
-        constructDFA();
-        dumpItems();
+        switch (algorithm) {
+            case SLR -> {
+                constructDFA();
+                keepNumbersOf(previous);
+                calcSLRLookaheads();
+            }
+            case LALR -> {
+                constructDFA();
+                keepNumbersOf(previous);
+                calcLALRLookaheads();
+            }
+            case LR1 -> constructLR1(false);
+            case PAGER -> constructLR1(true);
+        }
         genTable();
+        generationNanos = System.nanoTime() - begin;
+        dumpItems();
+    }
+
+    /**
+     * @return 构造出的状态数
+     */
+    public int getStateCount() {
+        return allStatusInIndexOrder.size();
+    }
+
+    /**
+     * @return 上一次 run 构造分析表所用的时间 (毫秒), 不含打印项目集族
+     */
+    public double getGenerationMillis() {
+        return generationNanos / 1e6;
+    }
+
+    /**
+     * @return 形如 "LALR: 39 states in 3.14 ms" 的报告
+     */
+    public String getReport() {
+        var report = "%s: %d states in %.2f ms".formatted(algorithm, getStateCount(), getGenerationMillis());
+        if (stableStates > 0) {
+            report += ", %d kept their numbers".formatted(stableStates);
+        }
+        return resolvedConflicts == 0 ? report : report + ", %d conflicts resolved by precedence".formatted(resolvedConflicts);
+    }
+
+    /**
+     * @return 设置了 {@link #keepStateNumbersOf(TableGenerator)} 时, 编号与上一次构造相同 (且核心相同) 的状态数
+     */
+    public int getStableStateCount() {
+        return stableStates;
+    }
+
+    /**
+     * @return 按优先级声明解决的移入-规约冲突数
+     */
+    public int getResolvedConflictCount() {
+        return resolvedConflicts;
     }
 
     /**
@@ -39,10 +251,16 @@ public class TableGenerator {
      */
     public void dumpItems() {
         final var lines = new ArrayList<String>();
-        for (final var status : allStatusInIndexOrder) {
-            lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
-                lines.add("    " + item);
+        for (int state = 0; state < kernels.size(); state++) {
+            lines.add("%d: ".formatted(state));
+            final var closure = constructClosure(kernels.get(state));
+            for (final var item : closure) {
+                final var lookahead = itemSymbol[item] < 0 ? reduceLookaheads.get(state).get(itemProduction[item]) : null;
+                if (lookahead != null) {
+                    lines.add("    " + itemToString(item) + "    " + toTerminals(lookahead));
+                } else {
+                    lines.add("    " + itemToString(item));
+                }
             }
         }
 
@@ -56,355 +274,1013 @@ public class TableGenerator {
         return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
     }
 
+    private final Algorithm algorithm;
+    private final GrammarFile grammar;
+    private TableGenerator previous = null;
     private final List<Production> productions;
-    private final Set<TokenKind> terminals;
-    private final Set<NonTerminal> nonTerminals;
+    private final List<TokenKind> terminals;
+    private final List<NonTerminal> nonTerminals;
+
+    // 终结符数 T, 文法符号数 T + N, 终结符位集的 long 数
+    private final int terminalCount;
+    private final int symbolCount;
+    private final int words;
+    private final int eof;
 
-    private final Map<Term, Set<TokenKind>> first = new HashMap<>();
-    private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
+    // 各产生式的头 (文法符号编号), 体, 以及第一个项目的编号
+    private final int[] heads;
+    private final int[][] bodies;
+    private final int[] itemBase;
+    // 以非终结符编号 - T 为下标, 以它为头的所有产生式
+    private final int[][] productionsOf;
+    // 各项目所属的产生式, 以及点后面的文法符号 (点在末尾时为 -1)
+    private final int[] itemProduction;
+    private final int[] itemSymbol;
 
-    private final Set<Term> visited = new HashSet<>();
+    // 以非终结符编号 - T 为下标
+    private long[][] first;
+    private long[][] follow;
+
+    private long generationNanos = 0;
+    private int resolvedConflicts = 0;
+    private int stableStates = 0;
+    private int parallelism = 1;
 
     /**
-     * 计算所有符号的 first 集合 <br>
-     * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
+     * 计算所有非终结符的 first 集合 <br>
+     * 文法中没有空产生式, A -> X ... 意味着 first(X) 属于 first(A). 先放入所有 A -> a ... 中的 a,
+     * 再沿 "X 是 A 的某个产生式体的第一个符号" 的关系用工作表传播到不动点, 直接或间接的左递归不会导致死循环
      */
     private void calcFirst() {
-        for (final var terminal : terminals) {
-            first.put(terminal, Set.of(terminal));
+        first = new long[nonTerminals.size()][words];
+        // startsWith[X] 为产生式体以 X 开头的产生式的头
+        final var startsWith = new ArrayList<Set<Integer>>();
+        for (int idx = 0; idx < nonTerminals.size(); idx++) {
+            startsWith.add(new LinkedHashSet<>());
         }
-
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFirst(nonTerminal);
+        for (int p = 0; p < bodies.length; p++) {
+            final var leading = bodies[p][0];
+            if (leading < terminalCount) {
+                setBit(first[heads[p] - terminalCount], leading);
+            } else {
+                startsWith.get(leading - terminalCount).add(heads[p] - terminalCount);
+            }
         }
 
+        propagate(first, startsWith);
     }
 
     /**
-     * 递归计算特定非终结符的 first
-     *
-     * @param nonTerminal 非终结符
-     * @return 其 first 集合
+     * 计算所有非终结符的 follow 集合 <br>
+     * 对 B -> alpha A X beta, first(X) 属于 follow(A); 对 B -> alpha A, follow(B) 属于 follow(A).
+     * 前者直接放入, 后者沿关系用工作表传播到不动点
      */
-    private Set<TokenKind> calcFirst(Term nonTerminal) {
-        // 如果已经被计算, 则直接返回缓存的结果
-        if (first.containsKey(nonTerminal)) {
-            return first.get(nonTerminal);
+    private void calcFollow() {
+        follow = new long[nonTerminals.size()][words];
+        setBit(follow[heads[0] - terminalCount], eof);
+        final var endsWith = new ArrayList<Set<Integer>>();
+        for (int idx = 0; idx < nonTerminals.size(); idx++) {
+            endsWith.add(new LinkedHashSet<>());
+        }
+        for (int p = 0; p < bodies.length; p++) {
+            final var body = bodies[p];
+            for (int i = 0; i < body.length; i++) {
+                if (body[i] < terminalCount) {
+                    continue;
+                }
+                final var set = follow[body[i] - terminalCount];
+                if (i + 1 < body.length) {
+                    orInto(set, firstOf(body[i + 1]));
+                } else {
+                    endsWith.get(heads[p] - terminalCount).add(body[i] - terminalCount);
+                }
+            }
         }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
+        propagate(follow, endsWith);
+
+        // 对于找完所有产生式了都还没没有 follow 的非终结符
+        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
+        for (final var set : follow) {
+            if (isEmpty(set)) {
+                setBit(set, eof);
+            }
+        }
+    }
+
+    /**
+     * 沿关系把集合传播到不动点: 对 y 属于 relation[x], sets[y] 包含 sets[x]
+     */
+    private static void propagate(long[][] sets, List<Set<Integer>> relation) {
+        final var pending = new ArrayDeque<Integer>();
+        final var queued = new boolean[sets.length];
+        for (int x = 0; x < sets.length; x++) {
+            pending.add(x);
+            queued[x] = true;
+        }
+        while (!pending.isEmpty()) {
+            final int x = pending.poll();
+            queued[x] = false;
+            for (final int y : relation.get(x)) {
+                if (orInto(sets[y], sets[x]) && !queued[y]) {
+                    pending.add(y);
+                    queued[y] = true;
                 }
             }
         }
+    }
 
-        first.put(nonTerminal, result);
-        return result;
+    /**
+     * @param symbol 文法符号编号
+     * @return 其 first 集合, 终结符的 first 就是它自身
+     */
+    private long[] firstOf(int symbol) {
+        if (symbol >= terminalCount) {
+            return first[symbol - terminalCount];
+        }
+        final var set = new long[words];
+        setBit(set, symbol);
+        return set;
     }
 
+    //==================== 项目与状态 ==============================//
 
     /**
-     * 计算所有非终结符的 follow 集合
+     * 排序后的核心项目, 用作查找状态的键. 散列值在构造时算好, 并行构造时由工作线程承担
      */
-    private void calcFollow() {
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFollow(nonTerminal);
+    private record Kernel(int[] items, int hash) {
+        Kernel(int[] items) {
+            this(items, hash(items));
         }
 
-        // 对于找完所有产生式了都还没没有 follow 的非终结符
-        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
-        nonTerminals.stream()
-            .map(follow::get).filter(Set::isEmpty)
-            .forEach(set -> set.add(TokenKind.eof()));
+        /**
+         * 项目编号是连续的小整数, Arrays.hashCode 的 31 * h + x 在这里冲突很多, 因此对每一项都做一次乘法散列
+         */
+        private static int hash(int[] items) {
+            int hash = items.length;
+            for (final var item : items) {
+                hash = (hash ^ item) * 0x9E3779B9;
+                hash ^= hash >>> 16;
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Kernel kernel && kernel.hash == hash && Arrays.equals(kernel.items, items);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 
+    // 各状态的核心项目 (升序) 与转移 (以文法符号编号为下标, 无转移为 -1)
+    private final List<int[]> kernels = new ArrayList<>();
+    private final List<int[]> gotoRows = new ArrayList<>();
+    // 各状态中每个可规约的产生式 (编号) 的向前看符号
+    private final List<Map<Integer, long[]>> reduceLookaheads = new ArrayList<>();
+    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+
     /**
-     * 递归计算给定非终结符的 follow 集合
-     *
-     * @param nonTerminal 给定的非终止符
-     * @return 其 follow 集合
+     * 计算闭包时使用的标记, 与当前的 stamp 相等即已在闭包中, 省去每次清空. 每个线程使用各自的一份
      */
-    private Set<TokenKind> calcFollow(NonTerminal nonTerminal) {
-        // 与 first 类似, 先查找缓存
-        if (follow.containsKey(nonTerminal)) {
-            return follow.get(nonTerminal);
-        }
+    private final class Scratch {
+        private final int[] itemMark = new int[itemProduction.length];
+        private final int[] nonTerminalMark = new int[nonTerminals.size()];
+        private int stamp = 0;
+    }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
+    private final Scratch scratch;
+    // LR(1) 闭包中各项目的下标, 只在调用 run 的线程中使用
+    private final int[] itemSlot;
 
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
+    /**
+     * 构造项集 {@code kernel} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
+     *
+     * @param kernel 项集 I
+     * @return 闭包中的所有项目, 核心项目在前
+     */
+    private int[] constructClosure(int[] kernel) {
+        return constructClosure(kernel, scratch);
+    }
 
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
-                }
+    private int[] constructClosure(int[] kernel, Scratch scratch) {
+        final var itemMark = scratch.itemMark;
+        final var nonTerminalMark = scratch.nonTerminalMark;
+        final var stamp = ++scratch.stamp;
+        var result = Arrays.copyOf(kernel, Math.max(16, kernel.length * 2));
+        int size = kernel.length;
+        for (final var item : kernel) {
+            itemMark[item] = stamp;
+        }
+        // 采用 BFS 的方法, result 本身就是队列
+        for (int idx = 0; idx < size; idx++) {
+            final var symbol = itemSymbol[result[idx]];
+            if (symbol < terminalCount || nonTerminalMark[symbol - terminalCount] == stamp) {
+                continue;
             }
-
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
-                if (visited.contains(head)) {
-                    // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
-                    // 这时候 EOF 也可能是它的 Follow
-                    result.add(TokenKind.eof());
-                } else {
-                    // 否则直接递归查找
-                    visited.add(head);
-                    result.addAll(calcFollow(head));
+            // 每个非终结符只展开一次, 加入以它为头的所有产生式点在开头的项目
+            nonTerminalMark[symbol - terminalCount] = stamp;
+            for (final var p : productionsOf[symbol - terminalCount]) {
+                final var item = itemBase[p];
+                if (itemMark[item] != stamp) {
+                    itemMark[item] = stamp;
+                    if (size == result.length) {
+                        result = Arrays.copyOf(result, size * 2);
+                    }
+                    result[size++] = item;
                 }
             }
         }
+        return Arrays.copyOf(result, size);
+    }
 
-        follow.put(nonTerminal, result);
-        return result;
+    /**
+     * 相当于理论课中的 GO(I, X) 函数对所有 X 一起计算: 按点后面的符号对闭包中的项目分组, 各组的后继项目即为后继项目集的核
+     *
+     * @param closure 闭包
+     * @return 以文法符号编号为下标, 后继项目集的核 (升序), 无后继时为 null
+     */
+    private int[][] constructGotoKernels(int[] closure) {
+        final var kernelsBySymbol = new int[symbolCount][];
+        final var sizes = new int[symbolCount];
+        for (final var item : closure) {
+            final var symbol = itemSymbol[item];
+            if (symbol < 0) {
+                continue;
+            }
+            if (kernelsBySymbol[symbol] == null) {
+                kernelsBySymbol[symbol] = new int[4];
+            } else if (sizes[symbol] == kernelsBySymbol[symbol].length) {
+                kernelsBySymbol[symbol] = Arrays.copyOf(kernelsBySymbol[symbol], sizes[symbol] * 2);
+            }
+            kernelsBySymbol[symbol][sizes[symbol]++] = item + 1;
+        }
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            if (kernelsBySymbol[symbol] != null) {
+                kernelsBySymbol[symbol] = Arrays.copyOf(kernelsBySymbol[symbol], sizes[symbol]);
+                Arrays.sort(kernelsBySymbol[symbol]);
+            }
+        }
+        return kernelsBySymbol;
     }
 
     /**
-     * 表示一个项目
+     * 构造 LR(0) 规范项目集族, 以 BFS 形式逐层搜索, 状态按被发现的顺序编号
      * <br>
-     * 对于 A -> B . C, 其 production 为 A -> B C, dot 为 1 (其下一个项 C 的索引) <br>
-     * 对于 A -> B C ., 其 production 为 A -> B C, dot 为 2 (其产生式体的项数量) <br>
+     * 每一层中各状态的闭包与后继项目集的核互不相关, 可以并行计算 (见 {@link #setParallelism(int)}), 已有状态也由工作线程在
+     * belongTo 中查出; 只有为新的核编号这一步按状态与文法符号的顺序串行进行, 所以编号与逐个状态扩展时完全相同.
+     */
+    private void constructDFA() {
+        final var belongTo = new ConcurrentHashMap<Kernel, Integer>();
+        final var initKernel = new int[]{itemBase[0]};
+        kernels.add(initKernel);
+        belongTo.put(new Kernel(initKernel), 0);
+
+        try (final var pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null) {
+            for (int from = 0; from < kernels.size(); ) {
+                final var to = kernels.size();
+                final var layer = expandLayer(from, to, belongTo, pool);
+                for (int state = from; state < to; state++) {
+                    final var expansion = layer[state - from];
+                    final var row = expansion.row();
+                    for (int symbol = 0; symbol < symbolCount; symbol++) {
+                        final var kernel = expansion.successors()[symbol];
+                        if (kernel == null || row[symbol] >= 0) {
+                            continue;
+                        }
+                        // 如果还没被加入到项目集族中, 就加入并等待探索
+                        row[symbol] = belongTo.computeIfAbsent(kernel, key -> {
+                            kernels.add(key.items());
+                            return kernels.size() - 1;
+                        });
+                    }
+                    gotoRows.add(row);
+                }
+                from = to;
+            }
+        }
+    }
+
+    /**
+     * 一个状态扩展的结果
      *
-     * @param production 产生式
-     * @param dot        目前解析到的位置
+     * @param successors 以文法符号编号为下标, 后继项目集的核, 无后继时为 null
+     * @param row        以文法符号编号为下标, 后继状态; 后继不在此前的层中时为 -1
      */
-    private record Item(Production production, int dot) {
-        /**
-         * @return 点的位置是否在产生式的末尾
-         */
-        public boolean isDotAtEnd() {
-            return production.body().size() == dot;
+    private record Expansion(Kernel[] successors, int[] row) {
+    }
+
+    // 少于这么多状态的层不值得分给多个线程
+    private static final int MIN_PARALLEL_LAYER = 64;
+
+    /**
+     * 扩展 [from, to) 中的所有状态
+     */
+    private Expansion[] expandLayer(int from, int to, Map<Kernel, Integer> belongTo, ForkJoinPool pool) {
+        final var layer = new Expansion[to - from];
+        if (pool == null || to - from < MIN_PARALLEL_LAYER) {
+            for (int state = from; state < to; state++) {
+                layer[state - from] = expand(state, belongTo, scratch);
+            }
+            return layer;
         }
 
-        /**
-         * @return 获得点后面的文法符号; 若点的位置在末尾则返回空
-         */
-        public Optional<Term> getAfterDot() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(production.body().get(dot));
+        // 每个线程分到几块, 使各线程的负载大致均衡
+        final var chunkCount = Math.min(to - from, parallelism * 4);
+        final var tasks = new ArrayList<Callable<Void>>();
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            final var begin = from + (int) ((long) (to - from) * chunk / chunkCount);
+            final var end = from + (int) ((long) (to - from) * (chunk + 1) / chunkCount);
+            tasks.add(() -> {
+                final var local = new Scratch();
+                for (int state = begin; state < end; state++) {
+                    layer[state - from] = expand(state, belongTo, local);
+                }
+                return null;
+            });
+        }
+        try {
+            for (final var future : pool.invokeAll(tasks)) {
+                future.get();
             }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Parallel table generation failed", e);
         }
+        return layer;
+    }
 
-        /**
-         * @return 获得当前项目的后继项; 若点的位置在末尾则返回空
-         */
-        public Optional<Item> getNextItem() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(new Item(production, dot + 1));
+    private Expansion expand(int state, Map<Kernel, Integer> belongTo, Scratch scratch) {
+        final var row = new int[symbolCount];
+        Arrays.fill(row, -1);
+        final var kernelsBySymbol = constructGotoKernels(constructClosure(kernels.get(state), scratch));
+        final var successors = new Kernel[symbolCount];
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            if (kernelsBySymbol[symbol] != null) {
+                successors[symbol] = new Kernel(kernelsBySymbol[symbol]);
+                row[symbol] = belongTo.getOrDefault(successors[symbol], -1);
             }
         }
+        return new Expansion(successors, row);
+    }
 
-        @Override
-        public String toString() {
-            final var builder = new StringBuilder();
+    private static boolean keepsNumbers(Algorithm algorithm) {
+        return algorithm == Algorithm.SLR || algorithm == Algorithm.LALR;
+    }
+
+    /**
+     * 让与上一次构造中核心相同的状态沿用其编号, 其余状态按被发现的顺序依次填入最小的空闲编号
+     *
+     * @param previous 上一次构造, 为 null 或终结符不同时不做任何事
+     */
+    private void keepNumbersOf(TableGenerator previous) {
+        if (previous == null || !previous.terminals.equals(terminals)) {
+            return;
+        }
 
-            builder.append(production.head());
-            builder.append(" -> ");
+        // 按文本对应新旧产生式, 旧产生式在新文法中的编号, 已被删除时为 -1
+        final var productionByText = new HashMap<String, Integer>();
+        for (int p = 0; p < productions.size(); p++) {
+            productionByText.put(productions.get(p).toString(), p);
+        }
+        final var productionMap = new int[previous.productions.size()];
+        for (int p = 0; p < productionMap.length; p++) {
+            productionMap[p] = productionByText.getOrDefault(previous.productions.get(p).toString(), -1);
+        }
 
-            final var body = production.body();
-            for (int i = 0; i < body.size(); i++) {
-                if (i == dot) {
-                    builder.append(" .");
+        // 旧状态的核心换成新文法中的项目, 有项目的产生式已被删除的状态不再存在
+        final var originOf = new HashMap<Kernel, Integer>();
+        for (int state = 0; state < previous.kernels.size(); state++) {
+            final var oldKernel = previous.kernels.get(state);
+            final var kernel = new int[oldKernel.length];
+            var exists = true;
+            for (int idx = 0; idx < kernel.length && exists; idx++) {
+                final var p = previous.itemProduction[oldKernel[idx]];
+                exists = productionMap[p] >= 0;
+                kernel[idx] = exists ? itemBase[productionMap[p]] + oldKernel[idx] - previous.itemBase[p] : -1;
+            }
+            if (exists) {
+                Arrays.sort(kernel);
+                originOf.put(new Kernel(kernel), state);
+            }
+        }
+
+        final var stateCount = kernels.size();
+        final var number = new int[stateCount];
+        final var taken = new boolean[stateCount];
+        Arrays.fill(number, -1);
+        for (int state = 0; state < stateCount; state++) {
+            final var origin = originOf.getOrDefault(new Kernel(kernels.get(state)), -1);
+            if (origin >= 0 && origin < stateCount) {
+                number[state] = origin;
+                taken[origin] = true;
+                stableStates++;
+            }
+        }
+        var free = 0;
+        for (int state = 0; state < stateCount; state++) {
+            if (number[state] < 0) {
+                while (taken[free]) {
+                    free++;
                 }
-                builder.append(" ").append(body.get(i));
+                number[state] = free;
+                taken[free] = true;
             }
+        }
 
-            if (dot == body.size()) {
-                builder.append(" .");
+        final var renumberedKernels = new int[stateCount][];
+        final var renumberedRows = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            final var row = gotoRows.get(state);
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                if (row[symbol] >= 0) {
+                    row[symbol] = number[row[symbol]];
+                }
             }
+            renumberedKernels[number[state]] = kernels.get(state);
+            renumberedRows[number[state]] = row;
+        }
+        kernels.clear();
+        gotoRows.clear();
+        kernels.addAll(Arrays.asList(renumberedKernels));
+        gotoRows.addAll(Arrays.asList(renumberedRows));
+    }
 
-            return builder.toString();
+    /**
+     * SLR(1): 可规约项目 A -> alpha . 的向前看符号就是 follow(A)
+     */
+    private void calcSLRLookaheads() {
+        for (final var kernel : kernels) {
+            final var lookaheads = new HashMap<Integer, long[]>();
+            for (final var item : constructClosure(kernel)) {
+                if (itemSymbol[item] < 0) {
+                    lookaheads.put(itemProduction[item], follow[heads[itemProduction[item]] - terminalCount]);
+                }
+            }
+            reduceLookaheads.add(lookaheads);
         }
     }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
-    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    //==================== LALR(1) ==============================//
 
     /**
-     * 构造出所有状态并维护状态与项集之间的对应关系
+     * 按 DeRemer 与 Pennello 的算法计算 LR(0) 自动机上的 LALR(1) 向前看符号
+     * <br>
+     * 以非终结符转移 (p, A) 为结点:
+     * <ul>
+     *     <li>DR(p, A) 为 GO(p, A) 上能移入的终结符 (GO(p, A) 中含有 S -> S' . 时还有 EOF);</li>
+     *     <li>(p, A) includes (p', B) 当且仅当 B -> beta A 且从 p' 沿 beta 走到 p;</li>
+     *     <li>Follow(p, A) 为 DR 沿 includes 关系的传递闭包, 用 digraph 算法在一次遍历中求出, 同一强连通分量共用一个结果;</li>
+     *     <li>(q, A -> omega) lookback (p, A) 当且仅当从 p 沿 omega 走到 q, 该项目的向前看符号为所有这样的 Follow(p, A) 之并.</li>
+     * </ul>
+     * 文法中没有空产生式, 因此 reads 关系为空, Read(p, A) 即为 DR(p, A).
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
+    private void calcLALRLookaheads() {
+        final var stateCount = kernels.size();
+        final var nonTerminalCount = nonTerminals.size();
+
+        // 为所有非终结符转移编号, transitionIndex[p * N + A - T]
+        final var transitionIndex = new int[stateCount * nonTerminalCount];
+        Arrays.fill(transitionIndex, -1);
+        final var transitionFrom = new IntList();
+        final var transitionSymbol = new IntList();
+        for (int state = 0; state < stateCount; state++) {
+            final var row = gotoRows.get(state);
+            for (int symbol = terminalCount; symbol < symbolCount; symbol++) {
+                if (row[symbol] >= 0) {
+                    transitionIndex[state * nonTerminalCount + symbol - terminalCount] = transitionFrom.size();
+                    transitionFrom.add(state);
+                    transitionSymbol.add(symbol);
+                }
+            }
+        }
 
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
+        // DR
+        final var acceptItem = itemBase[0] + 1;
+        final var follows = new long[transitionFrom.size()][];
+        for (int idx = 0; idx < follows.length; idx++) {
+            final var target = gotoRows.get(transitionFrom.get(idx))[transitionSymbol.get(idx)];
+            final var read = new long[words];
+            final var row = gotoRows.get(target);
+            for (int terminal = 0; terminal < terminalCount; terminal++) {
+                if (row[terminal] >= 0) {
+                    setBit(read, terminal);
+                }
+            }
+            if (Arrays.binarySearch(kernels.get(target), acceptItem) >= 0) {
+                setBit(read, eof);
+            }
+            follows[idx] = read;
+        }
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+        // includes 与 lookback, lookback 依次为 (状态, 产生式, 非终结符转移) 三元组
+        final var includes = new IntList[follows.length];
+        for (int idx = 0; idx < follows.length; idx++) {
+            includes[idx] = new IntList();
+        }
+        final var lookback = new IntList();
+        for (int idx = 0; idx < follows.length; idx++) {
+            final var from = transitionFrom.get(idx);
+            for (final var p : productionsOf[transitionSymbol.get(idx) - terminalCount]) {
+                final var body = bodies[p];
+                var current = from;
+                for (int i = 0; i < body.length; i++) {
+                    // 产生式体的其余部分为空 (文法中没有空产生式, 只能是最后一个符号) 时, (current, X) includes (from, head)
+                    if (i == body.length - 1 && body[i] >= terminalCount) {
+                        includes[transitionIndex[current * nonTerminalCount + body[i] - terminalCount]].add(idx);
+                    }
+                    current = gotoRows.get(current)[body[i]];
+                }
+                lookback.add(current);
+                lookback.add(p);
+                lookback.add(idx);
+            }
+        }
+
+        digraph(includes, follows);
+
+        for (int state = 0; state < stateCount; state++) {
+            reduceLookaheads.add(new HashMap<>());
+        }
+        for (int idx = 0; idx < lookback.size(); idx += 3) {
+            final var set = reduceLookaheads.get(lookback.get(idx))
+                .computeIfAbsent(lookback.get(idx + 1), key -> new long[words]);
+            orInto(set, follows[lookback.get(idx + 2)]);
         }
     }
 
     /**
-     * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     * DeRemer 与 Pennello 的 digraph 算法: 令 F(x) 为 F'(x) 与所有 x R y 的 F(y) 之并 (对 R 传递闭包), 原地求出 F
+     *
+     * @param relation 关系 R, relation[x] 为所有满足 x R y 的 y
+     * @param sets     输入 F', 输出 F
      */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
+    private static void digraph(IntList[] relation, long[][] sets) {
+        final var depth = new int[sets.length];
+        final var stack = new IntList();
+        for (int x = 0; x < sets.length; x++) {
+            if (depth[x] == 0) {
+                traverse(x, relation, sets, depth, stack);
+            }
+        }
     }
 
+    private static void traverse(int x, IntList[] relation, long[][] sets, int[] depth, IntList stack) {
+        stack.add(x);
+        final var d = stack.size();
+        depth[x] = d;
+        for (int idx = 0; idx < relation[x].size(); idx++) {
+            final var y = relation[x].get(idx);
+            if (depth[y] == 0) {
+                traverse(y, relation, sets, depth, stack);
+            }
+            depth[x] = Math.min(depth[x], depth[y]);
+            orInto(sets[x], sets[y]);
+        }
+        // x 是一个强连通分量的根, 分量中所有结点共用 x 的结果
+        if (depth[x] == d) {
+            while (true) {
+                final var top = stack.removeLast();
+                depth[top] = Integer.MAX_VALUE;
+                if (top == x) {
+                    break;
+                }
+                sets[top] = sets[x].clone();
+            }
+        }
+    }
+
+    //==================== LR(1) ==============================//
+
     /**
-     * 构造项集 {@code sourceItem} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
+     * 构造 LR(1) 项目集族
+     * <br>
+     * 自起始状态开始以工作表的方式扩展. 新的后继状态与某个已有状态核心相同时:
+     * 规范 LR(1) 只在向前看符号也完全相同时复用; Pager 的算法则在二者弱相容时把新的向前看符号并入已有状态,
+     * 若已有状态的向前看符号因此增加, 就把它重新放入工作表, 沿原有的转移继续传播 (Pager 证明了弱相容状态的后继仍然弱相容).
      *
-     * @param sourceItem 项集 I
-     * @return 闭包
-     */
-    private Set<Item> constructClosure(Set<Item> sourceItem) {
-        // 采用 BFS 的方法来避免每次都检测集合的更改
-        final var result = new LinkedHashSet<>(sourceItem);
-        // 已经找到, 但是还未完全探索其能展开的项的项
-        // 类似于 BFS 的队列或者是 mark-and-sweep GC 算法里的灰色列表
-        final var unexpanded = new ArrayDeque<>(sourceItem);
-
-        while (!unexpanded.isEmpty()) {
-            final var top = unexpanded.pollFirst();
-            // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+     * @param merge 是否按 Pager 的弱相容性合并状态
+     */
+    private void constructLR1(boolean merge) {
+        // 各状态核心项目的向前看符号, 与 kernels 中的项目一一对应
+        final var lookaheads = new ArrayList<long[][]>();
+        final var byCore = new HashMap<Kernel, IntList>();
+        final var pending = new ArrayDeque<Integer>();
+        final var queued = new BitSet();
+
+        final var initKernel = new int[]{itemBase[0]};
+        final var initLookahead = new long[words];
+        setBit(initLookahead, eof);
+        addLR1State(initKernel, new long[][]{initLookahead}, lookaheads, byCore);
+        pending.add(0);
+        queued.set(0);
+
+        while (!pending.isEmpty()) {
+            final int state = pending.poll();
+            queued.clear(state);
+
+            final var closureLookaheads = new long[1][][];
+            final var closure = constructClosure(kernels.get(state), lookaheads.get(state), closureLookaheads);
+            final var successors = constructGotoKernels(closure);
+            final var row = gotoRows.get(state);
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                final var kernel = successors[symbol];
+                if (kernel == null) {
+                    continue;
+                }
+                // 后继核心项目的向前看符号, 即闭包中对应项目的向前看符号
+                final var kernelLookaheads = new long[kernel.length][];
+                for (int idx = 0; idx < kernel.length; idx++) {
+                    kernelLookaheads[idx] = closureLookaheads[0][itemSlot[kernel[idx] - 1]];
+                }
+
+                if (row[symbol] >= 0) {
+                    // 重新传播: 并入原有的后继状态
+                    if (mergeInto(lookaheads.get(row[symbol]), kernelLookaheads) && !queued.get(row[symbol])) {
+                        pending.add(row[symbol]);
+                        queued.set(row[symbol]);
+                    }
+                    continue;
+                }
+
+                final var candidates = byCore.get(new Kernel(kernel));
+                var target = -1;
+                if (candidates != null) {
+                    for (int idx = 0; idx < candidates.size(); idx++) {
+                        final var other = lookaheads.get(candidates.get(idx));
+                        if (merge ? weaklyCompatible(other, kernelLookaheads) : sameLookaheads(other, kernelLookaheads)) {
+                            target = candidates.get(idx);
+                            break;
+                        }
+                    }
+                }
+
+                if (target < 0) {
+                    final var copy = new long[kernel.length][];
+                    for (int idx = 0; idx < kernel.length; idx++) {
+                        copy[idx] = kernelLookaheads[idx].clone();
+                    }
+                    target = addLR1State(kernel, copy, lookaheads, byCore);
+                    pending.add(target);
+                    queued.set(target);
+                } else if (mergeInto(lookaheads.get(target), kernelLookaheads) && !queued.get(target)) {
+                    pending.add(target);
+                    queued.set(target);
+                }
+                row[symbol] = target;
+            }
         }
 
-        return result;
+        // 按最终的向前看符号求出各状态中可规约项目的向前看符号
+        for (int state = 0; state < kernels.size(); state++) {
+            final var closureLookaheads = new long[1][][];
+            final var closure = constructClosure(kernels.get(state), lookaheads.get(state), closureLookaheads);
+            final var reduces = new HashMap<Integer, long[]>();
+            for (int idx = 0; idx < closure.length; idx++) {
+                if (itemSymbol[closure[idx]] < 0) {
+                    reduces.put(itemProduction[closure[idx]], closureLookaheads[0][idx]);
+                }
+            }
+            reduceLookaheads.add(reduces);
+        }
+    }
+
+    private int addLR1State(int[] kernel, long[][] kernelLookaheads, List<long[][]> lookaheads, Map<Kernel, IntList> byCore) {
+        final var state = kernels.size();
+        kernels.add(kernel);
+        lookaheads.add(kernelLookaheads);
+        final var row = new int[symbolCount];
+        Arrays.fill(row, -1);
+        gotoRows.add(row);
+        byCore.computeIfAbsent(new Kernel(kernel), key -> new IntList()).add(state);
+        return state;
     }
 
     /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
+     * 带向前看符号的 CLOSURE: [A -> alpha . B beta, a] 加入 [B -> . gamma, b], 其中 b 属于 FIRST(beta a).
+     * 计算结束后 itemSlot[项目] 为该项目在返回的闭包中的下标.
      *
-     * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
+     * @param kernel           核心项目
+     * @param kernelLookaheads 核心项目的向前看符号
+     * @param resultLookaheads 输出: resultLookaheads[0] 为闭包中各项目的向前看符号
+     * @return 闭包中的所有项目, 核心项目在前
      */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
+    private int[] constructClosure(int[] kernel, long[][] kernelLookaheads, long[][][] resultLookaheads) {
+        final var closure = constructClosure(kernel);
+        final var sets = new long[closure.length][];
+        for (int idx = 0; idx < closure.length; idx++) {
+            itemSlot[closure[idx]] = idx;
+            sets[idx] = idx < kernel.length ? kernelLookaheads[idx].clone() : new long[words];
+        }
+
+        // 向前看符号沿 "点后面的非终结符" 传播到不动点
+        final var pending = new ArrayDeque<Integer>();
+        final var queued = new boolean[closure.length];
+        for (int idx = 0; idx < closure.length; idx++) {
+            pending.add(idx);
+            queued[idx] = true;
+        }
+        while (!pending.isEmpty()) {
+            final int idx = pending.poll();
+            queued[idx] = false;
+            final var item = closure[idx];
+            final var symbol = itemSymbol[item];
+            if (symbol < terminalCount) {
+                continue;
+            }
+
+            // 没有空产生式, FIRST(beta a) 即 beta 第一个符号的 FIRST, beta 为空时为 a
+            final var next = itemSymbol[item + 1];
+            final var lookahead = next >= 0 ? firstOf(next) : sets[idx];
+            for (final var p : productionsOf[symbol - terminalCount]) {
+                final var slot = itemSlot[itemBase[p]];
+                if (orInto(sets[slot], lookahead) && !queued[slot]) {
+                    pending.add(slot);
+                    queued[slot] = true;
+                }
+            }
+        }
 
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
+        resultLookaheads[0] = sets;
+        return closure;
     }
 
     /**
-     * 构造 LR(0) 规范项目集族
-     *
-     * @param initItem 起始项目 S -> . S'
-     * @return 规范项目集族
-     */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
-        terms.addAll(nonTerminals);
-        terms.addAll(terminals);
-
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
-
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
-
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
-
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
+     * Pager 的弱相容性: 对核心中任意两个不同的项目 i, j, 或者交叉合并不会使二者的向前看符号相交,
+     * 或者二者在某一方中本就相交 (那么冲突在合并前就已存在)
+     */
+    private static boolean weaklyCompatible(long[][] lhs, long[][] rhs) {
+        var subset = true;
+        for (int i = 0; i < lhs.length && subset; i++) {
+            subset = contains(lhs[i], rhs[i]);
+        }
+        if (subset) {
+            return true;
+        }
+
+        for (int i = 0; i < lhs.length; i++) {
+            for (int j = i + 1; j < lhs.length; j++) {
+                if ((!intersects(lhs[i], rhs[j]) && !intersects(lhs[j], rhs[i]))
+                    || intersects(lhs[i], lhs[j]) || intersects(rhs[i], rhs[j])) {
+                    continue;
                 }
+                return false;
             }
         }
+        return true;
+    }
+
+    private static boolean sameLookaheads(long[][] lhs, long[][] rhs) {
+        for (int i = 0; i < lhs.length; i++) {
+            if (!Arrays.equals(lhs[i], rhs[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        return new ArrayList<>(result);
+    /**
+     * 把 kernelLookaheads 并入 target
+     *
+     * @return target 是否增加了
+     */
+    private static boolean mergeInto(long[][] target, long[][] kernelLookaheads) {
+        var grown = false;
+        for (int i = 0; i < target.length; i++) {
+            grown |= orInto(target[i], kernelLookaheads[i]);
+        }
+        return grown;
     }
 
+    //==================== 填表 ==============================//
+
     /**
      * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
      */
     private void genTable() {
-        // 依索引顺序对每个状态的每个项目
-        for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
-                final var afterDotOpt = item.getAfterDot();
-
-                // 根据项目的点的位置和点后面跟着的文法符号进行分类
-                if (afterDotOpt.isEmpty()) {
-                    final var argumentProduction = productions.get(0);
-                    if (item.production().equals(argumentProduction)) {
-                        // S -> S' .
-                        // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
-                        status.setAction(TokenKind.eof(), Action.accept());
-                    } else {
-                        // A -> alpha .
-                        // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
-                        final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
-                            status.setAction(a, Action.reduce(production));
+        for (int state = 0; state < kernels.size(); state++) {
+            allStatusInIndexOrder.add(Status.create(state));
+        }
+
+        // 依索引顺序对每个状态
+        for (int state = 0; state < kernels.size(); state++) {
+            final var status = allStatusInIndexOrder.get(state);
+
+            // A -> alpha . B beta 转移到 GO(I, B) 对应的状态
+            final var row = gotoRows.get(state);
+            for (int symbol = terminalCount; symbol < symbolCount; symbol++) {
+                if (row[symbol] >= 0) {
+                    status.setGoto(nonTerminals.get(symbol - terminalCount), allStatusInIndexOrder.get(row[symbol]));
+                }
+            }
+
+            // 先收集各终结符上的规约, 以便与移入比较
+            final var reduces = new int[terminalCount];
+            Arrays.fill(reduces, -1);
+            for (final var item : constructClosure(kernels.get(state))) {
+                if (itemSymbol[item] >= 0) {
+                    continue;
+                }
+                final var p = itemProduction[item];
+                if (p == 0) {
+                    // S -> S' .
+                    // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
+                    status.setAction(TokenKind.eof(), Action.accept());
+                } else {
+                    // A -> alpha .
+                    // 如果项目代表某个产生式的末尾, 那么再遇到该项目的向前看符号就应该规约 A
+                    // (SLR 中即 follow(A), LALR 与 LR(1) 中则是各自求出的向前看符号)
+                    final var lookahead = reduceLookaheads.get(state).get(p);
+                    for (int terminal = nextBit(lookahead, 0); terminal >= 0; terminal = nextBit(lookahead, terminal + 1)) {
+                        if (reduces[terminal] >= 0 && reduces[terminal] != p) {
+                            throw conflict(state, terminal);
                         }
+                        reduces[terminal] = p;
                     }
+                }
+            }
 
-                } else {
-                    final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
-
-                    if (symbol instanceof TokenKind tokenKind) {
-                        // A -> alpha . a beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
-                        status.setAction(tokenKind, Action.shift(next));
-                    } else if (symbol instanceof NonTerminal nonTerminal) {
-                        // A -> alpha . B beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
-                        // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
-                        status.setGoto(nonTerminal, next);
-                    } else {
-                        throw new RuntimeException("Unknown type of Term");
+            // A -> alpha . a beta 移入该终结符; 与规约冲突时按优先级声明取舍
+            for (int terminal = 0; terminal < terminalCount; terminal++) {
+                var shift = row[terminal];
+                var reduce = reduces[terminal];
+                if (shift >= 0 && reduce >= 0) {
+                    switch (resolve(reduce, terminal)) {
+                        case SHIFT -> reduce = -1;
+                        case REDUCE -> shift = -1;
+                        case ERROR -> shift = reduce = -1;
+                        case UNRESOLVED -> throw conflict(state, terminal);
                     }
+                    resolvedConflicts++;
+                }
+                if (shift >= 0) {
+                    status.setAction(terminals.get(terminal), Action.shift(allStatusInIndexOrder.get(shift)));
+                } else if (reduce >= 0) {
+                    status.setAction(terminals.get(terminal), Action.reduce(productions.get(reduce)));
                 }
             }
         }
     }
 
-    // 我们在 Status.setAction/setGoto 中检查规约-规约冲突与移入-规约冲突
+    // 我们在 Status.setAction/setGoto 中检查其余的冲突
     // 如果有冲突, 它们会抛出 RuntimeException
+
+    private enum Resolution {SHIFT, REDUCE, ERROR, UNRESOLVED}
+
+    /**
+     * 按 yacc 的规则解决移入-规约冲突: 产生式与终结符的优先级高者胜出; 优先级相同时, 左结合规约, 右结合移入, 不结合则为错误.
+     * 二者之一没有声明优先级时无法解决.
+     *
+     * @param production 产生式编号
+     * @param terminal   终结符编号
+     * @return 取舍
+     */
+    private Resolution resolve(int production, int terminal) {
+        final var rule = grammar.precedenceOf(productions.get(production));
+        final var token = grammar.precedenceOf(terminals.get(terminal));
+        if (rule.isEmpty() || token.isEmpty()) {
+            return Resolution.UNRESOLVED;
+        }
+        if (rule.get().level() != token.get().level()) {
+            return rule.get().level() > token.get().level() ? Resolution.REDUCE : Resolution.SHIFT;
+        }
+        return switch (token.get().associativity()) {
+            case LEFT -> Resolution.REDUCE;
+            case RIGHT -> Resolution.SHIFT;
+            case NONASSOC -> Resolution.ERROR;
+        };
+    }
+
+    private RuntimeException conflict(int state, int terminal) {
+        return new RuntimeException("Action conflict at %s on %d".formatted(terminals.get(terminal), state));
+    }
+
+    //==================== 工具 ==============================//
+
+    /**
+     * 形如 A -> B . C 的项目文本
+     */
+    private String itemToString(int item) {
+        final var production = productions.get(itemProduction[item]);
+        final var dot = item - itemBase[itemProduction[item]];
+        final var builder = new StringBuilder();
+
+        builder.append(production.head());
+        builder.append(" -> ");
+
+        final var body = production.body();
+        for (int i = 0; i < body.size(); i++) {
+            if (i == dot) {
+                builder.append(" .");
+            }
+            builder.append(" ").append(body.get(i));
+        }
+
+        if (dot == body.size()) {
+            builder.append(" .");
+        }
+
+        return builder.toString();
+    }
+
+    private Set<TokenKind> toTerminals(long[] set) {
+        final var result = new LinkedHashSet<TokenKind>();
+        for (int terminal = nextBit(set, 0); terminal >= 0; terminal = nextBit(set, terminal + 1)) {
+            result.add(terminals.get(terminal));
+        }
+        return result;
+    }
+
+    private static void setBit(long[] set, int bit) {
+        set[bit >>> 6] |= 1L << bit;
+    }
+
+    /**
+     * @return 从 from 开始的第一个为 1 的位, 没有则为 -1
+     */
+    private static int nextBit(long[] set, int from) {
+        var word = from >>> 6;
+        if (word >= set.length) {
+            return -1;
+        }
+        var bits = set[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == set.length) {
+                return -1;
+            }
+            bits = set[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * target |= source
+     *
+     * @return target 是否增加了
+     */
+    private static boolean orInto(long[] target, long[] source) {
+        var grown = false;
+        for (int i = 0; i < target.length; i++) {
+            final var merged = target[i] | source[i];
+            grown |= merged != target[i];
+            target[i] = merged;
+        }
+        return grown;
+    }
+
+    private static boolean intersects(long[] lhs, long[] rhs) {
+        for (int i = 0; i < lhs.length; i++) {
+            if ((lhs[i] & rhs[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(long[] superset, long[] subset) {
+        for (int i = 0; i < superset.length; i++) {
+            if ((subset[i] & ~superset[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(long[] set) {
+        for (final var word : set) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 可增长的 int 数组
+     */
+    private static final class IntList {
+        private int[] values = new int[8];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        int size() {
+            return size;
+        }
+    }
 }
@@ -0,0 +1,184 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * LR 分析表的状态最小化
+ * <br>
+ * 把分析表看作以终结符与非终结符为输入的自动机, 用划分求精 (Moore 算法) 合并等价状态:
+ * <ul>
+ *     <li>初始划分: ACTION 中各项的动作类型与规约的产生式都相同, 且 GOTO 中有定义的列也相同的状态在同一块;</li>
+ *     <li>求精: 同一块中的状态, 若在某一列上移入/转移到的状态属于不同的块, 就拆开, 直到块数不再增加.</li>
+ * </ul>
+ * 合并后的状态在任何输入上都做出完全相同的动作 (包括在同样的位置报错), 因此语法分析得到的规约序列与原表完全一致.
+ * 新状态按其中编号最小的原状态排序编号, 起始状态仍为 0.
+ * <br>
+ * 规范 LR(1) 表按向前看符号拆开的状态动作不同, 不会被合并; 能被合并的主要是第三方工具生成的表中重复的状态.
+ * 最小化之后不会再有完全相同的行, 行的去重见 {@link CompiledLRTable}.
+ * <br>
+ * {@link #run()} 之后以 {@link #getTable()} 代替原表交给 SyntaxAnalyzer 即可; 各来源的表最小化前后的状态数与字节数
+ * 可以运行 {@link cn.edu.hitsz.compiler.bench.TableCompactionBenchmark} 查看.
+ */
+public class TableMinimizer {
+    /**
+     * @param table 待最小化的分析表
+     */
+    public TableMinimizer(LRTable table) {
+        this.original = table;
+    }
+
+    /**
+     * 主体方法
+     */
+    public void run() {
+        before = CompiledLRTable.compile(original);
+        final var blockOf = refine(before);
+        minimized = rebuild(before, blockOf);
+        after = CompiledLRTable.compile(minimized);
+    }
+
+    /**
+     * @return 最小化后的分析表
+     */
+    public LRTable getTable() {
+        return minimized;
+    }
+
+    /**
+     * @return 最小化前后的状态数, 不同的行数, 以及稠密存储与行位移压缩后查表所用的字节数
+     */
+    public String getReport() {
+        final var columns = before.terminalCount() + before.nonTerminalCount();
+        return String.join("\n",
+            "%-16s %10s %10s".formatted("", "before", "after"),
+            "%-16s %10d %10d".formatted("states", before.stateCount(), after.stateCount()),
+            "%-16s %10d %10d".formatted("distinct rows", before.distinctRowCount(), after.distinctRowCount()),
+            "%-16s %10d %10d".formatted("dense bytes",
+                before.stateCount() * columns * Integer.BYTES, after.stateCount() * columns * Integer.BYTES),
+            "%-16s %10d %10d".formatted("packed bytes", before.footprintBytes(), after.footprintBytes()));
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private final LRTable original;
+    private LRTable minimized = null;
+    private CompiledLRTable before = null;
+    private CompiledLRTable after = null;
+
+    /**
+     * 划分求精
+     *
+     * @return 各状态所属的块, 块按其中最小的状态编号排序
+     */
+    private static int[] refine(CompiledLRTable table) {
+        final var stateCount = table.stateCount();
+        final var terminalCount = table.terminalCount();
+        final var columnCount = terminalCount + table.nonTerminalCount();
+
+        // 初始划分: 把移入与 GOTO 的目标状态抹去后的行
+        var blockOf = new int[stateCount];
+        var blockCount = partition(stateCount, state -> {
+            final var key = new int[columnCount];
+            for (int terminal = 0; terminal < terminalCount; terminal++) {
+                final var action = table.action(state, terminal);
+                key[terminal] = CompiledLRTable.kindOf(action) == CompiledLRTable.SHIFT ? CompiledLRTable.SHIFT : action;
+            }
+            for (int column = terminalCount; column < columnCount; column++) {
+                key[column] = table.goto_(state, column) < 0 ? -1 : 0;
+            }
+            return key;
+        }, blockOf);
+
+        while (true) {
+            // 以 (所在的块, 各列目标状态所在的块) 为键重新划分. 新的划分总是原划分的细分
+            final var current = blockOf;
+            final var next = new int[stateCount];
+            final var nextCount = partition(stateCount, state -> {
+                final var key = new int[columnCount + 1];
+                key[0] = current[state];
+                for (int terminal = 0; terminal < terminalCount; terminal++) {
+                    final var action = table.action(state, terminal);
+                    key[terminal + 1] = CompiledLRTable.kindOf(action) == CompiledLRTable.SHIFT
+                        ? current[CompiledLRTable.payloadOf(action)] : -1;
+                }
+                for (int column = terminalCount; column < columnCount; column++) {
+                    final var target = table.goto_(state, column);
+                    key[column + 1] = target < 0 ? -1 : current[target];
+                }
+                return key;
+            }, next);
+
+            blockOf = next;
+            if (nextCount == blockCount) {
+                return blockOf;
+            }
+            blockCount = nextCount;
+        }
+    }
+
+    private interface KeyFunction {
+        int[] keyOf(int state);
+    }
+
+    /**
+     * 键相同的状态分在同一块, 块按第一次出现的顺序编号
+     *
+     * @return 块数
+     */
+    private static int partition(int stateCount, KeyFunction keys, int[] blockOf) {
+        final var blocks = new HashMap<IntBuffer, Integer>();
+        for (int state = 0; state < stateCount; state++) {
+            blockOf[state] = blocks.computeIfAbsent(IntBuffer.wrap(keys.keyOf(state)), key -> blocks.size());
+        }
+        return blocks.size();
+    }
+
+    /**
+     * 每一块取其中第一个状态的动作, 构造新的分析表
+     */
+    private static LRTable rebuild(CompiledLRTable table, int[] blockOf) {
+        var blockCount = 0;
+        for (final var block : blockOf) {
+            blockCount = Math.max(blockCount, block + 1);
+        }
+
+        final var statuses = new ArrayList<Status>();
+        for (int block = 0; block < blockCount; block++) {
+            statuses.add(Status.create(block));
+        }
+
+        final var filled = new boolean[blockCount];
+        for (int state = 0; state < blockOf.length; state++) {
+            final var block = blockOf[state];
+            if (filled[block]) {
+                continue;
+            }
+            filled[block] = true;
+
+            final var status = statuses.get(block);
+            for (int terminal = 0; terminal < table.terminalCount(); terminal++) {
+                final var action = table.action(state, terminal);
+                final var payload = CompiledLRTable.payloadOf(action);
+                switch (CompiledLRTable.kindOf(action)) {
+                    case CompiledLRTable.SHIFT ->
+                        status.setAction(table.terminal(terminal), Action.shift(statuses.get(blockOf[payload])));
+                    case CompiledLRTable.REDUCE ->
+                        status.setAction(table.terminal(terminal), Action.reduce(table.production(payload)));
+                    case CompiledLRTable.ACCEPT -> status.setAction(table.terminal(terminal), Action.accept());
+                    default -> {
+                    }
+                }
+            }
+            for (int idx = 0; idx < table.nonTerminalCount(); idx++) {
+                final var target = table.goto_(state, table.terminalCount() + idx);
+                if (target >= 0) {
+                    status.setGoto(table.nonTerminal(table.terminalCount() + idx), statuses.get(blockOf[target]));
+                }
+            }
+        }
+
+        return new LRTable(statuses, new ArrayList<>(table.terminals()), new ArrayList<>(table.nonTerminals()));
+    }
+}
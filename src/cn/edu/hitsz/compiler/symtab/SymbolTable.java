@@ -1,12 +1,11 @@
 package cn.edu.hitsz.compiler.symtab;
 
-import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
  * 符号表
@@ -14,10 +13,16 @@ import java.util.Map;
  * 由于源语言比较简易, 加之 Java 中具有非常好用的通用数据结构类型, 本项目其实并不一定需要一个集中的 "符号表" 来存储源语言中的
  * <b>所有符号的所有信息</b>. 但为了切合理论课程教学, 提高实验实践技能的通用性, 我们按照一般编译器项目中符号表的设计设计了该符号表.
  * 其在代码中的作用可能并不明显, 但我们希望同学们可以借此体验符号表的设计思想.
+ * <br>
+ * 每个符号按加入顺序获得一个从 0 开始的稠密编号. 符号表内部是一个开放寻址的哈希表, 可以直接用源文本中的一段字符查找,
+ * 查找已存在的符号时不会构造任何字符串, 供词法分析器在热路径上使用 {@link #intern(CharSequence, int, int)}.
  */
 public class SymbolTable {
 
-    private final Map<String, SymbolTableEntry> symbols = new HashMap<>();
+    private final List<SymbolTableEntry> entries = new ArrayList<>();
+    private int[] entryHashes = new int[16];
+    // 线性探测的槽位, 存放 编号 + 1, 0 代表空槽
+    private int[] slots = new int[16];
 
     /**
      * 获取符号表中已有的条目
@@ -27,11 +32,11 @@ public class SymbolTable {
      * @throws RuntimeException 该符号在表中不存在
      */
     public SymbolTableEntry get(String text) {
-        SymbolTableEntry entry = symbols.get(text);
-        if (entry == null) {
+        final var id = find(text, 0, text.length(), hash(text, 0, text.length()));
+        if (id < 0) {
             throw new RuntimeException();
         }
-        return entry;
+        return entries.get(id);
     }
 
     /**
@@ -42,12 +47,11 @@ public class SymbolTable {
      * @throws RuntimeException 该符号已在表中存在
      */
     public SymbolTableEntry add(String text) {
-        if (symbols.get(text) != null) {
+        final var hash = hash(text, 0, text.length());
+        if (find(text, 0, text.length(), hash) >= 0) {
             throw new RuntimeException(text);
         }
-        SymbolTableEntry entry = new SymbolTableEntry(text);
-        symbols.put(text, entry);
-        return entry;
+        return entries.get(insert(text, hash));
     }
 
     /**
@@ -57,7 +61,55 @@ public class SymbolTable {
      * @return 该符号的条目是否位于符号表中
      */
     public boolean has(String text) {
-        return symbols.get(text) != null;
+        return find(text, 0, text.length(), hash(text, 0, text.length())) >= 0;
+    }
+
+    /**
+     * 查找符号, 不存在则加入. 该方法从不抛出异常, 符号已存在时也不会构造字符串.
+     *
+     * @param text  符号所在的文本
+     * @param start 符号的起始下标 (含)
+     * @param end   符号的结束下标 (不含)
+     * @return 符号的编号
+     */
+    public int intern(CharSequence text, int start, int end) {
+        final var hash = hash(text, start, end);
+        final var id = find(text, start, end, hash);
+        if (id >= 0) {
+            return id;
+        }
+        return insert(text.subSequence(start, end).toString(), hash);
+    }
+
+    /**
+     * @param text 符号的文本表示
+     * @return 符号的编号, 不存在则加入
+     */
+    public int intern(String text) {
+        return intern(text, 0, text.length());
+    }
+
+    /**
+     * @param text 符号的文本表示
+     * @return 符号的编号, 不存在则返回 -1
+     */
+    public int idOf(String text) {
+        return find(text, 0, text.length(), hash(text, 0, text.length()));
+    }
+
+    /**
+     * @param id 符号的编号
+     * @return 该编号对应的条目
+     */
+    public SymbolTableEntry getById(int id) {
+        return entries.get(id);
+    }
+
+    /**
+     * @return 符号数量, 也是下一个符号的编号
+     */
+    public int size() {
+        return entries.size();
     }
 
     /**
@@ -65,8 +117,8 @@ public class SymbolTable {
      *
      * @return 符号表的所有条目
      */
-    private Map<String, SymbolTableEntry> getAllEntries() {
-        return symbols;
+    private List<SymbolTableEntry> getAllEntries() {
+        return entries;
     }
 
     /**
@@ -75,7 +127,7 @@ public class SymbolTable {
      * @param path 输出文件路径
      */
     public void dumpTable(String path) {
-        final var entriesInOrder = new ArrayList<>(getAllEntries().values());
+        final var entriesInOrder = new ArrayList<>(getAllEntries());
         entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
 
         final var lines = new ArrayList<String>();
@@ -86,5 +138,77 @@ public class SymbolTable {
 
         FileUtils.writeLines(path, lines);
     }
-}
 
+    //==================== 以下为实现相关代码 ==============================//
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int idx = start; idx < end; idx++) {
+            hash = 31 * hash + text.charAt(idx);
+        }
+        // 打散低位, 槽位下标只取低位
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return 符号的编号, 不存在则返回 -1
+     */
+    private int find(CharSequence text, int start, int end, int hash) {
+        final var mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final var id = slots[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (entryHashes[id] == hash && matches(entries.get(id).getText(), text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    private static boolean matches(String entry, CharSequence text, int start, int end) {
+        if (entry.length() != end - start) {
+            return false;
+        }
+        for (int idx = 0; idx < entry.length(); idx++) {
+            if (entry.charAt(idx) != text.charAt(start + idx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 加入一个确定不存在的符号
+     *
+     * @return 新符号的编号
+     */
+    private int insert(String text, int hash) {
+        final var id = entries.size();
+        entries.add(new SymbolTableEntry(text));
+        if (id == entryHashes.length) {
+            entryHashes = Arrays.copyOf(entryHashes, id * 2);
+        }
+        entryHashes[id] = hash;
+
+        // 保持装载因子不超过 1/2
+        if (entries.size() * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            for (int idx = 0; idx < entries.size(); idx++) {
+                place(idx);
+            }
+        } else {
+            place(id);
+        }
+        return id;
+    }
+
+    private void place(int id) {
+        final var mask = slots.length - 1;
+        int slot = entryHashes[id] & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+}
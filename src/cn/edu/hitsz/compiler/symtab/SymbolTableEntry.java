@@ -40,6 +40,13 @@ public class SymbolTableEntry {
         this.type = type;
     }
 
+    /**
+     * 撤销之前设置的类型, 供增量分析撤下一条声明语句时使用, 之后可以再次设置
+     */
+    public void clearType() {
+        this.type = null;
+    }
+
     private final String text;
     private SourceCodeType type;
 }
@@ -20,6 +20,11 @@ public final class FilePathConfig {
      */
     public final static String GRAMMAR_PATH = "data/in/grammar.txt";
 
+    /**
+     * yacc 风格的优先级声明, 可以不存在
+     */
+    public final static String PRECEDENCE_PATH = "data/in/precedence.txt";
+
     /**
      * 第三方工具构造的 LR 分析表
      */
@@ -62,6 +67,11 @@ public final class FilePathConfig {
      */
     public static final String ASSEMBLY_LANGUAGE_PATH = "data/out/assembly_language.asm";
 
+    /**
+     * LR 分析表的二进制缓存
+     */
+    public static final String LR_TABLE_CACHE_PATH = "data/out/lr_table.bin";
+
     private FilePathConfig() {
     }
 }
@@ -3,11 +3,10 @@ package cn.edu.hitsz.compiler.utils;
 import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariableTable;
 import cn.edu.hitsz.compiler.ir.Instruction;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -23,25 +22,25 @@ public class IREmulator {
             switch (instruction.getKind()) {
                 case MOV -> {
                     final var from = eval(instruction.getFrom());
-                    environment.put(instruction.getResult(), from);
+                    environment[instruction.getResult().getId()] = from;
                 }
 
                 case ADD -> {
                     final var lhs = eval(instruction.getLHS());
                     final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs + rhs);
+                    environment[instruction.getResult().getId()] = lhs + rhs;
                 }
 
                 case SUB -> {
                     final var lhs = eval(instruction.getLHS());
                     final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs - rhs);
+                    environment[instruction.getResult().getId()] = lhs - rhs;
                 }
 
                 case MUL -> {
                     final var lhs = eval(instruction.getLHS());
                     final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs * rhs);
+                    environment[instruction.getResult().getId()] = lhs * rhs;
                 }
 
                 case RET -> this.returnValue = eval(instruction.getReturnValue());
@@ -57,7 +56,7 @@ public class IREmulator {
         if (value instanceof IRImmediate immediate) {
             return immediate.getValue();
         } else if (value instanceof IRVariable variable) {
-            return environment.get(variable);
+            return environment[variable.getId()];
         } else {
             throw new RuntimeException("Unknown IR value type");
         }
@@ -65,11 +64,12 @@ public class IREmulator {
 
     private IREmulator(List<Instruction> instructions) {
         this.instructions = instructions;
-        this.environment = new HashMap<>();
+        // 变量的值以变量编号为下标
+        this.environment = new Integer[IRVariableTable.idLimit(instructions)];
         this.returnValue = null;
     }
 
     private final List<Instruction> instructions;
-    private final Map<IRVariable, Integer> environment;
+    private final Integer[] environment;
     private Integer returnValue;
 }